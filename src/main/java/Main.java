@@ -1,4 +1,5 @@
 import javax.swing.*;
+import java.io.File;
 import view.ProfilePanel;
 import view.MealLoggerPanel;
 import view.SwapPanel;
@@ -7,29 +8,34 @@ import view.CFGPlatePanel;
 import view.SwapImpactPanel;
 import view.SwapApplierPanel;
 import view.GoalOptimizerPanel;
+import database.CNFImportScheduler;
 import database.CNFLoader;
+import database.FoodSearchIndex;
+import database.NutrientCatalog;
 
 //Use of AI: Used AI to debug code and improve operations
 public class Main {
     public static void main(String[] args) {
 
-        // load CSV files only if tables are empty
-        CNFLoader.loadFoodGroups("data/FOOD GROUP.csv");
-        CNFLoader.loadFoodSources("data/FOOD SOURCE.csv");
-        CNFLoader.loadFoodItems("data/FOOD NAME.csv");
-
-        CNFLoader.loadNutrientSources("data/NUTRIENT SOURCE.csv");
-        CNFLoader.loadNutrients("data/NUTRIENT NAME.csv");
-        CNFLoader.loadNutrientAmounts("data/NUTRIENT AMOUNT.csv");
-
-        CNFLoader.loadMeasures("data/MEASURE NAME.csv");
-        CNFLoader.loadConversionFactors("data/CONVERSION FACTOR.csv");
-
-        CNFLoader.loadRefuseNames("data/REFUSE NAME.csv");
-        CNFLoader.loadRefuseAmounts("data/REFUSE AMOUNT.csv");
-
-        CNFLoader.loadYieldNames("data/YIELD NAME.csv");
-        CNFLoader.loadYieldAmounts("data/YIELD AMOUNT.csv");
+        // load CSV files only if they changed since the last import
+        // tables without foreign keys between them are imported at the same time
+        // a CNF release zip given as argument is imported as it is, without unzipping it
+        // otherwise the snapshot compiled by the Maven build is used instead of the CSV files when it exists
+        // with -Dnutrisci.storage=embedded the data is kept in an embedded database instead of MySQL
+        try {
+            if (args.length > 0 && args[0].toLowerCase().endsWith(".zip")) {
+                CNFLoader.loadArchive(args[0]);
+            } else {
+                importDataDirectory();
+            }
+            // the nutrients are read once here, the panels offer them by name and look them up by id
+            NutrientCatalog.getInstance();
+            // the food names are read and indexed for search in the background, the food pickers show them once they are loaded
+            FoodSearchIndex.load();
+        } catch (Exception e) {
+            System.err.println("Error importing CNF data.");
+            e.printStackTrace();
+        }
 
         // GUI launch
         SwingUtilities.invokeLater(() -> {
@@ -56,4 +62,35 @@ public class Main {
             });
         });
     }
+
+    /**
+     * imports the CSV files of the data folder. empty tables are filled from the compiled snapshot
+     * instead when it exists and was compiled from the same files
+     */
+    private static void importDataDirectory() throws Exception {
+        if (new File("target/cnf.snapshot").isFile()) {
+            CNFLoader.useSnapshot("target/cnf.snapshot");
+        }
+
+        CNFImportScheduler importer = new CNFImportScheduler("src/main/java/database/db.sql");
+
+        importer.addTable("food_group", () -> CNFLoader.loadFoodGroups("data/FOOD GROUP.csv"));
+        importer.addTable("food_source", () -> CNFLoader.loadFoodSources("data/FOOD SOURCE.csv"));
+        importer.addTable("food_name", () -> CNFLoader.loadFoodItems("data/FOOD NAME.csv"));
+
+        importer.addTable("nutrient_source", () -> CNFLoader.loadNutrientSources("data/NUTRIENT SOURCE.csv"));
+        importer.addTable("nutrient", () -> CNFLoader.loadNutrients("data/NUTRIENT NAME.csv"));
+        importer.addTable("nutrient_amount", () -> CNFLoader.loadNutrientAmounts("data/NUTRIENT AMOUNT.csv"));
+
+        importer.addTable("measure_name", () -> CNFLoader.loadMeasures("data/MEASURE NAME.csv"));
+        importer.addTable("conversion_factor", () -> CNFLoader.loadConversionFactors("data/CONVERSION FACTOR.csv"));
+
+        importer.addTable("refuse_name", () -> CNFLoader.loadRefuseNames("data/REFUSE NAME.csv"));
+        importer.addTable("refuse_amount", () -> CNFLoader.loadRefuseAmounts("data/REFUSE AMOUNT.csv"));
+
+        importer.addTable("yield_name", () -> CNFLoader.loadYieldNames("data/YIELD NAME.csv"));
+        importer.addTable("yield_amount", () -> CNFLoader.loadYieldAmounts("data/YIELD AMOUNT.csv"));
+
+        importer.run();
+    }
 }
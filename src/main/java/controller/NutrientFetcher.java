@@ -1,14 +1,9 @@
 package controller;
 
-import database.DBConnection;
+import database.FoodCatalog;
+import database.NutrientMatrix;
 import model.NutrientProfile;
 
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
-import java.util.HashMap;
-import java.util.Map;
-
 //Use of AI: Used AI to debug code, create database queries, and improve operations
 /**
  * the NutrientFetcher class has methods for getting nutritional information for a specified food item from the database. 
@@ -19,8 +14,8 @@ public class NutrientFetcher {
 	/**
      * this method gets the nutrient profile of a food item given its food ID
      * this method performs two things 
-     * 1. it gets the food description from food_name 
-     * 2. it gets the associated nutrients and its amounts from nutrient_amount
+     * 1. it gets the food description from the food catalog
+     * 2. it gets the associated nutrients and its amounts from the nutrient matrix
      * 
      * @param foodId the unique food ID of the food item
      * @return a NutrientProfile object containing the food name and nutrient amounts
@@ -28,34 +23,16 @@ public class NutrientFetcher {
     public static NutrientProfile getNutrientProfile(int foodId) {
         NutrientProfile profile = new NutrientProfile();
 
-        try (Connection conn = DBConnection.getInstance().getConnection();
-) {
+        try {
             //get the food name
-            String foodSql = "SELECT description FROM food_name WHERE id = ?";
-            PreparedStatement foodStmt = conn.prepareStatement(foodSql);
-            foodStmt.setInt(1, foodId);
-            ResultSet foodRs = foodStmt.executeQuery();
-            if (foodRs.next()) {
-                profile.setFoodName(foodRs.getString("description"));
-            }
-
-            //get the nutrients and their amounts
-            String nutSql = """
-                SELECT n.name, na.amount
-                FROM nutrient_amount na
-                JOIN nutrient n ON na.nutrient_id = n.id
-                WHERE na.food_id = ?
-            """;
-            PreparedStatement nutStmt = conn.prepareStatement(nutSql);
-            nutStmt.setInt(1, foodId);
-            ResultSet nutRs = nutStmt.executeQuery();
-
-            Map<String, Double> nutrients = new HashMap<>();
-            while (nutRs.next()) {
-                nutrients.put(nutRs.getString("name"), nutRs.getDouble("amount"));
+            String foodName = FoodCatalog.getInstance().getDescriptionOf(foodId);
+            if (foodName != null) {
+                profile.setFoodName(foodName);
             }
 
-            profile.setNutrientAmounts(nutrients);
+            //get the nutrients and their amounts from the nutrient matrix
+            NutrientMatrix matrix = NutrientMatrix.getInstance();
+            profile.setNutrients(matrix.getVector(foodId), matrix::getNutrientName);
             
             //catch exception if something goes wrong
         } catch (Exception e) {
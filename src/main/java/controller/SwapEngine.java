@@ -1,6 +1,9 @@
 package controller;
 
 import database.DBConnection;
+import database.FoodCatalog;
+import database.NutrientCatalog;
+import database.NutrientMatrix;
 
 import model.SwapGoal;
 import model.UserProfile;
@@ -8,32 +11,22 @@ import model.UserProfile;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 
 //Use of AI: Used AI to debug code, create database queries, and improve operations
 /**
  * the SwapEngine class has static methods to suggest food swaps
  * and to optimize food choices based on the users nutrient goals.
  * 
- * it uses the database find alternate foods within the same group that better match a nutrient
+ * it uses the nutrient matrix to find alternate foods within the same group that better match a nutrient
  * it also finds food items that satisfy multiple conditions at the same time
  * 
  */
 public class SwapEngine {
 	
 	
-	//declare a map of nutrients to map user friendly nutrient names to their respective database names
-	private static final Map<String, String> nutrientMap = Map.of(
-		    "Energy", "ENERGY (KILOCALORIES)",
-		    "Protein", "PROTEIN",
-		    "Fat", "FAT (TOTAL LIPIDS)",
-		    "Carbohydrate", "CARBOHYDRATE, TOTAL (BY DIFFERENCE)",
-		    "Fiber", "FIBRE, TOTAL DIETARY",
-		    "Sugar", "SUGARS, TOTAL"
-		);
-	
-
     /**
      * this method suggests a better food item from the same group based on a nutrient goal.
      * excludes the original food from the result.
@@ -43,74 +36,76 @@ public class SwapEngine {
      * @return suggested food name or null
      */
     public static String suggestSwap(int foodId, SwapGoal goal) {
-        try (Connection conn = DBConnection.getInstance().getConnection()) {
+        int suggestedId = suggestSwapId(foodId, goal);
+        if (suggestedId < 0) return null; //no swap found or an error
+
+        try {
+            return FoodCatalog.getInstance().getDescriptionOf(suggestedId);
+        } catch (Exception e) {
+            e.printStackTrace(); //log error
+            return null;
+        }
+    }
+
+
+    /**
+     * this method suggests a better food item from the same group based on a nutrient goal, like suggestSwap.
+     * the id tells the suggested food apart from other foods with the same name.
+     *
+     * @param foodId the ID of the original food
+     * @param goal the SwapGoal (nutrient, increase/decrease, amount)
+     * @return the ID of the suggested food, or -1
+     */
+    public static int suggestSwapId(int foodId, SwapGoal goal) {
+        try {
+            NutrientMatrix matrix = NutrientMatrix.getInstance();
 
             // 1. get the food group and original nutrient amount
-            String foodGroupSql = """
-                SELECT fg.id AS group_id, na.value AS original_amount
-                FROM food_name fn
-                JOIN food_group fg ON fn.food_group_id = fg.id
-                JOIN nutrient_amount na ON fn.id = na.food_id
-                JOIN nutrient n ON na.nutrient_id = n.id
-                WHERE fn.id = ? AND n.name = ?
-            """;
-
-            PreparedStatement groupStmt = conn.prepareStatement(foodGroupSql);
-            groupStmt.setInt(1, foodId);
-            
-            
-            String dbNutrientName = nutrientMap.get(goal.getNutrient());
+            NutrientCatalog.Nutrient dbNutrient = NutrientCatalog.getInstance().find(goal.getNutrient());
             System.out.println("Nutrient selected: " + goal.getNutrient());
-            System.out.println("Mapped DB nutrient: " + dbNutrientName);
-            if (dbNutrientName == null) return null;
-            groupStmt.setString(2, dbNutrientName);
-            
-            
-            ResultSet rs1 = groupStmt.executeQuery();
+            System.out.println("Mapped DB nutrient: " + (dbNutrient != null ? dbNutrient.name() : null));
+            if (dbNutrient == null) return -1;
 
-            if (!rs1.next()) return null;
+            int food = matrix.getFoodIndex(foodId);
+            int nutrient = matrix.getNutrientIndex(dbNutrient.id());
+            if (food < 0 || nutrient < 0 || !matrix.has(food, nutrient)) return -1;
 
-            int groupId = rs1.getInt("group_id");
-            double originalAmount = rs1.getDouble("original_amount");
+            int groupId = matrix.getFoodGroupId(food);
+            double originalAmount = matrix.get(food, nutrient);
 
             // 2. define and calculate swap goal and nutrient goal
             //direction is the goal in which the user decides
-            String direction = goal.getDirection().equalsIgnoreCase("increase") ? ">" : "<";
-            double target = goal.getDirection().equalsIgnoreCase("increase")
+            boolean increase = goal.getDirection().equalsIgnoreCase("increase");
+            double target = increase
                     ? originalAmount + goal.getAmount()
                     : originalAmount - goal.getAmount();
 
             // 3. find the best match in same group, excluding the original food
-            String swapSql =
-                    "SELECT fn.description, na.value " +
-                            "FROM food_name fn " +
-                            "JOIN food_group fg ON fn.food_group_id = fg.id " +
-                            "JOIN nutrient_amount na ON fn.id = na.food_id " +
-                            "JOIN nutrient n ON na.nutrient_id = n.id " +
-                            "WHERE fg.id = ? AND n.name = ? AND na.value " + direction + " ? AND fn.id != ? " +
-                            "ORDER BY ABS(na.value - ?) ASC " +
-                            "LIMIT 1";
-
-
-            PreparedStatement swapStmt = conn.prepareStatement(swapSql);
-            swapStmt.setInt(1, groupId);
-            
-            swapStmt.setString(2, dbNutrientName);
-            swapStmt.setDouble(3, target);
-            swapStmt.setInt(4, foodId);          // exclude original food
-            swapStmt.setDouble(5, target);       // sort by closeness to target
-
-            ResultSet rs2 = swapStmt.executeQuery();
-
-            if (rs2.next()) {
-                return rs2.getString("description"); //return the best matching food
+            int best = -1;
+            double bestDistance = Double.POSITIVE_INFINITY;
+            for (int other = 0; other < matrix.getFoodCount(); other++) {
+                if (other == food || matrix.getFoodGroupId(other) != groupId || !matrix.has(other, nutrient)) {
+                    continue;
+                }
+                double value = matrix.get(other, nutrient);
+                if (increase ? value > target : value < target) {
+                    double distance = Math.abs(value - target); //sort by closeness to target
+                    if (distance < bestDistance) {
+                        best = other;
+                        bestDistance = distance;
+                    }
+                }
+            }
+
+            if (best >= 0) {
+                return matrix.getFoodId(best); //return the best matching food
             }
 
         } catch (Exception e) {
             e.printStackTrace(); //log error
         }
 
-        return null; //no swap found or an error
+        return -1; //no swap found or an error
     }
     
     
@@ -130,54 +125,57 @@ public class SwapEngine {
             result.append(" • ").append(g).append("\n");
         }
 
-        //sql query
-        StringBuilder sql = new StringBuilder("""
-        SELECT fn.description, fg.name AS group_name
-        FROM food_name fn
-        JOIN food_group fg ON fn.food_group_id = fg.id
-        WHERE fn.id IN (
-            SELECT food_id
-            FROM nutrient_amount na
-            JOIN nutrient n ON na.nutrient_id = n.id
-            WHERE
-    """);
+        try {
+            NutrientMatrix matrix = NutrientMatrix.getInstance();
+            NutrientCatalog catalog = NutrientCatalog.getInstance();
 
-        for (int i = 0; i < goals.size(); i++) {
-            if (i > 0) sql.append(" OR ");
-            SwapGoal goal = goals.get(i);
-            String dir = goal.getDirection().equalsIgnoreCase("increase") ? ">" : "<";
-            sql.append("(n.name = ? AND na.value ").append(dir).append(" ?)");
-        }
-
-        //make sure only foods matching all the nutrient conditions are returned
-        sql.append(" GROUP BY food_id HAVING COUNT(DISTINCT n.name) = ").append(goals.size()).append(")");
-
-        try (Connection conn = DBConnection.getInstance().getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+            int[] nutrients = new int[goals.size()];
+            for (int i = 0; i < goals.size(); i++) {
+                int id = catalog.getId(goals.get(i).getNutrient());
+                if (id < 0) return "Unknown nutrient: " + goals.get(i).getNutrient();
+                nutrients[i] = matrix.getNutrientIndex(id);
+                if (nutrients[i] < 0) return "No food found satisfying all goals.";
+            }
 
-            int i = 1;
-           
-            
-            for (SwapGoal g : goals) {
-                String dbName = nutrientMap.get(g.getNutrient());
-                if (dbName == null) return "Unknown nutrient: " + g.getNutrient();
-                stmt.setString(i++, dbName);
-                stmt.setDouble(i++, g.getAmount());
+            //make sure only foods matching all the nutrient conditions are returned
+            List<Integer> foodIds = new ArrayList<>();
+            for (int food = 0; food < matrix.getFoodCount(); food++) {
+                if (satisfiesAll(matrix, food, goals, nutrients)) {
+                    foodIds.add(matrix.getFoodId(food));
+                }
             }
 
-            ResultSet rs = stmt.executeQuery();
-            int count = 0;
+            if (foodIds.isEmpty()) return "No food found satisfying all goals.";
 
             //collect the results
-            while (rs.next()) {
-                count++;
-                result.append("\n Candidate ").append(count).append(":\n");
-                result.append(" • ").append(rs.getString("description")).append("\n");
-                result.append(" • Group: ").append(rs.getString("group_name")).append("\n");
+            try (Connection conn = DBConnection.getInstance().getConnection()) {
+                String sql = """
+                    SELECT fn.description, fg.name AS group_name
+                    FROM food_name fn
+                    JOIN food_group fg ON fn.food_group_id = fg.id
+                    WHERE fn.id IN (%s)
+                    ORDER BY fn.id
+                """.formatted(String.join(", ", Collections.nCopies(foodIds.size(), "?")));
+
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    int i = 1;
+                    for (int id : foodIds) {
+                        stmt.setInt(i++, id);
+                    }
+
+                    ResultSet rs = stmt.executeQuery();
+                    int count = 0;
+                    while (rs.next()) {
+                        count++;
+                        result.append("\n Candidate ").append(count).append(":\n");
+                        result.append(" • ").append(rs.getString("description")).append("\n");
+                        result.append(" • Group: ").append(rs.getString("group_name")).append("\n");
+                    }
+
+                    if (count == 0) return "No food found satisfying all goals.";
+                }
             }
 
-            if (count == 0) return "No food found satisfying all goals.";
-
         } catch (Exception e) {
             e.printStackTrace();
             return "Error while optimizing.";
@@ -186,4 +184,17 @@ public class SwapEngine {
         return result.toString();
     }
 
+    /**
+     * @return true if the food has an amount of every goal nutrient in the direction of the goal
+     */
+    private static boolean satisfiesAll(NutrientMatrix matrix, int food, List<SwapGoal> goals, int[] nutrients) {
+        for (int i = 0; i < goals.size(); i++) {
+            if (!matrix.has(food, nutrients[i])) return false;
+            double value = matrix.get(food, nutrients[i]);
+            boolean increase = goals.get(i).getDirection().equalsIgnoreCase("increase");
+            if (increase ? value <= goals.get(i).getAmount() : value >= goals.get(i).getAmount()) return false;
+        }
+        return true;
+    }
+
 }
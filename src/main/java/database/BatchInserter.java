@@ -0,0 +1,270 @@
+package database;
+
+import java.sql.BatchUpdateException;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * collects CSV records of one table into JDBC batches and sends a batch every batchSize rows.
+ * the rows of a batch are sent in primary key order, so InnoDB appends to its clustered index
+ * instead of splitting pages.
+ *
+ * if the database rejects a batch, the rows the driver did not report as inserted are retried
+ * one at a time, so the inserted and failed counters are the same as with row by row inserts.
+ * an optional filter leaves out rows that do not have to be written, they are counted as skipped.
+ * rows that fail are recorded in the ImportRejects of the import, with their CSV line number when known.
+ */
+class BatchInserter {
+
+    private final PreparedStatement stmt;
+    private final CNFTable table;
+    private final int batchSize;
+    private final ImportRejects rejects;
+
+    //rows of the current batch, bound when the batch is sent and kept so they can be retried one by one
+    private final List<Row> pendingRows = new ArrayList<>();
+
+    //rows that do not match are not sent, used to only write changed rows
+    private Predicate<Object[]> filter = values -> true;
+
+    //told about CSV records that are left out before they are converted, used to keep their rows
+    private Consumer<CNFCsvReader> leftOut = row -> { };
+
+    //ids of the parent tables, rows with a missing parent are rejected without sending them
+    private ParentKeys parents;
+
+    private int inserted = 0;
+    private int failed = 0;
+    private int skipped = 0;
+
+    /**
+     * @param stmt the insert statement of the table
+     * @param table the table the rows belong to
+     * @param batchSize the number of rows sent to the database at once
+     * @param rejects where rows that cannot be inserted are recorded
+     */
+    BatchInserter(PreparedStatement stmt, CNFTable table, int batchSize, ImportRejects rejects) {
+        this.stmt = stmt;
+        this.table = table;
+        this.batchSize = Math.max(1, batchSize);
+        this.rejects = rejects;
+    }
+
+    /**
+     * @param filter decides for the converted values of a row whether the row is sent
+     */
+    void setFilter(Predicate<Object[]> filter) {
+        this.filter = filter;
+    }
+
+    /**
+     * @param leftOut told about every CSV record that is not usable or cannot be converted
+     */
+    void setLeftOutListener(Consumer<CNFCsvReader> leftOut) {
+        this.leftOut = leftOut;
+    }
+
+    /**
+     * @param parents the ids of the parent tables, rows that refer to a missing id are rejected.
+     *                null sends every row and leaves the checks to the database.
+     */
+    void setParentKeys(ParentKeys parents) {
+        this.parents = parents;
+    }
+
+    /**
+     * converts the current record of a CSV reader and adds it to the current batch.
+     * the batch is sent once it holds batchSize rows.
+     *
+     * @param row a reader positioned on a record
+     * @throws SQLException if the batch cannot be sent
+     */
+    void add(CNFCsvReader row) throws SQLException {
+        if (!table.isUsable(row)) {
+            leftOut.accept(row);
+            if (table.countsUnusableAsFailed()) {
+                failed++;
+                rejectUnusable(rejects, table, row);
+            }
+            return;
+        }
+
+        Object[] values;
+        try {
+            values = table.parse(row);
+        } catch (Exception ex) {
+            leftOut.accept(row);
+            failed++;
+            rejects.reject(row.getLineNumber(), row.getRecordText(), ex);
+            return;
+        }
+        add(values, row.getLineNumber());
+    }
+
+    /**
+     * adds the already converted values of a row to the current batch.
+     * the batch is sent once it holds batchSize rows.
+     *
+     * @param values the values of the row, in the same order as the table columns
+     * @throws SQLException if the batch cannot be sent
+     */
+    void add(Object[] values) throws SQLException {
+        add(values, 0);
+    }
+
+    /**
+     * adds the converted values of a CSV record to the current batch.
+     * the batch is sent once it holds batchSize rows.
+     *
+     * @param values the values of the row, in the same order as the table columns
+     * @param lineNumber the line of the record in the CSV file, reported if the row fails
+     * @throws SQLException if the batch cannot be sent
+     */
+    void add(Object[] values, long lineNumber) throws SQLException {
+        if (!filter.test(values)) {
+            skipped++;
+            return;
+        }
+        if (parents != null) {
+            int missing = parents.findMissing(values);
+            if (missing >= 0) {
+                failed++;
+                parents.reject(rejects, lineNumber, values, missing);
+                return;
+            }
+        }
+
+        pendingRows.add(new Row(values, lineNumber));
+
+        if (pendingRows.size() >= batchSize) {
+            flush();
+        }
+    }
+
+    /**
+     * sends the rows of the current batch to the database.
+     * rows of a rejected batch are retried one at a time.
+     *
+     * @throws SQLException if the statement cannot be used anymore
+     */
+    void flush() throws SQLException {
+        if (pendingRows.isEmpty()) {
+            return;
+        }
+
+        Comparator<Object[]> keyOrder = table.keyOrder();
+        pendingRows.sort((a, b) -> keyOrder.compare(a.values(), b.values()));
+        List<Row> batch = new ArrayList<>(pendingRows.size());
+        for (Row row : pendingRows) {
+            try {
+                bind(row.values());
+            } catch (Exception ex) {
+                reportFailure(row, ex);
+                continue;
+            }
+            stmt.addBatch();
+            batch.add(row);
+        }
+        pendingRows.clear();
+
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        int[] counts = null;
+        boolean batchFailed = false;
+        try {
+            stmt.executeBatch();
+        } catch (BatchUpdateException ex) {
+            counts = ex.getUpdateCounts();
+            batchFailed = true;
+        } finally {
+            stmt.clearBatch();
+        }
+
+        if (!batchFailed) {
+            inserted += batch.size();
+        } else {
+            for (int i = 0; i < batch.size(); i++) {
+                if (counts != null && i < counts.length && counts[i] != Statement.EXECUTE_FAILED) {
+                    inserted++;
+                } else {
+                    retry(batch.get(i));
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the number of rows inserted so far
+     */
+    int getInserted() {
+        return inserted;
+    }
+
+    /**
+     * @return the number of rows that could not be inserted so far
+     */
+    int getFailed() {
+        return failed;
+    }
+
+    /**
+     * @return the number of rows left out by the filter so far
+     */
+    int getSkipped() {
+        return skipped;
+    }
+
+    /**
+     * inserts a single row of a rejected batch on its own
+     */
+    private void retry(Row row) {
+        try {
+            bind(row.values());
+            stmt.executeUpdate();
+            inserted++;
+        } catch (Exception ex) {
+            reportFailure(row, ex);
+        }
+    }
+
+    /**
+     * sets the statement parameters to the values of one row
+     */
+    private void bind(Object[] values) throws SQLException {
+        for (int i = 0; i < values.length; i++) {
+            stmt.setObject(i + 1, values[i]);
+        }
+    }
+
+    private void reportFailure(Row row, Exception ex) {
+        failed++;
+        rejects.reject(row.lineNumber(), Arrays.toString(row.values()), ex);
+    }
+
+    /**
+     * records a CSV record that does not have the fields its table needs
+     *
+     * @param rejects the rejects of the import
+     * @param table the table of the record
+     * @param row a reader positioned on the record
+     */
+    static void rejectUnusable(ImportRejects rejects, CNFTable table, CNFCsvReader row) {
+        rejects.reject(row.getLineNumber(), row.getRecordText(), "UnusableRecord",
+                "Missing fields or invalid id for " + table + " (" + row.getFieldCount() + " fields)");
+    }
+
+    /**
+     * the converted values of a row and the CSV line they came from, 0 if unknown
+     */
+    record Row(Object[] values, long lineNumber) {
+    }
+}
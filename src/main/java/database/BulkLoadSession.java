@@ -0,0 +1,253 @@
+package database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * bulk load mode for filling an empty CNF table on MySQL.
+ *
+ * while the session is open the import connection does not check foreign keys or unique indexes,
+ * and the foreign keys and secondary indexes of the table are dropped, so InnoDB only maintains
+ * the primary key for every inserted row. when the data is in, verify() looks for rows whose parent
+ * does not exist with one set based query per foreign key of db.sql, records them in cnf_import_reject
+ * and deletes them, which is what the per row checks would have done. finish() then builds the
+ * indexes and foreign keys again in one ALTER TABLE.
+ *
+ * the foreign keys of db.sql are the reference: restoreForeignKeys adds the ones a table is missing,
+ * so a table whose bulk import died before finish() gets its constraints back on the next import.
+ */
+class BulkLoadSession {
+
+    private static final String REJECT_TABLE_SQL = "CREATE TABLE IF NOT EXISTS cnf_import_reject ("
+            + "id INT AUTO_INCREMENT PRIMARY KEY, "
+            + "table_name VARCHAR(64) NOT NULL, "
+            + "column_name VARCHAR(64) NOT NULL, "
+            + "parent_table VARCHAR(64) NOT NULL, "
+            + "row_key VARCHAR(100), "
+            + "missing_value VARCHAR(100), "
+            + "rejected_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP)";
+
+    private final CNFTable table;
+    private final List<SchemaGraph.ForeignKey> foreignKeys;
+
+    //indexes dropped by begin(), name -> columns in index order
+    private final Map<String, List<String>> droppedIndexes = new LinkedHashMap<>();
+
+    private BulkLoadSession(CNFTable table, List<SchemaGraph.ForeignKey> foreignKeys) {
+        this.table = table;
+        this.foreignKeys = foreignKeys;
+    }
+
+    /**
+     * turns off the checks of the import connection and drops the foreign keys and secondary
+     * indexes of the table. must be called before any row is written, the DDL commits.
+     *
+     * @param conn the connection of the import
+     * @param table the table to fill
+     * @param schema the schema of db.sql
+     * @return the session
+     * @throws SQLException if the database does not support the session, nothing was changed in that case
+     */
+    static BulkLoadSession begin(Connection conn, CNFTable table, SchemaGraph schema) throws SQLException {
+        disableChecks(conn);
+        try {
+            return dropIndexes(conn, new BulkLoadSession(table, schema.getForeignKeys(table.getTableName())));
+        } catch (SQLException e) {
+            enableChecks(conn);
+            throw e;
+        }
+    }
+
+    private static BulkLoadSession dropIndexes(Connection conn, BulkLoadSession session) throws SQLException {
+        String name = session.table.getTableName();
+
+        List<String> constraints = new ArrayList<>();
+        String fkSql = "SELECT CONSTRAINT_NAME FROM information_schema.TABLE_CONSTRAINTS "
+                + "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND CONSTRAINT_TYPE = 'FOREIGN KEY'";
+        try (PreparedStatement stmt = conn.prepareStatement(fkSql)) {
+            stmt.setString(1, name);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    constraints.add(rs.getString(1));
+                }
+            }
+        }
+
+        String indexSql = "SELECT INDEX_NAME, COLUMN_NAME FROM information_schema.STATISTICS "
+                + "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND INDEX_NAME <> 'PRIMARY' AND NON_UNIQUE = 1 "
+                + "ORDER BY INDEX_NAME, SEQ_IN_INDEX";
+        try (PreparedStatement stmt = conn.prepareStatement(indexSql)) {
+            stmt.setString(1, name);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    session.droppedIndexes.computeIfAbsent(rs.getString(1), k -> new ArrayList<>()).add(rs.getString(2));
+                }
+            }
+        }
+
+        try (Statement stmt = conn.createStatement()) {
+            //DDL commits, so the reject table is created now instead of during verify()
+            stmt.executeUpdate(REJECT_TABLE_SQL);
+            if (!constraints.isEmpty()) {
+                stmt.executeUpdate("ALTER TABLE " + name + " DROP FOREIGN KEY "
+                        + String.join(", DROP FOREIGN KEY ", constraints));
+            }
+            if (!session.droppedIndexes.isEmpty()) {
+                stmt.executeUpdate("ALTER TABLE " + name + " DROP INDEX "
+                        + String.join(", DROP INDEX ", session.droppedIndexes.keySet()));
+            }
+        }
+        return session;
+    }
+
+    /**
+     * turns off foreign key and unique checks for the rest of a connection's session,
+     * used by every connection that writes rows during a bulk import
+     *
+     * @param conn the connection
+     * @throws SQLException if the database does not have these settings
+     */
+    static void disableChecks(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("SET foreign_key_checks = 0, unique_checks = 0");
+        }
+    }
+
+    /**
+     * turns foreign key and unique checks back on
+     *
+     * @param conn the connection
+     * @throws SQLException if the database does not have these settings
+     */
+    static void enableChecks(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("SET foreign_key_checks = 1, unique_checks = 1");
+        }
+    }
+
+    /**
+     * records every row whose parent row does not exist in cnf_import_reject and deletes it.
+     * runs one query per foreign key, inside the import transaction.
+     *
+     * @param conn the connection of the import
+     * @return the number of deleted rows
+     * @throws SQLException if the queries fail
+     */
+    int verify(Connection conn) throws SQLException {
+        if (foreignKeys.isEmpty()) {
+            return 0;
+        }
+
+        String name = table.getTableName();
+        String[] columns = table.getColumns();
+        StringBuilder rowKey = new StringBuilder("CONCAT_WS(','");
+        for (int i = 0; i < table.getKeyColumns(); i++) {
+            rowKey.append(", c.").append(columns[i]);
+        }
+        rowKey.append(')');
+
+        int deleted = 0;
+        try (Statement stmt = conn.createStatement()) {
+            for (SchemaGraph.ForeignKey fk : foreignKeys) {
+                String orphans = " FROM " + name + " c LEFT JOIN " + fk.parentTable() + " p"
+                        + " ON p." + fk.parentColumn() + " = c." + fk.column()
+                        + " WHERE c." + fk.column() + " IS NOT NULL AND p." + fk.parentColumn() + " IS NULL";
+
+                int rejected = stmt.executeUpdate("INSERT INTO cnf_import_reject "
+                        + "(table_name, column_name, parent_table, row_key, missing_value) "
+                        + "SELECT '" + name + "', '" + fk.column() + "', '" + fk.parentTable() + "', "
+                        + rowKey + ", c." + fk.column() + orphans);
+                if (rejected == 0) {
+                    continue;
+                }
+
+                deleted += stmt.executeUpdate("DELETE FROM " + name + " WHERE " + fk.column() + " IS NOT NULL AND "
+                        + fk.column() + " NOT IN (SELECT " + fk.parentColumn() + " FROM " + fk.parentTable() + ")");
+                System.out.println(rejected + " rows of " + name + " refer to a missing " + fk.parentTable()
+                        + ". They were moved to cnf_import_reject.");
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * builds the dropped indexes and the foreign keys of db.sql again and turns the checks back on.
+     * called after the import transaction, whether it was committed or rolled back.
+     *
+     * @param conn the connection of the import
+     * @throws SQLException if the table cannot be altered
+     */
+    void finish(Connection conn) throws SQLException {
+        try {
+            List<String> clauses = new ArrayList<>();
+            for (Map.Entry<String, List<String>> index : droppedIndexes.entrySet()) {
+                clauses.add("ADD INDEX " + index.getKey() + " (" + String.join(", ", index.getValue()) + ")");
+            }
+            clauses.addAll(missingForeignKeys(conn, table, foreignKeys));
+            if (!clauses.isEmpty()) {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.executeUpdate("ALTER TABLE " + table.getTableName() + " " + String.join(", ", clauses));
+                }
+            }
+        } finally {
+            enableChecks(conn);
+        }
+    }
+
+    /**
+     * adds the foreign keys of db.sql a table is missing, for example after a bulk import died
+     *
+     * @param conn a connection without pending changes, the DDL commits
+     * @param table the table to check
+     * @param schema the schema of db.sql
+     * @throws SQLException if the constraints cannot be read or added
+     */
+    static void restoreForeignKeys(Connection conn, CNFTable table, SchemaGraph schema) throws SQLException {
+        List<String> clauses = missingForeignKeys(conn, table, schema.getForeignKeys(table.getTableName()));
+        if (clauses.isEmpty()) {
+            return;
+        }
+        try (Statement stmt = conn.createStatement()) {
+            //existing rows were verified when they were imported
+            disableChecks(conn);
+            stmt.executeUpdate("ALTER TABLE " + table.getTableName() + " " + String.join(", ", clauses));
+            System.out.println("Restored " + clauses.size() + " foreign keys of " + table + ".");
+        } finally {
+            enableChecks(conn);
+        }
+    }
+
+    /**
+     * @return ADD FOREIGN KEY clauses for the foreign keys of db.sql the table does not have
+     */
+    private static List<String> missingForeignKeys(Connection conn, CNFTable table,
+                                                   List<SchemaGraph.ForeignKey> foreignKeys) throws SQLException {
+        List<String> existing = new ArrayList<>();
+        String sql = "SELECT COLUMN_NAME, REFERENCED_TABLE_NAME FROM information_schema.KEY_COLUMN_USAGE "
+                + "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND REFERENCED_TABLE_NAME IS NOT NULL";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, table.getTableName());
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    existing.add(rs.getString(1) + "->" + rs.getString(2));
+                }
+            }
+        }
+
+        List<String> clauses = new ArrayList<>();
+        for (SchemaGraph.ForeignKey fk : foreignKeys) {
+            if (!existing.contains(fk.column() + "->" + fk.parentTable())) {
+                clauses.add("ADD FOREIGN KEY (" + fk.column() + ") REFERENCES "
+                        + fk.parentTable() + "(" + fk.parentColumn() + ")");
+            }
+        }
+        return clauses;
+    }
+}
@@ -0,0 +1,511 @@
+package database;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * reads Canadian Nutrient File CSV files straight from a memory mapped file.
+ *
+ * the reader works like a ResultSet: next() moves to the next record and the getters read
+ * a field of the current record by its index (starting at 0). records are tokenized following
+ * RFC 4180 (quoted fields, doubled quotes, line breaks inside quotes) directly over the bytes,
+ * and the fields are only views into the mapped file. numbers and dates are decoded from those
+ * bytes by FieldDecoder without creating Strings, only getString allocates the decoded text.
+ *
+ * every field is trimmed the same way String.trim() does.
+ * the CNF release is encoded in Windows-1252, which is the default charset of the reader.
+ */
+class CNFCsvReader implements Closeable {
+
+    /** charset of the CSV files published with the Canadian Nutrient File */
+    static final Charset CNF_CHARSET = Charset.forName("windows-1252");
+
+    private static final byte QUOTE = '"';
+    private static final byte COMMA = ',';
+    private static final byte CR = '\r';
+    private static final byte LF = '\n';
+
+    private final ByteBuffer data;
+    private final Charset charset;
+    private final FileChannel channel;
+
+    //start of the next record and its line number (starting at 1)
+    private int position;
+    private long line = 1;
+    private long recordLine;
+
+    //start and end of the current record
+    private int recordStart;
+    private int recordEnd;
+
+    //start and end (exclusive) of every field of the current record, after trimming and without quotes
+    private int[] starts = new int[16];
+    private int[] ends = new int[16];
+    //true if the field contains doubled quotes that still have to be unescaped
+    private boolean[] escaped = new boolean[16];
+    private int fieldCount;
+
+    /**
+     * memory maps a CSV file that is encoded in the CNF charset
+     *
+     * @param csvFile the path to the CSV file
+     * @return a reader positioned before the first record (the header)
+     * @throws IOException if the file cannot be opened or is larger than 2 GB
+     */
+    static CNFCsvReader open(String csvFile) throws IOException {
+        return open(csvFile, CNF_CHARSET);
+    }
+
+    /**
+     * memory maps a CSV file
+     *
+     * @param csvFile the path to the CSV file
+     * @param charset the charset used to decode text fields
+     * @return a reader positioned before the first record (the header)
+     * @throws IOException if the file cannot be opened or is larger than 2 GB
+     */
+    static CNFCsvReader open(String csvFile, Charset charset) throws IOException {
+        FileChannel channel = FileChannel.open(Path.of(csvFile), StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("CSV file is too large to be mapped: " + csvFile);
+            }
+            return new CNFCsvReader(channel.map(FileChannel.MapMode.READ_ONLY, 0, size), charset, channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * reads CSV data that is already in memory
+     *
+     * @param data the CSV bytes, from the buffer position to its limit
+     * @param charset the charset used to decode text fields
+     */
+    CNFCsvReader(ByteBuffer data, Charset charset) {
+        this(data, charset, null);
+    }
+
+    private CNFCsvReader(ByteBuffer data, Charset charset, FileChannel channel) {
+        this.data = data.slice();
+        this.charset = charset;
+        this.channel = channel;
+    }
+
+    /**
+     * splits the records after the current position into ranges of about the same size,
+     * so they can be read by different threads. ranges only end after the line break of a record,
+     * line breaks inside quoted fields are skipped the same way next() skips them.
+     * the readers share the data of this reader, which is moved to the end.
+     *
+     * @param parts the number of ranges wanted
+     * @return one reader per range, each knowing the line number of its first record
+     */
+    List<CNFCsvReader> split(int parts) {
+        List<CNFCsvReader> ranges = new ArrayList<>();
+        int limit = data.limit();
+        long target = Math.max(1, (limit - position) / Math.max(1, parts));
+
+        int start = position;
+        long startLine = line;
+        long lines = line;
+        boolean fieldStart = true;
+        boolean quoted = false;
+
+        //same states as next(): a quote only opens a quoted field after leading blanks
+        for (int i = position; i < limit; i++) {
+            byte b = data.get(i);
+            if (quoted) {
+                if (b == QUOTE) {
+                    if (i + 1 < limit && data.get(i + 1) == QUOTE) {
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else if (b == LF) {
+                    lines++;
+                }
+            } else if (b == LF) {
+                lines++;
+                fieldStart = true;
+                if (i + 1 - start >= target) {
+                    ranges.add(range(start, i + 1, startLine));
+                    start = i + 1;
+                    startLine = lines;
+                }
+            } else if (b == COMMA) {
+                fieldStart = true;
+            } else if (fieldStart && b == QUOTE) {
+                quoted = true;
+                fieldStart = false;
+            } else if (!isBlank(b)) {
+                fieldStart = false;
+            }
+        }
+
+        if (start < limit) {
+            ranges.add(range(start, limit, startLine));
+        }
+        position = limit;
+        line = lines;
+        return ranges;
+    }
+
+    private CNFCsvReader range(int start, int end, long firstLine) {
+        CNFCsvReader reader = new CNFCsvReader(data.slice(start, end - start), charset, null);
+        reader.line = firstLine;
+        return reader;
+    }
+
+    /**
+     * moves to the next record
+     *
+     * @return true if there is a record, false at the end of the data
+     */
+    boolean next() {
+        int limit = data.limit();
+        if (position >= limit) {
+            fieldCount = 0;
+            return false;
+        }
+
+        recordStart = position;
+        recordLine = line;
+        fieldCount = 0;
+        int i = position;
+
+        while (true) {
+            //skip leading blanks to find out whether the field is quoted
+            int fieldStart = i;
+            while (i < limit && data.get(i) != LF && isBlank(data.get(i))) {
+                i++;
+            }
+
+            int start;
+            int end;
+            boolean hasEscapes = false;
+
+            if (i < limit && data.get(i) == QUOTE) {
+                start = ++i;
+                while (i < limit) {
+                    byte b = data.get(i);
+                    if (b == QUOTE) {
+                        if (i + 1 < limit && data.get(i + 1) == QUOTE) {
+                            hasEscapes = true;
+                            i += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    if (b == LF) {
+                        line++;
+                    }
+                    i++;
+                }
+                end = i;
+                //skip the closing quote and anything up to the separator
+                if (i < limit) {
+                    i++;
+                }
+                while (i < limit && data.get(i) != COMMA && data.get(i) != LF) {
+                    i++;
+                }
+            } else {
+                start = fieldStart;
+                while (i < limit && data.get(i) != COMMA && data.get(i) != LF) {
+                    i++;
+                }
+                end = i;
+            }
+
+            addField(start, end, hasEscapes);
+
+            if (i < limit && data.get(i) == COMMA) {
+                i++;
+                continue;
+            }
+
+            //end of the record: skip the line break
+            recordEnd = i;
+            if (i < limit) {
+                line++;
+                position = i + 1;
+            } else {
+                position = limit;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * @return the number of fields of the current record
+     */
+    int getFieldCount() {
+        return fieldCount;
+    }
+
+    /**
+     * @param index the field index
+     * @return true if the field is missing or only contains blanks
+     */
+    boolean isEmpty(int index) {
+        return index >= fieldCount || starts[index] >= ends[index];
+    }
+
+    /**
+     * @param index the field index
+     * @return the trimmed text of the field, an empty String if the field is missing
+     */
+    String getString(int index) {
+        if (isEmpty(index)) {
+            return "";
+        }
+        String text = decode(starts[index], ends[index]);
+        return escaped[index] ? text.replace("\"\"", "\"") : text;
+    }
+
+    /**
+     * @param index the field index
+     * @return true if the field is a whole number in the int range
+     */
+    boolean isInt(int index) {
+        return !isEmpty(index) && FieldDecoder.decodeInt(data, starts[index], ends[index]) != FieldDecoder.NO_INT;
+    }
+
+    /**
+     * @param index the field index
+     * @return the field as an int
+     * @throws NumberFormatException if the field is not a whole number
+     */
+    int getInt(int index) {
+        long value = isEmpty(index) ? FieldDecoder.NO_INT : FieldDecoder.decodeInt(data, starts[index], ends[index]);
+        if (value == FieldDecoder.NO_INT) {
+            throw invalidNumber(index);
+        }
+        return (int) value;
+    }
+
+    /**
+     * @param index the field index
+     * @param empty the value of an empty field
+     * @return the field as an int, or empty if the field is empty
+     * @throws NumberFormatException if the field is not empty and not a whole number
+     */
+    int getInt(int index, int empty) {
+        return isEmpty(index) ? empty : getInt(index);
+    }
+
+    /**
+     * @param index the field index
+     * @return the field as a double
+     * @throws NumberFormatException if the field is not a number
+     */
+    double getDouble(int index) {
+        double value = isEmpty(index) ? Double.NaN : FieldDecoder.decodeDouble(data, starts[index], ends[index]);
+        if (Double.isNaN(value)) {
+            throw invalidNumber(index);
+        }
+        return value;
+    }
+
+    /**
+     * @param index the field index
+     * @param empty the value of an empty field
+     * @return the field as a double, or empty if the field is empty
+     * @throws NumberFormatException if the field is not empty and not a number
+     */
+    double getDouble(int index, double empty) {
+        return isEmpty(index) ? empty : getDouble(index);
+    }
+
+    /**
+     * @param index the field index
+     * @return true if the field has the form YYYY-MM-DD
+     */
+    boolean isDate(int index) {
+        return !isEmpty(index) && FieldDecoder.isDateShape(data, starts[index], ends[index]);
+    }
+
+    /**
+     * reads a date the same way Date.valueOf(String) does: the month has to be between 1 and 12
+     * and the day between 1 and 31, days past the end of the month roll over into the next month.
+     *
+     * @param index the field index
+     * @return the field as a date
+     * @throws IllegalArgumentException if the field is not a valid YYYY-MM-DD date
+     */
+    Date getDate(int index) {
+        int day = isEmpty(index) ? FieldDecoder.NO_DATE : FieldDecoder.decodeDate(data, starts[index], ends[index]);
+        if (day == FieldDecoder.NO_DATE) {
+            throw new IllegalArgumentException("Invalid date in field " + index + ": " + getString(index));
+        }
+        return Date.valueOf(LocalDate.ofEpochDay(day));
+    }
+
+    /**
+     * @param index the field index
+     * @return the field as a date, or null if it does not have the form YYYY-MM-DD
+     * @throws IllegalArgumentException if the field has the form but is not a valid date, like 2001-13-01
+     */
+    Date getDateOrNull(int index) {
+        return isDate(index) ? getDate(index) : null;
+    }
+
+    /**
+     * @param index the field index
+     * @return true if the field only holds the digits 0 to 9
+     */
+    boolean isDigits(int index) {
+        return !isEmpty(index) && FieldDecoder.isDigits(data, starts[index], ends[index]);
+    }
+
+    /**
+     * @param index the field index
+     * @param minLength the smallest number of letters
+     * @return true if the field holds at least minLength ASCII letters and nothing else
+     */
+    boolean isLetters(int index, int minLength) {
+        return !isEmpty(index) && FieldDecoder.isLetters(data, starts[index], ends[index], minLength);
+    }
+
+    /**
+     * moves back before the first record, so the data can be read again
+     */
+    void rewind() {
+        seek(0, 1);
+    }
+
+    /**
+     * @return the byte offset of the next record, used with seek to continue an import later
+     */
+    long getPosition() {
+        return position;
+    }
+
+    /**
+     * moves to a byte offset returned by getPosition
+     *
+     * @param offset the byte offset of a record
+     * @param lineNumber the line number of that record
+     */
+    void seek(long offset, long lineNumber) {
+        if (offset < 0 || offset > data.limit()) {
+            throw new IllegalArgumentException("Offset " + offset + " is outside of the data");
+        }
+        position = (int) offset;
+        line = lineNumber;
+        fieldCount = 0;
+    }
+
+    /**
+     * @return true if every record has been read
+     */
+    boolean isAtEnd() {
+        return position >= data.limit();
+    }
+
+    /**
+     * @return the size of the data in bytes
+     */
+    long getSize() {
+        return data.limit();
+    }
+
+    /**
+     * @return the line number the current record starts on, starting at 1 for the header
+     */
+    long getLineNumber() {
+        return recordLine;
+    }
+
+    /**
+     * @return the line number of the next record
+     */
+    long getNextLineNumber() {
+        return line;
+    }
+
+    /**
+     * @return the SHA-256 hash of all bytes of the data, as lowercase hex
+     */
+    String getContentHash() {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(data.duplicate().rewind());
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            //every Java platform has to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return the text of the current record as it appears in the file, used for error messages
+     */
+    String getRecordText() {
+        int end = recordEnd;
+        if (end > recordStart && data.get(end - 1) == CR) {
+            end--;
+        }
+        return decode(recordStart, end);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    /**
+     * stores the bounds of a field of the current record, trimmed like String.trim()
+     */
+    private void addField(int start, int end, boolean hasEscapes) {
+        while (start < end && isBlank(data.get(start))) {
+            start++;
+        }
+        while (end > start && isBlank(data.get(end - 1))) {
+            end--;
+        }
+
+        if (fieldCount == starts.length) {
+            starts = Arrays.copyOf(starts, fieldCount * 2);
+            ends = Arrays.copyOf(ends, fieldCount * 2);
+            escaped = Arrays.copyOf(escaped, fieldCount * 2);
+        }
+        starts[fieldCount] = start;
+        ends[fieldCount] = end;
+        escaped[fieldCount] = hasEscapes;
+        fieldCount++;
+    }
+
+    private String decode(int start, int end) {
+        byte[] bytes = new byte[end - start];
+        data.get(start, bytes);
+        return new String(bytes, charset);
+    }
+
+    private NumberFormatException invalidNumber(int index) {
+        return new NumberFormatException("Invalid number in field " + index + ": " + getString(index));
+    }
+
+    private static boolean isBlank(byte b) {
+        //same characters String.trim() removes, bytes above 127 are never blank
+        return b >= 0 && b <= ' ';
+    }
+}
@@ -0,0 +1,250 @@
+package database;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BooleanSupplier;
+
+/**
+ * runs the CNF table imports in parallel while respecting the foreign keys of the schema.
+ *
+ * the foreign key graph is read from db.sql. a table import only starts after the imports of all
+ * tables it references are done, every other import runs at the same time on its own thread and
+ * database connection. an import that fails is not retried, and the imports of the tables that
+ * reference it are skipped, since their rows would be rejected for missing parents.
+ * when everything is finished the wall time of every table and the critical path
+ * (the longest chain of imports that had to wait for each other) are printed.
+ */
+public class CNFImportScheduler {
+
+    private final SchemaGraph schema;
+    private final int threads;
+
+    //import task of every registered table, in registration order
+    private final Map<String, BooleanSupplier> tasks = new LinkedHashMap<>();
+
+    //start and end of every import in nanoseconds, filled while running
+    private final Map<String, long[]> timings = Collections.synchronizedMap(new HashMap<>());
+
+    /**
+     * creates a scheduler that uses one thread per available processor
+     *
+     * @param schemaFile the path to db.sql
+     * @throws IOException if the schema cannot be read
+     */
+    public CNFImportScheduler(String schemaFile) throws IOException {
+        this(schemaFile, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param schemaFile the path to db.sql
+     * @param threads the maximum number of imports running at the same time
+     * @throws IOException if the schema cannot be read
+     */
+    public CNFImportScheduler(String schemaFile, int threads) throws IOException {
+        this(SchemaGraph.load(schemaFile), threads);
+    }
+
+    /**
+     * @param schema the foreign key graph of the database
+     * @param threads the maximum number of imports running at the same time
+     */
+    public CNFImportScheduler(SchemaGraph schema, int threads) {
+        this.schema = schema;
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * registers the import of a table
+     *
+     * @param table the name of the table the task fills
+     * @param task the import, for example a CNFLoader method call, returns false if it failed
+     */
+    public void addTable(String table, BooleanSupplier task) {
+        tasks.put(table.toLowerCase(), task);
+    }
+
+    /**
+     * runs all registered imports and waits until they are finished.
+     * parents that were not registered are treated as already loaded.
+     *
+     * @return true if every import succeeded
+     * @throws IllegalStateException if the registered tables reference each other in a cycle
+     */
+    public boolean run() {
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, Math.max(1, tasks.size())));
+        Map<String, CompletableFuture<Boolean>> scheduled = new HashMap<>();
+        timings.clear();
+        long start = System.nanoTime();
+
+        try {
+            for (String table : tasks.keySet()) {
+                schedule(table, scheduled, new HashSet<>(), pool);
+            }
+            CompletableFuture.allOf(scheduled.values().toArray(CompletableFuture<?>[]::new)).join();
+        } finally {
+            pool.shutdown();
+        }
+
+        return printReport(start, System.nanoTime(), scheduled);
+    }
+
+    /**
+     * creates the future of a table import that starts once the imports of its parents are done.
+     * the future is false if the import failed or was skipped because a parent failed
+     */
+    private CompletableFuture<Boolean> schedule(String table, Map<String, CompletableFuture<Boolean>> scheduled,
+                                                Set<String> visiting, ExecutorService pool) {
+        CompletableFuture<Boolean> existing = scheduled.get(table);
+        if (existing != null) {
+            return existing;
+        }
+        if (!visiting.add(table)) {
+            throw new IllegalStateException("Foreign key cycle involving table " + table);
+        }
+
+        List<String> parentNames = registeredParents(table);
+        List<CompletableFuture<Boolean>> parents = new ArrayList<>();
+        for (String parent : parentNames) {
+            parents.add(schedule(parent, scheduled, visiting, pool));
+        }
+
+        BooleanSupplier task = tasks.get(table);
+        CompletableFuture<Boolean> future = CompletableFuture
+                .allOf(parents.toArray(CompletableFuture<?>[]::new))
+                .thenApplyAsync(done -> {
+                    for (int i = 0; i < parents.size(); i++) {
+                        if (!parents.get(i).join()) {
+                            System.err.println("Skipping import of " + table + " because the import of "
+                                    + parentNames.get(i) + " failed.");
+                            return false;
+                        }
+                    }
+                    return runTimed(table, task);
+                }, pool);
+
+        visiting.remove(table);
+        scheduled.put(table, future);
+        return future;
+    }
+
+    /**
+     * runs a single import and records when it started and ended
+     *
+     * @return true if the import succeeded
+     */
+    private boolean runTimed(String table, BooleanSupplier task) {
+        long begin = System.nanoTime();
+        try {
+            return task.getAsBoolean();
+        } catch (Throwable e) {
+            System.err.println("Import of " + table + " failed.");
+            e.printStackTrace();
+            return false;
+        } finally {
+            timings.put(table, new long[]{begin, System.nanoTime()});
+        }
+    }
+
+    /**
+     * @return the parents of the table that have an import registered
+     */
+    private List<String> registeredParents(String table) {
+        List<String> parents = new ArrayList<>();
+        for (String parent : schema.getParents(table)) {
+            if (tasks.containsKey(parent)) {
+                parents.add(parent);
+            }
+        }
+        return parents;
+    }
+
+    /**
+     * prints the wall time of every import, the critical path and the time saved
+     * compared to running the imports one after another
+     *
+     * @return true if every import succeeded
+     */
+    private boolean printReport(long start, long end, Map<String, CompletableFuture<Boolean>> scheduled) {
+        Map<String, Long> pathLength = new HashMap<>();
+        Map<String, String> pathPrevious = new HashMap<>();
+        long sequential = 0;
+        boolean succeeded = true;
+
+        System.out.println("CNF import timings:");
+        for (String table : tasks.keySet()) {
+            long[] t = timings.get(table);
+            boolean loaded = scheduled.get(table).join();
+            succeeded &= loaded;
+            if (t == null) {
+                System.out.printf("  %-20s skipped, an import it depends on failed%n", table);
+                continue;
+            }
+            sequential += t[1] - t[0];
+            System.out.printf("  %-20s started at %6d ms, took %6d ms%s%n",
+                    table, millis(t[0] - start), millis(t[1] - t[0]), loaded ? "" : ", failed");
+        }
+
+        String last = null;
+        for (String table : tasks.keySet()) {
+            long length = criticalPath(table, pathLength, pathPrevious);
+            if (last == null || length > pathLength.get(last)) {
+                last = table;
+            }
+        }
+
+        List<String> path = new ArrayList<>();
+        for (String table = last; table != null; table = pathPrevious.get(table)) {
+            path.add(0, table);
+        }
+
+        long wall = end - start;
+        System.out.printf("Critical path: %s (%d ms)%n", String.join(" -> ", path),
+                last == null ? 0 : millis(pathLength.get(last)));
+        System.out.printf("Total import time: %d ms, sequential import time: %d ms, speedup %.1fx%n",
+                millis(wall), millis(sequential), wall == 0 ? 1.0 : (double) sequential / wall);
+        return succeeded;
+    }
+
+    /**
+     * @return the summed import time of the longest chain of imports that ends with the table
+     */
+    private long criticalPath(String table, Map<String, Long> pathLength, Map<String, String> pathPrevious) {
+        Long known = pathLength.get(table);
+        if (known != null) {
+            return known;
+        }
+
+        long longestParent = 0;
+        String previous = null;
+        for (String parent : registeredParents(table)) {
+            long length = criticalPath(parent, pathLength, pathPrevious);
+            if (previous == null || length > longestParent) {
+                longestParent = length;
+                previous = parent;
+            }
+        }
+        if (previous != null) {
+            pathPrevious.put(table, previous);
+        }
+
+        //a skipped import took no time
+        long[] t = timings.get(table);
+        long length = longestParent + (t != null ? t[1] - t[0] : 0);
+        pathLength.put(table, length);
+        return length;
+    }
+
+    private static long millis(long nanos) {
+        return nanos / 1_000_000;
+    }
+}
@@ -1,805 +1,941 @@
 package database;
 
-import model.FoodGroup;
-
-import com.opencsv.CSVReader;
-
-import java.io.FileReader;
+import com.mysql.cj.jdbc.JdbcStatement;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
-import java.io.BufferedReader;
-import java.io.FileReader;
-import java.sql.Date;
 import java.sql.ResultSet;
-import java.util.Arrays;
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 //Use of AI: Used AI to debug code, create SQL statements, and improve operations
 /*this class has methods for creating nutritional related database tables from the CSV Files
- * these methods make sure that the data is only inserted if the table is empty
+ * these methods make sure that a file is only imported again when its content changed
+ *
+ * the SHA-256 hash and row count of every imported file is stored in cnf_import_state,
+ * an empty table is filled from the file, a table that already has data only gets the
+ * rows that were added, changed or removed in the new release (compared by primary key)
+ *
+ * the files are read with CNFCsvReader, which memory maps them and decodes the
+ * Windows-1252 text of the CNF release
+ *
+ * rows are sent to the database in JDBC batches inside one transaction per table,
+ * see setBatchSize to change the number of rows per batch
+ *
+ * in bulk mode (the default) each file is first streamed through LOAD DATA LOCAL INFILE,
+ * if the server does not allow local infile the batched inserts are used instead
+ * (the embedded backend always uses the batched inserts, see StorageBackend)
+ *
+ * an empty table is filled from its CSV file in chunks (see setCheckpointInterval), every chunk is
+ * committed together with a checkpoint in cnf_import_checkpoint, so an import that dies halfway
+ * continues at the checkpoint on the next start instead of starting over
+ *
+ * CSV files of at least PARALLEL_MIN_BYTES are parsed on several cores and inserted by several
+ * connections instead (see setParallelism and ParallelCsvImport)
+ *
+ * in bulk session mode (the default) an empty table is filled without foreign key and unique checks
+ * and without its secondary indexes, which are built afterwards; rows with a missing parent are then
+ * found with one query per foreign key and moved to cnf_import_reject (see BulkLoadSession)
+ *
+ * rows that cannot be converted or inserted are written to a reject CSV file per table
+ * (see setRejectDirectory), only the first few stack traces are printed
+ *
+ * before a table with foreign keys is imported, the ids of its parent tables are read into memory
+ * (see ParentKeys), so rows with a missing parent are rejected before they are sent
+ *
+ * a release can also be imported straight from its zip archive (see loadArchive), the tables
+ * of the entries are recognized by their header rows and nothing is extracted to disk
+ *
+ * when a compiled snapshot is set (see useSnapshot and CNFSnapshotCompiler) the empty tables it contains
+ * are filled from its already converted rows instead of parsing the CSV files, as long as the
+ * snapshot was compiled from the same CSV files
+ *
+ * every import uses its own connection, so the loaders can be run at the same time
+ * from different threads (see CNFImportScheduler)
  */
 
 public class CNFLoader {
 
-	
-	/**
-     * load food group data from the CSV file into the food_group. 
-     * skips the import if the table already has data.
-     *
-     * @param csvFile the path to the CSV file
-     */
-    public static void loadFoodGroups(String csvFile) {
-        String checkSql = "SELECT COUNT(*) FROM food_group";
-        String insertSql = "INSERT INTO food_group (id, code, name, name_french) VALUES (?, ?, ?, ?)";
+    //number of rows sent to the database in one batch
+    private static int batchSize = 1000;
 
-        try (Connection conn = DBConnection.getInstance().getConnection();
+    //whether files are loaded with LOAD DATA LOCAL INFILE before falling back to batches
+    private static boolean bulkLoadEnabled = true;
 
-             PreparedStatement checkStmt = conn.prepareStatement(checkSql);
-             ResultSet rs = checkStmt.executeQuery()) {
+    //whether empty tables are filled in a BulkLoadSession
+    private static boolean bulkSessionEnabled = true;
 
-            if (rs.next() && rs.getInt(1) > 0) {
-                System.out.println("food_group table already contains data. Skipping import.");
-                return;
-            }
+    //db.sql, the foreign keys a bulk session verifies and restores
+    private static String schemaFile = "src/main/java/database/db.sql";
+    private static SchemaGraph schema;
 
-            try (CSVReader reader = new CSVReader(new FileReader(csvFile));
-                 PreparedStatement stmt = conn.prepareStatement(insertSql)) {
-
-                reader.readNext(); // Skip header
-                int inserted = 0, failed = 0;
-                String[] parts;
-
-                while ((parts = reader.readNext()) != null) {
-                    if (parts.length < 4) continue;
-
-                    try {
-                        stmt.setInt(1, Integer.parseInt(parts[0].trim()));
-                        stmt.setString(2, parts[1].trim());
-                        stmt.setString(3, parts[2].trim());
-                        stmt.setString(4, parts[3].trim());
-                        stmt.executeUpdate();
-                        inserted++;
-                    } catch (Exception ex) {
-                        failed++;
-                        System.err.println("Failed to insert row: " + Arrays.toString(parts));
-                        ex.printStackTrace();
-                    }
-                }
+    //compiled snapshot of the CNF release, null to read the CSV files
+    private static CNFSnapshot snapshot;
 
-                System.out.println("Finished loading food_group table.");
-                System.out.println("Rows inserted: " + inserted);
-                System.out.println("Rows failed: " + failed);
+    //MySQL error codes of a server that refuses LOAD DATA LOCAL INFILE, the chunk is inserted in batches then
+    private static final int ER_NOT_ALLOWED_COMMAND = 1148;
+    private static final int ER_CLIENT_LOCAL_FILES_DISABLED = 3948;
 
-            } catch (Exception e) {
-                System.err.println("Error reading or inserting food_group CSV.");
-                e.printStackTrace();
-            }
+    //CSV files at least this large are imported by ParallelCsvImport
+    static final long PARALLEL_MIN_BYTES = 4L * 1024 * 1024;
 
-        } catch (Exception e) {
-            System.err.println("Error checking food_group table.");
-            e.printStackTrace();
-        }
-    }
-    
-    
-    /**
-     * loads the food item data from the CSV Files into the food_name table
-     * skips the import if the table already has data
-     * @param csvFile the path to the CSV file
-     */
-    public static void loadFoodItems(String csvFile) {
-        String checkSql = "SELECT COUNT(*) FROM food_name";
-        String insertSql = """
-        INSERT INTO food_name (
-            id, code, food_group_id, food_source_id,
-            description, description_french,
-            date_entry, date_publication,
-            country_code, scientific_name
-        ) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
-    """;
-
-        try (Connection conn = DBConnection.getInstance().getConnection();
-
-             PreparedStatement checkStmt = conn.prepareStatement(checkSql);
-             ResultSet rs = checkStmt.executeQuery()) {
-
-            if (rs.next() && rs.getInt(1) > 0) {
-                System.out.println("food_name table already contains data. Skipping import.");
-                return;
-            }
+    //threads that parse a large CSV file and connections that insert its rows, 1 parser turns it off
+    private static int parsers = Runtime.getRuntime().availableProcessors();
+    private static int insertWorkers = 2;
 
-            try (CSVReader reader = new CSVReader(new FileReader(csvFile));
-                 PreparedStatement stmt = conn.prepareStatement(insertSql)) {
-
-                String[] line = reader.readNext(); // Skip header
-                int inserted = 0;
-                int failed = 0;
-
-                while ((line = reader.readNext()) != null) {
-                    if (line.length < 10) continue;
-
-                    try {
-                        stmt.setInt(1, Integer.parseInt(line[0].trim()));
-                        stmt.setString(2, line[1].trim());
-                        stmt.setInt(3, Integer.parseInt(line[2].trim()));
-                        stmt.setInt(4, Integer.parseInt(line[3].trim()));
-                        stmt.setString(5, line[4].trim());
-                        stmt.setString(6, line[5].trim());
-
-                        stmt.setDate(7, isValidDate(line[6]) ? Date.valueOf(line[6].trim()) : null);
-                        stmt.setDate(8, isValidDate(line[7]) ? Date.valueOf(line[7].trim()) : null);
-
-                        String countryCode = line[8].trim();
-                        stmt.setString(9, countryCode.isEmpty() || !countryCode.matches("[A-Za-z]{2,}") ? null : countryCode);
-                        stmt.setString(10, line[9].trim());
-
-                        stmt.executeUpdate();
-                        inserted++;
-                    } catch (Exception ex) {
-                        failed++;
-                        System.err.println("Failed to insert row: " + String.join(" | ", line));
-                        ex.printStackTrace();
-                    }
-                }
+    //number of CSV records committed at once when a table is filled from its CSV file
+    private static int checkpointInterval = 50_000;
 
-                System.out.println("Finished loading food_name table.");
-                System.out.println("Rows inserted: " + inserted);
-                System.out.println("Rows failed: " + failed);
+    //called after every committed chunk
+    private static Consumer<ImportProgress> progressListener = System.out::println;
 
-            } catch (Exception fileEx) {
-                System.err.println("Error reading or inserting food_name data.");
-                fileEx.printStackTrace();
-            }
+    //where the <table>.rejects.csv files are written and how many failed rows print a stack trace
+    private static String rejectDirectory = "rejects";
+    private static int maxStackTraces = 10;
 
-        } catch (Exception dbEx) {
-            System.err.println("Error checking food_name table.");
-            dbEx.printStackTrace();
+    /**
+     * sets the number of CSV rows that are collected before they are sent to the database.
+     * a batch size of 1 inserts every row on its own.
+     *
+     * @param size the number of rows per batch
+     */
+    public static void setBatchSize(int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Batch size must be at least 1");
         }
+        batchSize = size;
     }
-    
+
     /**
-     * load the nutrient information from the CSV files into the nutrient table
-     * skips the import if the table already has data
-     * @param csvFile the path to the CSV file
+     * turns the LOAD DATA LOCAL INFILE bulk mode on or off.
+     * when it is off, or the server refuses local infile, rows are inserted in JDBC batches.
+     *
+     * @param enabled true to stream the CSV files through LOAD DATA LOCAL INFILE
      */
-    public static void loadNutrients(String csvFile) {
-        String checkSql = "SELECT COUNT(*) FROM nutrient";
-        String insertSql = """
-        INSERT INTO nutrient (
-            id, code, symbol, unit, name, name_french, tagname, decimals
-        ) VALUES (?, ?, ?, ?, ?, ?, ?, ?)
-    """;
-
-        try (Connection conn = DBConnection.getInstance().getConnection();
-
-             PreparedStatement checkStmt = conn.prepareStatement(checkSql);
-             ResultSet rs = checkStmt.executeQuery()) {
-
-            if (rs.next() && rs.getInt(1) > 0) {
-                System.out.println("nutrient table already contains data. Skipping import.");
-                return;
-            }
+    public static void setBulkLoadEnabled(boolean enabled) {
+        bulkLoadEnabled = enabled;
+    }
 
-            try (CSVReader reader = new CSVReader(new FileReader(csvFile));
-                 PreparedStatement stmt = conn.prepareStatement(insertSql)) {
+    /**
+     * turns the bulk session mode on or off. in bulk session mode an empty table is filled with
+     * foreign key and unique checks turned off and without secondary indexes, then the indexes are
+     * built and rows without a parent are moved to cnf_import_reject.
+     * databases that do not support it, such as the embedded backend, are filled with the checks on.
+     *
+     * @param enabled true to fill empty tables in a bulk session
+     */
+    public static void setBulkSessionEnabled(boolean enabled) {
+        bulkSessionEnabled = enabled;
+    }
 
-                String[] line = reader.readNext(); // Skip header
-                int inserted = 0, failed = 0;
+    /**
+     * sets the schema file whose foreign keys are verified after a bulk session
+     *
+     * @param file the path to db.sql
+     */
+    public static synchronized void setSchemaFile(String file) {
+        schemaFile = file;
+        schema = null;
+    }
 
-                while ((line = reader.readNext()) != null) {
-                    if (line.length < 8 || !line[0].trim().matches("\\d+")) {
-                        failed++;
-                        continue;
-                    }
+    /**
+     * sets the number of CSV records that are committed at once, together with a checkpoint,
+     * when a table is filled from its CSV file. a table smaller than this is committed only once.
+     *
+     * @param records the number of records per chunk
+     */
+    public static void setCheckpointInterval(int records) {
+        if (records < 1) {
+            throw new IllegalArgumentException("Checkpoint interval must be at least 1");
+        }
+        checkpointInterval = records;
+    }
 
-                    try {
-                        stmt.setInt(1, Integer.parseInt(line[0].trim()));
-                        stmt.setString(2, line[1].trim());
-                        stmt.setString(3, line[2].trim());
-                        stmt.setString(4, line[3].trim());
-                        stmt.setString(5, line[4].trim());
-                        stmt.setString(6, line[5].trim());
-                        stmt.setString(7, line[6].trim());
-                        stmt.setInt(8, line[7].trim().isEmpty() ? 0 : Integer.parseInt(line[7].trim()));
-                        stmt.executeUpdate();
-                        inserted++;
-                    } catch (Exception ex) {
-                        failed++;
-                        System.err.println("Failed to insert row: " + String.join(" | ", line));
-                        ex.printStackTrace();
-                    }
-                }
+    /**
+     * sets how large CSV files are imported. files of at least PARALLEL_MIN_BYTES are split into
+     * ranges that are parsed by several threads, and the rows are inserted by several connections.
+     * such an import is not resumed from a checkpoint, an unfinished one is completed by the
+     * primary key diff on the next start.
+     *
+     * @param parserThreads the number of threads that parse, 1 to import every file in checkpointed chunks
+     * @param insertConnections the number of connections that insert the rows
+     */
+    public static void setParallelism(int parserThreads, int insertConnections) {
+        if (parserThreads < 1 || insertConnections < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1");
+        }
+        parsers = parserThreads;
+        insertWorkers = insertConnections;
+    }
 
-                System.out.println("Finished loading nutrient table.");
-                System.out.println("Rows inserted: " + inserted);
-                System.out.println("Rows failed: " + failed);
+    /**
+     * sets the callback that is told the rows per second and estimated time left after every chunk.
+     * by default the progress is printed.
+     *
+     * @param listener the callback, called on the thread that runs the import
+     */
+    public static void setProgressListener(Consumer<ImportProgress> listener) {
+        progressListener = listener != null ? listener : progress -> { };
+    }
 
-            } catch (Exception e) {
-                System.err.println("Error reading or inserting nutrient CSV.");
-                e.printStackTrace();
-            }
+    /**
+     * sets where the rows of an import that cannot be converted or inserted are written,
+     * one &lt;table&gt;.rejects.csv file per table with the line number, error and record
+     *
+     * @param directory the directory of the reject files
+     * @param stackTraces the number of failed rows per table whose stack trace is printed
+     */
+    public static void setRejectDirectory(String directory, int stackTraces) {
+        if (stackTraces < 0) {
+            throw new IllegalArgumentException("Number of stack traces cannot be negative");
+        }
+        rejectDirectory = directory;
+        maxStackTraces = stackTraces;
+    }
 
-        } catch (Exception e) {
-            System.err.println("Error checking nutrient table.");
+    /**
+     * fills the tables from a compiled snapshot instead of their CSV files.
+     * tables the snapshot does not contain, or that it was compiled from another version of,
+     * are still read from the CSV files. so are tables that already have rows, because only the
+     * CSV records tell which of their rows to keep.
+     * if the snapshot cannot be opened the CSV files are used for every table.
+     *
+     * @param snapshotFile the path to the snapshot written by CNFSnapshotCompiler
+     */
+    public static void useSnapshot(String snapshotFile) {
+        try {
+            snapshot = CNFSnapshot.open(snapshotFile);
+            System.out.println("Using CNF snapshot " + snapshotFile + ".");
+        } catch (IOException e) {
+            snapshot = null;
+            System.err.println("Error opening CNF snapshot " + snapshotFile + ". Reading the CSV files instead.");
             e.printStackTrace();
         }
     }
 
     /**
-     * load the nutrient values for the food items into the nutrient_amount table
-     * skip the import if the table already has data
-     * @param csvFile the path to the CSV file
+     * imports a CNF release straight from its zip archive, without extracting it.
+     * the table of every entry is recognized by its header row, so the entries can have any name
+     * and sit in any folder of the archive. the tables are imported at the same time where the
+     * foreign keys of db.sql allow it (see CNFImportScheduler), and each entry is only read into
+     * memory when its import starts. like the CSV loaders, unchanged entries are skipped.
+     *
+     * @param zipFile the path to the release zip
      */
-    public static void loadNutrientAmounts(String csvFile) {
-        String checkSql = "SELECT COUNT(*) FROM nutrient_amount";
-        String insertSql = """
-        INSERT INTO nutrient_amount (
-            food_id, nutrient_id, value, std_error, num_observations, source_id, date_of_entry
-        ) VALUES (?, ?, ?, ?, ?, ?, ?)
-    """;
-
-        try (Connection conn = DBConnection.getInstance().getConnection();
-
-             PreparedStatement checkStmt = conn.prepareStatement(checkSql);
-             ResultSet rs = checkStmt.executeQuery()) {
-
-            if (rs.next() && rs.getInt(1) > 0) {
-                System.out.println("nutrient_amount table already contains data. Skipping import.");
-                return;
+    public static void loadArchive(String zipFile) {
+        try (ZipFile zip = new ZipFile(new File(zipFile), CNFCsvReader.CNF_CHARSET)) {
+            CNFImportScheduler scheduler = new CNFImportScheduler(getSchema(), Runtime.getRuntime().availableProcessors());
+            for (Map.Entry<CNFTable, ZipEntry> entry : findTables(zip).entrySet()) {
+                CNFTable table = entry.getKey();
+                scheduler.addTable(table.getTableName(), () -> importEntry(zip, table, entry.getValue()));
             }
-
-            try (CSVReader reader = new CSVReader(new FileReader(csvFile));
-                 PreparedStatement stmt = conn.prepareStatement(insertSql)) {
-
-                reader.readNext(); // Skip header
-                int inserted = 0, failed = 0;
-                String[] line;
-
-                while ((line = reader.readNext()) != null) {
-                    if (line.length < 7) {
-                        failed++;
-                        continue;
-                    }
-
-                    try {
-                        stmt.setInt(1, Integer.parseInt(line[0].trim()));
-                        stmt.setInt(2, Integer.parseInt(line[1].trim()));
-                        stmt.setDouble(3, line[2].isEmpty() ? 0.0 : Double.parseDouble(line[2].trim()));
-                        stmt.setDouble(4, line[3].isEmpty() ? 0.0 : Double.parseDouble(line[3].trim()));
-                        stmt.setInt(5, line[4].isEmpty() ? 0 : Integer.parseInt(line[4].trim()));
-                        stmt.setInt(6, line[5].isEmpty() ? 0 : Integer.parseInt(line[5].trim()));
-                        stmt.setDate(7, line[6].isEmpty() ? null : Date.valueOf(line[6].trim()));
-
-                        stmt.executeUpdate();
-                        inserted++;
-                    } catch (Exception ex) {
-                        failed++;
-                        System.err.println("Failed to insert row: " + String.join(" | ", line));
-                        ex.printStackTrace();
-                    }
-                }
-
-                System.out.println("Finished loading nutrient_amount table.");
-                System.out.println("Rows inserted: " + inserted);
-                System.out.println("Rows failed: " + failed);
-
-            } catch (Exception e) {
-                System.err.println("Error reading or inserting nutrient_amount CSV.");
-                e.printStackTrace();
-            }
-
-        } catch (Exception e) {
-            System.err.println("Error checking nutrient_amount table.");
+            scheduler.run();
+        } catch (IOException e) {
+            System.err.println("Error reading CNF archive " + zipFile + ".");
             e.printStackTrace();
         }
     }
 
-
     /**
-     * load the measure names into the measure_name table
-     * skip the import if the table already has data
-     * @param csvFile the path to the CSV file
+     * @return the entry of every CNF table found in the archive, by the header row of the entries
      */
-    public static void loadMeasures(String csvFile) {
-        String checkSql = "SELECT COUNT(*) FROM measure_name";
-        String insertSql = "INSERT INTO measure_name (id, description, description_f) VALUES (?, ?, ?)";
-
-        try (Connection conn = DBConnection.getInstance().getConnection();
-
-             PreparedStatement checkStmt = conn.prepareStatement(checkSql);
-             ResultSet rs = checkStmt.executeQuery()) {
-
-            if (rs.next() && rs.getInt(1) > 0) {
-                System.out.println("measure_name table already contains data. Skipping import.");
-                return;
+    private static Map<CNFTable, ZipEntry> findTables(ZipFile zip) throws IOException {
+        Map<CNFTable, ZipEntry> tables = new LinkedHashMap<>();
+        Enumeration<? extends ZipEntry> entries = zip.entries();
+        while (entries.hasMoreElements()) {
+            ZipEntry entry = entries.nextElement();
+            if (entry.isDirectory()) {
+                continue;
             }
+            CNFTable table = readHeader(zip, entry);
+            if (table == null) {
+                System.out.println("Skipping " + entry.getName() + ", its header is not one of a CNF table.");
+            } else if (tables.containsKey(table)) {
+                System.out.println("Skipping " + entry.getName() + ", " + table + " is already imported from "
+                        + tables.get(table).getName() + ".");
+            } else {
+                tables.put(table, entry);
+            }
+        }
+        return tables;
+    }
 
-            try (CSVReader reader = new CSVReader(new FileReader(csvFile));
-                 PreparedStatement stmt = conn.prepareStatement(insertSql)) {
-
-                reader.readNext(); // skip header
-                int inserted = 0;
-                int failed = 0;
-                String[] line;
-
-                while ((line = reader.readNext()) != null) {
-                    if (line.length < 3) {
-                        failed++;
-                        continue;
-                    }
-
-                    try {
-                        stmt.setInt(1, Integer.parseInt(line[0].trim()));
-                        stmt.setString(2, line[1].trim());
-                        stmt.setString(3, line[2].trim());
-                        stmt.executeUpdate();
-                        inserted++;
-                    } catch (Exception ex) {
-                        failed++;
-                        System.err.println("Failed to insert row: " + String.join(" | ", line));
-                        ex.printStackTrace();
-                    }
-                }
-
-                System.out.println("Finished loading measure_name table.");
-                System.out.println("Rows inserted: " + inserted);
-                System.out.println("Rows failed: " + failed);
-
-            } catch (Exception e) {
-                System.err.println("Error reading or inserting measure_name CSV.");
-                e.printStackTrace();
+    /**
+     * reads the first line of an entry
+     *
+     * @return the table with that header, or null if it is not a CNF table
+     */
+    private static CNFTable readHeader(ZipFile zip, ZipEntry entry) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        try (InputStream in = new BufferedInputStream(zip.getInputStream(entry))) {
+            int b;
+            while ((b = in.read()) != -1 && b != '\n' && line.size() < 64 * 1024) {
+                line.write(b);
             }
+        }
+        CNFCsvReader header = new CNFCsvReader(ByteBuffer.wrap(line.toByteArray()), CNFCsvReader.CNF_CHARSET);
+        return header.next() ? CNFTable.forHeader(header) : null;
+    }
 
-        } catch (Exception e) {
-            System.err.println("Error checking measure_name table.");
+    /**
+     * decompresses an entry into memory and imports it
+     *
+     * @return true if the table is up to date with the entry, false if the import failed
+     */
+    private static boolean importEntry(ZipFile zip, CNFTable table, ZipEntry entry) {
+        String source = zip.getName() + "!/" + entry.getName();
+        byte[] data;
+        try (InputStream in = zip.getInputStream(entry)) {
+            data = in.readAllBytes();
+        } catch (IOException e) {
+            System.err.println("Error reading " + source + ".");
             e.printStackTrace();
+            return false;
         }
+        CNFCsvReader reader = new CNFCsvReader(ByteBuffer.wrap(data), CNFCsvReader.CNF_CHARSET);
+        return importCsv(table, source, reader.getContentHash(), reader);
+    }
+
+	/**
+     * load food group data from the CSV file into the food_group. 
+     * only imports the file if it changed since the last import.
+     *
+     * @param csvFile the path to the CSV file
+     * @return true if the table is up to date with the file, false if the import failed
+     */
+    public static boolean loadFoodGroups(String csvFile) {
+        return importTable(CNFTable.FOOD_GROUP, csvFile);
     }
     
     /**
-     * loads the food sources descriptions into the food_source table
-     * skip the import if the table already has data
+     * loads the food item data from the CSV Files into the food_name table
+     * only imports the file if it changed since the last import
      * @param csvFile the path to the CSV file
+     * @return true if the table is up to date with the file, false if the import failed
      */
-    public static void loadFoodSources(String csvFile) {
-        String checkSql = "SELECT COUNT(*) FROM food_source";
-        String insertSql = "INSERT INTO food_source (id, code, description, description_f) VALUES (?, ?, ?, ?)";
-
-        try (Connection conn = DBConnection.getInstance().getConnection();
-
-             PreparedStatement checkStmt = conn.prepareStatement(checkSql);
-             ResultSet rs = checkStmt.executeQuery()) {
-
-            if (rs.next() && rs.getInt(1) > 0) {
-                System.out.println("food_source table already contains data. Skipping import.");
-                return;
-            }
-
-            try (CSVReader reader = new CSVReader(new FileReader(csvFile));
-                 PreparedStatement stmt = conn.prepareStatement(insertSql)) {
-
-                reader.readNext(); // Skip header
-                int inserted = 0;
-                int failed = 0;
-                String[] line;
-
-                while ((line = reader.readNext()) != null) {
-                    if (line.length < 4) {
-                        failed++;
-                        continue;
-                    }
+    public static boolean loadFoodItems(String csvFile) {
+        return importTable(CNFTable.FOOD_NAME, csvFile);
+    }
 
-                    try {
-                        stmt.setInt(1, Integer.parseInt(line[0].trim()));
-                        stmt.setString(2, line[1].trim());
-                        stmt.setString(3, line[2].trim());
-                        stmt.setString(4, line[3].trim());
-                        stmt.executeUpdate();
-                        inserted++;
-                    } catch (Exception ex) {
-                        failed++;
-                        System.err.println("Failed to insert row: " + String.join(" | ", line));
-                        ex.printStackTrace();
-                    }
-                }
+    /**
+     * load the nutrient information from the CSV files into the nutrient table
+     * only imports the file if it changed since the last import
+     * @param csvFile the path to the CSV file
+     * @return true if the table is up to date with the file, false if the import failed
+     */
+    public static boolean loadNutrients(String csvFile) {
+        return importTable(CNFTable.NUTRIENT, csvFile);
+    }
 
-                System.out.println("Finished loading food_source table.");
-                System.out.println("Rows inserted: " + inserted);
-                System.out.println("Rows failed: " + failed);
+    /**
+     * load the nutrient values for the food items into the nutrient_amount table
+     * only imports the file if it changed since the last import
+     * @param csvFile the path to the CSV file
+     * @return true if the table is up to date with the file, false if the import failed
+     */
+    public static boolean loadNutrientAmounts(String csvFile) {
+        return importTable(CNFTable.NUTRIENT_AMOUNT, csvFile);
+    }
 
-            } catch (Exception e) {
-                System.err.println("Error reading or inserting food_source CSV.");
-                e.printStackTrace();
-            }
+    /**
+     * load the measure names into the measure_name table
+     * only imports the file if it changed since the last import
+     * @param csvFile the path to the CSV file
+     * @return true if the table is up to date with the file, false if the import failed
+     */
+    public static boolean loadMeasures(String csvFile) {
+        return importTable(CNFTable.MEASURE_NAME, csvFile);
+    }
 
-        } catch (Exception e) {
-            System.err.println("Error checking food_source table.");
-            e.printStackTrace();
-        }
+    /**
+     * loads the food sources descriptions into the food_source table
+     * only imports the file if it changed since the last import
+     * @param csvFile the path to the CSV file
+     * @return true if the table is up to date with the file, false if the import failed
+     */
+    public static boolean loadFoodSources(String csvFile) {
+        return importTable(CNFTable.FOOD_SOURCE, csvFile);
     }
-    
+
     /**
      * loads the conversion factors into the conversion_factor table
-     * skip the import if the table already has data
+     * only imports the file if it changed since the last import
      * @param csvFile the path to the CSV file
+     * @return true if the table is up to date with the file, false if the import failed
      */
-    public static void loadConversionFactors(String csvFile) {
-        String checkSql = "SELECT COUNT(*) FROM conversion_factor";
-        String insertSql = """
-        INSERT INTO conversion_factor (food_id, measure_id, factor_value, date_of_entry)
-        VALUES (?, ?, ?, ?)
-    """;
-
-        try (Connection conn = DBConnection.getInstance().getConnection();
-
-             PreparedStatement checkStmt = conn.prepareStatement(checkSql);
-             ResultSet rs = checkStmt.executeQuery()) {
-
-            if (rs.next() && rs.getInt(1) > 0) {
-                System.out.println("conversion_factor table already contains data. Skipping import.");
-                return;
-            }
+    public static boolean loadConversionFactors(String csvFile) {
+        return importTable(CNFTable.CONVERSION_FACTOR, csvFile);
+    }
 
-            try (CSVReader reader = new CSVReader(new FileReader(csvFile));
-                 PreparedStatement stmt = conn.prepareStatement(insertSql)) {
+    /**
+     * load the nutrient sources into the nutrient_source table
+     * only imports the file if it changed since the last import
+     * @param csvFile the path to the CSV file
+     * @return true if the table is up to date with the file, false if the import failed
+     */
+    public static boolean loadNutrientSources(String csvFile) {
+        return importTable(CNFTable.NUTRIENT_SOURCE, csvFile);
+    }
 
-                reader.readNext(); // Skip header
-                int inserted = 0;
-                int failed = 0;
-                String[] line;
+    /**
+     * loads the descriptions of inedible parts of the food into the refuse_name table
+     * only imports the file if it changed since the last import
+     * @param csvFile the path to the CSV file
+     * @return true if the table is up to date with the file, false if the import failed
+     */
+    public static boolean loadRefuseNames(String csvFile) {
+        return importTable(CNFTable.REFUSE_NAME, csvFile);
+    }
 
-                while ((line = reader.readNext()) != null) {
-                    if (line.length < 4) {
-                        failed++;
-                        continue;
-                    }
+    /**
+     * loads the refuse amount for each food item into the refuse_amount table
+     * only imports the file if it changed since the last import
+     * @param csvFile the path to the CSV file
+     * @return true if the table is up to date with the file, false if the import failed
+     */
+    public static boolean loadRefuseAmounts(String csvFile) {
+        return importTable(CNFTable.REFUSE_AMOUNT, csvFile);
+    }
 
-                    try {
-                        stmt.setInt(1, Integer.parseInt(line[0].trim()));
-                        stmt.setInt(2, Integer.parseInt(line[1].trim()));
-                        stmt.setDouble(3, Double.parseDouble(line[2].trim()));
-                        stmt.setString(4, line[3].trim());
-                        stmt.executeUpdate();
-                        inserted++;
-                    } catch (Exception ex) {
-                        failed++;
-                        System.err.println("Failed to insert row: " + String.join(" | ", line));
-                        ex.printStackTrace();
-                    }
-                }
+    /**
+     * load the yield name descriptions into the yield_name table
+     * only imports the file if it changed since the last import
+     * @param csvFile the path to the CSV file
+     * @return true if the table is up to date with the file, false if the import failed
+     */
+    public static boolean loadYieldNames(String csvFile) {
+        return importTable(CNFTable.YIELD_NAME, csvFile);
+    }
 
-                System.out.println("Finished loading conversion_factor table.");
-                System.out.println("Rows inserted: " + inserted);
-                System.out.println("Rows failed: " + failed);
+    /**
+     * load the yield amounts into the yield_amount table
+     * only imports the file if it changed since the last import
+     * @param csvFile the path to the CSV file
+     * @return true if the table is up to date with the file, false if the import failed
+     */
+    public static boolean loadYieldAmounts(String csvFile) {
+        return importTable(CNFTable.YIELD_AMOUNT, csvFile);
+    }
 
-            } catch (Exception e) {
-                System.err.println("Error reading or inserting conversion_factor CSV.");
-                e.printStackTrace();
+    /**
+     * imports a CSV file into its table, or the table's rows of the snapshot if one is set,
+     * the table is empty and the snapshot was compiled from the same CSV file
+     *
+     * @param table the table to fill
+     * @param csvFile the path to the CSV file
+     * @return true if the table is up to date, false if the import failed
+     */
+    private static boolean importTable(CNFTable table, String csvFile) {
+        CNFSnapshot.Table rows = snapshot != null ? snapshot.getTable(table.getTableName()) : null;
+
+        try (CNFCsvReader reader = CNFCsvReader.open(csvFile)) {
+            String hash = reader.getContentHash();
+            if (rows != null && !rows.getSourceHash().equals(hash)) {
+                System.out.println("The snapshot of " + table + " was compiled from another "
+                        + csvFile + ". Reading the CSV file instead.");
+            } else if (rows != null && isEmpty(table)) {
+                return importSnapshot(table, rows);
             }
-
-        } catch (Exception e) {
-            System.err.println("Error checking conversion_factor table.");
+            return importCsv(table, csvFile, hash, reader);
+        } catch (IOException | SQLException e) {
+            System.err.println("Error reading " + table + " CSV.");
             e.printStackTrace();
+            return false;
         }
     }
-    
+
     /**
-     * load the nutrient sources into the nutrient_source table
-     * skip the import if the table already has data
-     * @param csvFile the path to the CSV file
+     * fills a table with its rows of the snapshot
+     *
+     * @param table the table to fill
+     * @param rows the rows of the table in the snapshot
+     * @return true if the table is up to date, false if the import failed
      */
-    public static void loadNutrientSources(String csvFile) {
-        String checkSql = "SELECT COUNT(*) FROM nutrient_source";
-        String insertSql = "INSERT INTO nutrient_source (id, code, description, description_f) VALUES (?, ?, ?, ?)";
-
-        try (Connection conn = DBConnection.getInstance().getConnection();
-
-             PreparedStatement checkStmt = conn.prepareStatement(checkSql);
-             ResultSet rs = checkStmt.executeQuery()) {
+    private static boolean importSnapshot(CNFTable table, CNFSnapshot.Table rows) {
+        return importRows(table, snapshot.getFile(), rows.getSourceHash(), null, inserter -> {
+            for (int i = 0; i < rows.getRowCount(); i++) {
+                inserter.add(rows.getRow(i));
+            }
+        });
+    }
 
-            if (rs.next() && rs.getInt(1) > 0) {
-                System.out.println("nutrient_source table already contains data. Skipping import.");
-                return;
+    /**
+     * imports the records of a CSV file or archive entry into its table
+     *
+     * @param table the table to fill
+     * @param source the name of the CSV data, stored in the import state
+     * @param hash the content hash of the CSV data
+     * @param reader the CSV reader, positioned before the header
+     * @return true if the table is up to date, false if the import failed
+     */
+    private static boolean importCsv(CNFTable table, String source, String hash, CNFCsvReader reader) {
+        return importRows(table, source, hash, reader, inserter -> {
+            reader.rewind();
+            reader.next(); // Skip header
+            while (reader.next()) {
+                inserter.add(reader);
             }
+        });
+    }
 
-            try (CSVReader reader = new CSVReader(new FileReader(csvFile));
-                 PreparedStatement stmt = conn.prepareStatement(insertSql)) {
+    /**
+     * imports the rows of a table.
+     * skips the import if the source has the same content hash as the last import.
+     * an empty table is filled from the source, otherwise only the differences are applied.
+     * the last rows are committed together with the new import state. a CSV file is committed in
+     * chunks with a checkpoint, so a failure while reading it is continued from the last chunk on the
+     * next start. the rows of a snapshot or of a diff are committed all at once, so a failure leaves
+     * the table as it was instead of half updated.
+     *
+     * @param table the table to fill
+     * @param source the path of the CSV file or snapshot, stored in the import state
+     * @param hash the content hash of the CSV file
+     * @param reader the CSV reader for LOAD DATA LOCAL INFILE, null if the rows come from a snapshot
+     * @param rows adds all rows of the source to an inserter
+     * @return true if the table is up to date with the source, false if the import failed
+     */
+    private static boolean importRows(CNFTable table, String source, String hash, CNFCsvReader reader, RowFeed rows) {
+        boolean loaded = false;
+        try {
+            if (hash.equals(ImportState.getHash(table.getTableName()))) {
+                System.out.println(table + " is up to date with " + source + ". Skipping import.");
+                return true;
+            }
 
-                reader.readNext(); // Skip header
-                int inserted = 0;
-                int failed = 0;
-                String[] line;
+            try (Connection conn = DBConnection.getInstance().openConnection()) {
+                conn.setAutoCommit(false);
+                BulkLoadSession session = null;
+                ImportRejects rejects = null;
+
+                try {
+                    ImportCheckpoint checkpoint = reader != null ? ImportCheckpoint.load(conn, table.getTableName()) : null;
+                    if (checkpoint != null && !checkpoint.contentHash().equals(hash)) {
+                        //the file changed since the unfinished import, its rows are compared below instead
+                        ImportCheckpoint.clear(conn, table.getTableName());
+                        checkpoint = null;
+                    }
+                    rejects = new ImportRejects(table, Path.of(rejectDirectory), maxStackTraces, checkpoint != null);
+                    ParentKeys parents = loadParentKeys(conn, table);
+
+                    boolean fill = checkpoint != null || isEmpty(conn, table);
+                    boolean bulkSession = bulkSessionEnabled && DBConnection.getInstance().getBackend().supportsBulkSession();
+                    if (fill && bulkSession) {
+                        session = beginBulkSession(conn, table);
+                    } else if (!fill && bulkSession) {
+                        restoreForeignKeys(conn, table);
+                    }
 
-                while ((line = reader.readNext()) != null) {
-                    if (line.length < 4) {
-                        failed++;
-                        continue;
+                    ImportCounts counts;
+                    if (checkpoint != null) {
+                        counts = loadChunks(conn, table, reader, hash, checkpoint, rejects, parents);
+                    } else if (!fill) {
+                        counts = applyChanges(conn, table, rows, rejects, parents);
+                    } else if (reader != null && parsers > 1 && reader.getSize() >= PARALLEL_MIN_BYTES) {
+                        ParallelCsvImport parallel = new ParallelCsvImport(table, parsers, insertWorkers,
+                                batchSize, checkpointInterval, session != null, progressListener, rejects);
+                        parallel.setParentKeys(parents);
+                        parallel.run(reader);
+                        counts = new ImportCounts(parallel.getInserted(), 0, 0, parallel.getFailed());
+                    } else if (reader != null) {
+                        counts = loadChunks(conn, table, reader, hash, null, rejects, parents);
+                    } else {
+                        counts = insertBatches(conn, table, rows, rejects, parents);
                     }
 
-                    try {
-                        stmt.setInt(1, Integer.parseInt(line[0].trim()));
-                        stmt.setString(2, line[1].trim());
-                        stmt.setString(3, line[2].trim());
-                        stmt.setString(4, line[3].trim());
-                        stmt.executeUpdate();
-                        inserted++;
-                    } catch (Exception ex) {
-                        failed++;
-                        System.err.println("Failed to insert row: " + String.join(" | ", line));
-                        ex.printStackTrace();
+                    if (session != null) {
+                        int orphans = session.verify(conn);
+                        counts = new ImportCounts(counts.inserted() - orphans, counts.unchanged(),
+                                counts.deleted(), counts.failed() + orphans);
+                    }
+                    ImportState.save(conn, table.getTableName(), source, hash, counts.inserted() + counts.unchanged());
+                    if (reader != null) {
+                        ImportCheckpoint.clear(conn, table.getTableName());
+                    }
+                    conn.commit();
+                    ImportState.remember(table.getTableName(), hash);
+                    NutrientMatrix.invalidate();
+                    FoodCatalog.invalidate();
+
+                    System.out.println("Finished loading " + table + " table.");
+                    System.out.println("Rows inserted: " + counts.inserted());
+                    if (counts.unchanged() > 0 || counts.deleted() > 0) {
+                        System.out.println("Rows unchanged: " + counts.unchanged());
+                        System.out.println("Rows deleted: " + counts.deleted());
                     }
+                    System.out.println("Rows failed: " + counts.failed());
+                    loaded = true;
+
+                } catch (Exception e) {
+                    rollback(conn);
+                    System.err.println("Error reading or inserting " + table + " CSV.");
+                    e.printStackTrace();
+                } finally {
+                    if (session != null) {
+                        finishBulkSession(conn, table, session);
+                    }
+                    if (rejects != null) {
+                        rejects.close();
+                    }
+                    conn.setAutoCommit(true);
                 }
-
-                System.out.println("Finished loading nutrient_source table.");
-                System.out.println("Rows inserted: " + inserted);
-                System.out.println("Rows failed: " + failed);
-
-            } catch (Exception e) {
-                System.err.println("Error reading or inserting nutrient_source CSV.");
-                e.printStackTrace();
             }
 
         } catch (Exception e) {
-            System.err.println("Error checking nutrient_source table.");
+            System.err.println("Error checking " + table + " table.");
             e.printStackTrace();
+            return false;
         }
+        return loaded;
     }
-    
+
     /**
-     * loads the descriptions of inedible parts of the food into the refuse_name table
-     * skip the import if the table already has data
-     * @param csvFile the path to the CSV file
+     * starts a bulk session for an empty table
+     *
+     * @return the session, or null if the database does not support it
      */
-    public static void loadRefuseNames(String csvFile) {
-        String checkSql = "SELECT COUNT(*) FROM refuse_name";
-        String insertSql = "INSERT INTO refuse_name (id, description, description_f) VALUES (?, ?, ?)";
-
-        try (Connection conn = DBConnection.getInstance().getConnection();
-
-             PreparedStatement checkStmt = conn.prepareStatement(checkSql);
-             ResultSet rs = checkStmt.executeQuery()) {
-
-            if (rs.next() && rs.getInt(1) > 0) {
-                System.out.println("refuse_name table already contains data. Skipping import.");
-                return;
-            }
-
-            try (CSVReader reader = new CSVReader(new FileReader(csvFile));
-                 PreparedStatement stmt = conn.prepareStatement(insertSql)) {
-
-                reader.readNext(); // Skip header
-                int inserted = 0, failed = 0;
-                String[] line;
-
-                while ((line = reader.readNext()) != null) {
-                    if (line.length < 3) {
-                        failed++;
-                        continue;
-                    }
-
-                    try {
-                        stmt.setInt(1, Integer.parseInt(line[0].trim()));
-                        stmt.setString(2, line[1].trim());
-                        stmt.setString(3, line[2].trim());
-                        stmt.executeUpdate();
-                        inserted++;
-                    } catch (Exception ex) {
-                        failed++;
-                        System.err.println("Failed to insert row: " + String.join(" | ", line));
-                        ex.printStackTrace();
-                    }
-                }
-
-                System.out.println("Finished loading refuse_name table.");
-                System.out.println("Rows inserted: " + inserted);
-                System.out.println("Rows failed: " + failed);
-
-            } catch (Exception e) {
-                System.err.println("Error reading or inserting refuse_name CSV.");
-                e.printStackTrace();
-            }
+    private static BulkLoadSession beginBulkSession(Connection conn, CNFTable table) throws Exception {
+        try {
+            return BulkLoadSession.begin(conn, table, getSchema());
+        } catch (SQLException e) {
+            System.out.println("Bulk session not available for " + table
+                    + " (" + e.getMessage() + "). Loading with checks on.");
+            return null;
+        }
+    }
 
-        } catch (Exception e) {
-            System.err.println("Error checking refuse_name table.");
+    /**
+     * builds the indexes and foreign keys a bulk session dropped
+     */
+    private static void finishBulkSession(Connection conn, CNFTable table, BulkLoadSession session) {
+        try {
+            session.finish(conn);
+        } catch (SQLException e) {
+            System.err.println("Error restoring the indexes of " + table + ". They are restored on the next import.");
             e.printStackTrace();
         }
     }
-    
+
     /**
-     * loads the refuse amount for each food item into the refuse_amount table
-     * skip the import if the table already has data
-     * @param csvFile the path to the CSV file
+     * adds the foreign keys of db.sql a table lost in a bulk session that did not finish
      */
-    public static void loadRefuseAmounts(String csvFile) {
-        String checkSql = "SELECT COUNT(*) FROM refuse_amount";
-        String insertSql = "INSERT INTO refuse_amount (food_id, refuse_id, amount, date_of_entry) VALUES (?, ?, ?, ?)";
-
-        try (Connection conn = DBConnection.getInstance().getConnection();
+    private static void restoreForeignKeys(Connection conn, CNFTable table) {
+        try {
+            BulkLoadSession.restoreForeignKeys(conn, table, getSchema());
+        } catch (Exception e) {
+            System.out.println("Could not check the foreign keys of " + table + " (" + e.getMessage() + ").");
+        }
+    }
 
-             PreparedStatement checkStmt = conn.prepareStatement(checkSql);
-             ResultSet rs = checkStmt.executeQuery()) {
+    /**
+     * reads the ids of the parent tables of a table
+     *
+     * @return the ids, or null if the table has no parents or they cannot be read, the database checks the rows then
+     */
+    private static ParentKeys loadParentKeys(Connection conn, CNFTable table) {
+        try {
+            return ParentKeys.load(conn, table, getSchema());
+        } catch (Exception e) {
+            System.out.println("Could not read the parent ids of " + table + " (" + e.getMessage()
+                    + "). The database checks the foreign keys instead.");
+            return null;
+        }
+    }
 
-            if (rs.next() && rs.getInt(1) > 0) {
-                System.out.println("refuse_amount table already contains data. Skipping import.");
-                return;
-            }
+    private static synchronized SchemaGraph getSchema() throws IOException {
+        if (schema == null) {
+            schema = SchemaGraph.load(schemaFile);
+        }
+        return schema;
+    }
 
-            try (CSVReader reader = new CSVReader(new FileReader(csvFile));
-                 PreparedStatement stmt = conn.prepareStatement(insertSql)) {
+    /**
+     * @return true if the table has no rows yet, checked on a pooled connection
+     */
+    private static boolean isEmpty(CNFTable table) throws SQLException {
+        try (Connection conn = DBConnection.getInstance().getConnection()) {
+            return isEmpty(conn, table);
+        }
+    }
 
-                reader.readNext(); // Skip header
-                int inserted = 0, failed = 0;
-                String[] line;
+    /**
+     * @return true if the table has no rows yet
+     */
+    private static boolean isEmpty(Connection conn, CNFTable table) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT 1 FROM " + table.getTableName() + " LIMIT 1")) {
+            return !rs.next();
+        }
+    }
 
-                while ((line = reader.readNext()) != null) {
-                    if (line.length < 4) {
-                        failed++;
-                        continue;
-                    }
+    /**
+     * inserts the rows of a table in JDBC batches
+     *
+     * @param conn the connection of the import, with auto commit turned off
+     * @param table the table to fill
+     * @param rows adds all rows of the source to an inserter
+     * @param rejects where rows that cannot be inserted are recorded
+     * @param parents the ids of the parent tables, null to leave the checks to the database
+     * @return the number of inserted and failed rows
+     * @throws Exception if the source cannot be read or the statement cannot be used
+     */
+    private static ImportCounts insertBatches(Connection conn, CNFTable table, RowFeed rows, ImportRejects rejects,
+                                              ParentKeys parents) throws Exception {
+        try (PreparedStatement stmt = conn.prepareStatement(table.getInsertSql())) {
 
-                    try {
-                        stmt.setInt(1, Integer.parseInt(line[0].trim()));
-                        stmt.setInt(2, Integer.parseInt(line[1].trim()));
-                        stmt.setDouble(3, Double.parseDouble(line[2].trim()));
-                        stmt.setString(4, line[3].trim());
-                        stmt.executeUpdate();
-                        inserted++;
-                    } catch (Exception ex) {
-                        failed++;
-                        System.err.println("Failed to insert row: " + String.join(" | ", line));
-                        ex.printStackTrace();
-                    }
-                }
+            BatchInserter inserter = new BatchInserter(stmt, table, batchSize, rejects);
+            inserter.setParentKeys(parents);
+            rows.addTo(inserter);
 
-                System.out.println("Finished loading refuse_amount table.");
-                System.out.println("Rows inserted: " + inserted);
-                System.out.println("Rows failed: " + failed);
+            inserter.flush();
+            return new ImportCounts(inserter.getInserted(), 0, 0, inserter.getFailed());
+        }
+    }
 
-            } catch (Exception e) {
-                System.err.println("Error reading or inserting refuse_amount CSV.");
-                e.printStackTrace();
+    /**
+     * brings a table that already has data up to date with a new release of its source.
+     * rows whose primary key is new or whose values changed are upserted in JDBC batches,
+     * rows whose primary key is no longer in the source are deleted. the rows of records that are
+     * rejected this time are kept, so a broken record does not delete the row of an earlier release.
+     *
+     * @param conn the connection of the import, with auto commit turned off
+     * @param table the table to update
+     * @param rows adds all rows of the source to an inserter
+     * @param rejects where rows that cannot be written are recorded
+     * @param parents the ids of the parent tables, null to leave the checks to the database
+     * @return the number of written, unchanged, deleted and failed rows
+     * @throws Exception if the source cannot be read or the statements cannot be used
+     */
+    private static ImportCounts applyChanges(Connection conn, CNFTable table, RowFeed rows, ImportRejects rejects,
+                                             ParentKeys parents) throws Exception {
+        RowFingerprints current = RowFingerprints.load(conn, table);
+
+        try (PreparedStatement upsert = conn.prepareStatement(table.getUpsertSql());
+             PreparedStatement delete = conn.prepareStatement(table.getDeleteSql())) {
+
+            BatchInserter inserter = new BatchInserter(upsert, table, batchSize, rejects);
+            inserter.setFilter(current::markChanged);
+            inserter.setLeftOutListener(current::markSeen);
+            inserter.setParentKeys(parents);
+            rows.addTo(inserter);
+            inserter.flush();
+
+            int deleted = current.deleteUnseen(delete, batchSize);
+            if (current.getKept() > 0) {
+                System.out.println(current.getKept() + " rows of " + table
+                        + " are no longer in the source but are still referenced. Keeping them.");
             }
 
-        } catch (Exception e) {
-            System.err.println("Error checking refuse_amount table.");
-            e.printStackTrace();
+            return new ImportCounts(inserter.getInserted(), inserter.getSkipped(), deleted, inserter.getFailed());
         }
     }
-    
+
     /**
-     * load the yield name descriptions into the yield_name table
-     * skip the import if the table already has data
-     * @param csvFile the path to the CSV file
+     * fills an empty table from a CSV file in chunks of checkpointInterval records.
+     * every chunk except the last one is committed together with a checkpoint, the last chunk is
+     * committed by the caller together with the import state.
+     * only the reader's current chunk is in memory, whatever the size of the file.
+     *
+     * @param conn the connection of the import, with auto commit turned off
+     * @param table the table to fill
+     * @param reader the CSV reader, positioned before the header
+     * @param hash the content hash of the CSV file, stored in the checkpoints
+     * @param from the checkpoint of an unfinished import to continue, null to start at the first record
+     * @param rejects where records that cannot be converted or inserted are recorded
+     * @param parents the ids of the parent tables, null to leave the checks to the database
+     * @return the number of inserted and failed rows, including the ones before the checkpoint
+     * @throws Exception if the file cannot be read or the statements cannot be used
      */
-    public static void loadYieldNames(String csvFile) {
-        String checkSql = "SELECT COUNT(*) FROM yield_name";
-        String insertSql = "INSERT INTO yield_name (id, description, description_f) VALUES (?, ?, ?)";
-
-        try (Connection conn = DBConnection.getInstance().getConnection();
-
-             PreparedStatement checkStmt = conn.prepareStatement(checkSql);
-             ResultSet rs = checkStmt.executeQuery()) {
+    private static ImportCounts loadChunks(Connection conn, CNFTable table, CNFCsvReader reader, String hash,
+                                           ImportCheckpoint from, ImportRejects rejects, ParentKeys parents)
+            throws Exception {
+        int inserted = 0;
+        int failed = 0;
+        if (from == null) {
+            reader.next(); // Skip header
+        } else {
+            reader.seek(from.byteOffset(), from.lineNumber());
+            inserted = from.inserted();
+            failed = from.failed();
+            System.out.println("Resuming " + table + " import at line " + from.lineNumber() + ".");
+        }
 
-            if (rs.next() && rs.getInt(1) > 0) {
-                System.out.println("yield_name table already contains data. Skipping import.");
-                return;
+        long startTime = System.nanoTime();
+        long startBytes = reader.getPosition();
+        int startRows = inserted + failed;
+        boolean useLoadData = bulkLoadEnabled && DBConnection.getInstance().getBackend().supportsLoadData();
+        int[] maxLengths = useLoadData ? LoadDataStream.readMaxLengths(conn, table) : null;
+
+        while (true) {
+            long chunkStart = reader.getPosition();
+            long chunkLine = reader.getNextLineNumber();
+
+            ImportCounts chunk = useLoadData
+                    ? loadData(conn, table, reader, checkpointInterval, maxLengths, rejects, parents)
+                    : null;
+            if (chunk == null) {
+                useLoadData = false;
+                reader.seek(chunkStart, chunkLine);
+                chunk = insertChunk(conn, table, reader, checkpointInterval, rejects, parents);
             }
+            inserted += chunk.inserted();
+            failed += chunk.failed();
 
-            try (CSVReader reader = new CSVReader(new FileReader(csvFile));
-                 PreparedStatement stmt = conn.prepareStatement(insertSql)) {
-
-                reader.readNext(); // Skip header
-                int inserted = 0, failed = 0;
-                String[] line;
-
-                while ((line = reader.readNext()) != null) {
-                    if (line.length < 3) {
-                        failed++;
-                        continue;
-                    }
+            if (reader.isAtEnd()) {
+                break;
+            }
 
-                    try {
-                        stmt.setInt(1, Integer.parseInt(line[0].trim()));
-                        stmt.setString(2, line[1].trim());
-                        stmt.setString(3, line[2].trim());
-                        stmt.executeUpdate();
-                        inserted++;
-                    } catch (Exception ex) {
-                        failed++;
-                        System.err.println("Failed to insert row: " + String.join(" | ", line));
-                        ex.printStackTrace();
-                    }
-                }
+            new ImportCheckpoint(hash, reader.getPosition(), reader.getNextLineNumber(), inserted, failed)
+                    .save(conn, table.getTableName());
+            conn.commit();
+            reportProgress(table, reader, inserted + failed, startRows, startBytes, startTime);
+        }
 
-                System.out.printf("Finished loading yield_name table. %d rows inserted, %d failed.%n", inserted, failed);
+        reportProgress(table, reader, inserted + failed, startRows, startBytes, startTime);
+        return new ImportCounts(inserted, 0, 0, failed);
+    }
 
-            } catch (Exception e) {
-                System.err.println("Error reading or inserting yield_name CSV.");
-                e.printStackTrace();
+    /**
+     * inserts the next records of a CSV file in JDBC batches
+     *
+     * @param conn the connection of the import, with auto commit turned off
+     * @param table the table to fill
+     * @param reader the CSV reader, positioned before the first record to insert
+     * @param maxRecords the number of records to read
+     * @param rejects where records that cannot be converted or inserted are recorded
+     * @param parents the ids of the parent tables, null to leave the checks to the database
+     * @return the number of inserted and failed rows
+     * @throws SQLException if the statement cannot be used
+     */
+    private static ImportCounts insertChunk(Connection conn, CNFTable table, CNFCsvReader reader, int maxRecords,
+                                           ImportRejects rejects, ParentKeys parents) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(table.getInsertSql())) {
+
+            BatchInserter inserter = new BatchInserter(stmt, table, batchSize, rejects);
+            inserter.setParentKeys(parents);
+            for (int n = 0; n < maxRecords && reader.next(); n++) {
+                inserter.add(reader);
             }
 
-        } catch (Exception e) {
-            System.err.println("Error checking yield_name table.");
-            e.printStackTrace();
+            inserter.flush();
+            return new ImportCounts(inserter.getInserted(), 0, 0, inserter.getFailed());
         }
     }
 
     /**
-     * load the yield amounts into the yield_amount table
-     * skip the import if the table already has data
-     * @param csvFile the path to the CSV file
+     * streams the next records of a CSV file through LOAD DATA LOCAL INFILE.
+     * the lines are converted on the fly with the same rules as the batched inserts, and text that
+     * does not fit its column is rejected instead of being truncated by the server.
+     * rows the server skips (duplicate keys, missing parents) are counted as failed and their
+     * warnings are recorded as rejects.
+     * the records rejected while streaming are only recorded once the statement succeeded, so a
+     * chunk that is inserted in batches after all does not reject them twice.
+     *
+     * @param conn the connection of the import, with auto commit turned off
+     * @param table the table to fill
+     * @param reader the CSV reader, positioned before the first record to load
+     * @param maxRecords the number of records to read
+     * @param maxLengths the most characters of every column, see LoadDataStream.readMaxLengths
+     * @param rejects where records that cannot be converted are recorded
+     * @param parents the ids of the parent tables, null to leave the checks to the server
+     * @return the number of inserted and failed rows, or null if the server refuses local infile
+     * @throws Exception if the CSV file cannot be read or the statement fails for another reason
      */
-    public static void loadYieldAmounts(String csvPath) {
-        String checkSql = "SELECT COUNT(*) FROM yield_amount";
-        String insertSql = "INSERT INTO yield_amount (food_id, yield_id, amount, date_of_entry) VALUES (?, ?, ?, ?)";
-
-        try (
-                Connection conn = DBConnection.getInstance().getConnection();
-
-                PreparedStatement checkStmt = conn.prepareStatement(checkSql);
-                ResultSet rs = checkStmt.executeQuery()
-        ) {
-            if (rs.next() && rs.getInt(1) > 0) {
-                System.out.println("yield_amount table already contains data. Skipping import.");
-                return;
+    private static ImportCounts loadData(Connection conn, CNFTable table, CNFCsvReader reader, int maxRecords,
+                                         int[] maxLengths, ImportRejects rejects, ParentKeys parents)
+            throws Exception {
+        String sql = "LOAD DATA LOCAL INFILE 'cnf.tsv' INTO TABLE " + table.getTableName()
+                + " CHARACTER SET utf8mb4"
+                + " FIELDS TERMINATED BY '\\t' ESCAPED BY '\\\\'"
+                + " LINES TERMINATED BY '\\n'"
+                + " (" + String.join(", ", table.getColumns()) + ")";
+
+        try (Statement stmt = conn.createStatement()) {
+
+            if (!stmt.isWrapperFor(JdbcStatement.class)) {
+                return null;
             }
 
-            try (
-                    CSVReader reader = new CSVReader(new FileReader(csvPath));
-                    PreparedStatement stmt = conn.prepareStatement(insertSql)
-            ) {
-                String[] line;
-                reader.readNext(); // skip header
-                int successCount = 0, failCount = 0;
-
-                while ((line = reader.readNext()) != null) {
-                    if (line.length < 3) {
-                        failCount++;
-                        continue;
-                    }
-
-                    try {
-                        int foodId = Integer.parseInt(line[0].trim());
-                        int yieldId = Integer.parseInt(line[1].trim());
-                        double amount = Double.parseDouble(line[2].trim());
-                        String date = (line.length > 3 && !line[3].trim().isEmpty()) ? line[3].trim() : null;
-
-                        stmt.setInt(1, foodId);
-                        stmt.setInt(2, yieldId);
-                        stmt.setDouble(3, amount);
-                        stmt.setString(4, date);
-
-                        stmt.executeUpdate();
-                        successCount++;
-                    } catch (Exception ex) {
-                        failCount++;
-                        System.err.println("Failed to insert row: " + String.join(" | ", line));
-                        ex.printStackTrace();
-                    }
+            LoadDataStream rows = new LoadDataStream(reader, table, maxRecords, rejects);
+            rows.setParentKeys(parents);
+            rows.setMaxLengths(maxLengths);
+            stmt.unwrap(JdbcStatement.class).setLocalInfileInputStream(rows);
+
+            rejects.hold();
+            try {
+                int inserted = stmt.executeUpdate(sql);
+                rejects.release();
+                for (SQLWarning warning = stmt.getWarnings(); warning != null; warning = warning.getNextWarning()) {
+                    rejects.reject(0, null, "LoadDataWarning", warning.getMessage());
                 }
-
-                System.out.printf("Finished loading yield_amount table. %d rows inserted, %d failed.%n", successCount, failCount);
-
-            } catch (Exception e) {
-                System.err.println("Error reading or inserting yield_amount CSV.");
-                e.printStackTrace();
+                return new ImportCounts(inserted, 0, 0, rows.getFailed() + rows.getSent() - inserted);
+            } catch (SQLException e) {
+                if (e.getErrorCode() != ER_NOT_ALLOWED_COMMAND && e.getErrorCode() != ER_CLIENT_LOCAL_FILES_DISABLED) {
+                    throw e;
+                }
+                rollback(conn);
+                System.out.println("LOAD DATA LOCAL INFILE not available for " + table
+                        + " (" + e.getMessage() + "). Using batched inserts.");
+                return null;
+            } finally {
+                rejects.discard();
             }
-
-        } catch (Exception e) {
-            System.err.println("Error checking yield_amount table.");
-            e.printStackTrace();
         }
     }
-    
+
     /**
-     * 
-     * @param s the date string
-     * @return true if the string is in the valid date format, otherwise return false
+     * tells the progress listener how far a chunked import got
      */
-    private static boolean isValidDate(String s) {
-        return s != null && s.matches("\\d{4}-\\d{2}-\\d{2}");
+    private static void reportProgress(CNFTable table, CNFCsvReader reader, int rows, int startRows,
+                                       long startBytes, long startTime) {
+        double seconds = Math.max((System.nanoTime() - startTime) / 1e9, 1e-9);
+        long bytes = reader.getPosition();
+        double bytesPerSecond = (bytes - startBytes) / seconds;
+        Duration eta = bytesPerSecond > 0
+                ? Duration.ofMillis((long) ((reader.getSize() - bytes) / bytesPerSecond * 1000))
+                : Duration.ZERO;
+        progressListener.accept(new ImportProgress(table.getTableName(), rows, bytes, reader.getSize(),
+                (rows - startRows) / seconds, eta));
     }
 
+    /**
+     * adds every row of an import source (CSV file or snapshot) to a batch inserter
+     */
+    @FunctionalInterface
+    private interface RowFeed {
+        void addTo(BatchInserter inserter) throws Exception;
+    }
 
+    /**
+     * number of rows written to, left unchanged in, deleted from and rejected from a table
+     */
+    private record ImportCounts(int inserted, int unchanged, int deleted, int failed) {
+    }
 
-
+    /**
+     * undoes the rows of an import that could not be finished
+     *
+     * @param conn the connection of the import
+     */
+    private static void rollback(Connection conn) {
+        try {
+            conn.rollback();
+        } catch (SQLException e) {
+            System.err.println("Rollback failed: " + e.getMessage());
+        }
+    }
 }
@@ -0,0 +1,293 @@
+package database;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * read only view of a compiled CNF snapshot file, see CNFSnapshotCompiler.
+ *
+ * the file is memory mapped when it is opened and the values are read straight from the mapping,
+ * so opening a snapshot only reads the table directory. the rows of every table are sorted by
+ * primary key, so they are inserted in the order of the clustered index.
+ *
+ * file layout (big endian):
+ * <pre>
+ * int magic "CNFS", int version, int table count
+ * per table: UTF-8 name, 32 byte SHA-256 of the source CSV, int row count, int column count, long offset
+ * at the offset of a table, per column:
+ *     byte type, UTF-8 name, null bitmap (one bit per row, in longs),
+ *     INT and DATE (epoch day): one int per row
+ *     DOUBLE: one double per row
+ *     STRING: int dictionary size, dictionary size + 1 byte offsets, UTF-8 bytes, one dictionary code per row
+ * </pre>
+ * UTF-8 names are written as an unsigned short length followed by the bytes.
+ */
+public final class CNFSnapshot {
+
+    /** first int of every snapshot file, "CNFS" */
+    static final int MAGIC = 0x434E4653;
+
+    /** format version written by CNFSnapshotCompiler, files of other versions are refused */
+    public static final int VERSION = 1;
+
+    static final byte INT = 1;
+    static final byte DOUBLE = 2;
+    static final byte STRING = 3;
+    static final byte DATE = 4;
+
+    private final String file;
+    private final Map<String, Table> tables = new LinkedHashMap<>();
+
+    private CNFSnapshot(String file) {
+        this.file = file;
+    }
+
+    /**
+     * memory maps a snapshot file and reads its table directory
+     *
+     * @param file the path to the snapshot
+     * @return the snapshot
+     * @throws IOException if the file cannot be read, is not a snapshot or has another version
+     */
+    public static CNFSnapshot open(String file) throws IOException {
+        ByteBuffer data;
+        try (FileChannel channel = FileChannel.open(Path.of(file), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot is too large to be mapped: " + file);
+            }
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        if (data.limit() < 12 || data.getInt(0) != MAGIC) {
+            throw new IOException("Not a CNF snapshot: " + file);
+        }
+        if (data.getInt(4) != VERSION) {
+            throw new IOException("Unsupported CNF snapshot version " + data.getInt(4) + " in " + file);
+        }
+
+        CNFSnapshot snapshot = new CNFSnapshot(file);
+        int tableCount = data.getInt(8);
+        data.position(12);
+        for (int i = 0; i < tableCount; i++) {
+            String name = readName(data);
+            byte[] hash = new byte[32];
+            data.get(hash);
+            int rowCount = data.getInt();
+            int columnCount = data.getInt();
+            long offset = data.getLong();
+            snapshot.tables.put(name, new Table(data, name, HexFormat.of().formatHex(hash),
+                    rowCount, columnCount, (int) offset));
+        }
+        return snapshot;
+    }
+
+    /**
+     * @return the path the snapshot was opened from
+     */
+    public String getFile() {
+        return file;
+    }
+
+    /**
+     * @return the names of the tables in the snapshot
+     */
+    public Set<String> getTableNames() {
+        return Collections.unmodifiableSet(tables.keySet());
+    }
+
+    /**
+     * @param name the table name, for example "food_name"
+     * @return the table, or null if the snapshot does not contain it
+     */
+    public Table getTable(String name) {
+        return tables.get(name);
+    }
+
+    static String readName(ByteBuffer data) {
+        byte[] bytes = new byte[Short.toUnsignedInt(data.getShort())];
+        data.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * the rows of one table, stored column by column.
+     * rows and columns are addressed by index, starting at 0.
+     */
+    public static final class Table {
+
+        private final ByteBuffer data;
+        private final String name;
+        private final String sourceHash;
+        private final int rowCount;
+
+        private final String[] columnNames;
+        private final byte[] types;
+        //start of the null bitmap and of the values of every column
+        private final int[] nullOffsets;
+        private final int[] valueOffsets;
+        //for STRING columns: the dictionary byte offsets, its size and the decoded entries
+        private final int[] dictionaryOffsets;
+        private final int[] dictionarySizes;
+        private final String[][] dictionaries;
+
+        private Table(ByteBuffer mapped, String name, String sourceHash, int rowCount, int columnCount, int offset) {
+            this.data = mapped.duplicate();
+            this.name = name;
+            this.sourceHash = sourceHash;
+            this.rowCount = rowCount;
+            this.columnNames = new String[columnCount];
+            this.types = new byte[columnCount];
+            this.nullOffsets = new int[columnCount];
+            this.valueOffsets = new int[columnCount];
+            this.dictionaryOffsets = new int[columnCount];
+            this.dictionarySizes = new int[columnCount];
+            this.dictionaries = new String[columnCount][];
+
+            int bitmapBytes = ((rowCount + 63) / 64) * Long.BYTES;
+            ByteBuffer in = mapped.duplicate();
+            in.position(offset);
+            for (int c = 0; c < columnCount; c++) {
+                types[c] = in.get();
+                columnNames[c] = readName(in);
+                nullOffsets[c] = in.position();
+                in.position(in.position() + bitmapBytes);
+
+                if (types[c] == STRING) {
+                    int size = in.getInt();
+                    dictionarySizes[c] = size;
+                    dictionaryOffsets[c] = in.position();
+                    dictionaries[c] = new String[size];
+                    int bytes = in.getInt(in.position() + size * Integer.BYTES);
+                    in.position(in.position() + (size + 1) * Integer.BYTES + bytes);
+                }
+
+                valueOffsets[c] = in.position();
+                int width = types[c] == DOUBLE ? Double.BYTES : Integer.BYTES;
+                in.position(in.position() + rowCount * width);
+            }
+        }
+
+        /**
+         * @return the table name
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return the SHA-256 hash of the CSV file the table was compiled from, as lowercase hex
+         */
+        public String getSourceHash() {
+            return sourceHash;
+        }
+
+        /**
+         * @return the number of rows
+         */
+        public int getRowCount() {
+            return rowCount;
+        }
+
+        /**
+         * @return the number of columns
+         */
+        public int getColumnCount() {
+            return columnNames.length;
+        }
+
+        /**
+         * @return true if the value is NULL
+         */
+        public boolean isNull(int row, int column) {
+            long word = data.getLong(nullOffsets[column] + (row >>> 6) * Long.BYTES);
+            return (word & (1L << (row & 63))) != 0;
+        }
+
+        /**
+         * @return the value of an INT column, 0 for NULL
+         */
+        public int getInt(int row, int column) {
+            return data.getInt(valueOffsets[column] + row * Integer.BYTES);
+        }
+
+        /**
+         * @return the value of a DOUBLE column, 0 for NULL
+         */
+        public double getDouble(int row, int column) {
+            return data.getDouble(valueOffsets[column] + row * Double.BYTES);
+        }
+
+        /**
+         * @return the value of a STRING column, null for NULL
+         */
+        public String getString(int row, int column) {
+            if (isNull(row, column)) {
+                return null;
+            }
+            int code = data.getInt(valueOffsets[column] + row * Integer.BYTES);
+            String value = dictionaries[column][code];
+            if (value == null) {
+                value = decodeEntry(column, code);
+                dictionaries[column][code] = value;
+            }
+            return value;
+        }
+
+        /**
+         * @return the value of a DATE column, null for NULL
+         */
+        private LocalDate getDate(int row, int column) {
+            if (isNull(row, column)) {
+                return null;
+            }
+            return LocalDate.ofEpochDay(data.getInt(valueOffsets[column] + row * Integer.BYTES));
+        }
+
+        /**
+         * @return the value as the type CNFTable produces for inserts: Integer, Double, String, java.sql.Date or null
+         */
+        public Object getValue(int row, int column) {
+            if (isNull(row, column)) {
+                return null;
+            }
+            return switch (types[column]) {
+                case INT -> getInt(row, column);
+                case DOUBLE -> getDouble(row, column);
+                case DATE -> Date.valueOf(getDate(row, column));
+                default -> getString(row, column);
+            };
+        }
+
+        /**
+         * @return the values of a row in column order, ready to be bound to an insert
+         */
+        public Object[] getRow(int row) {
+            Object[] values = new Object[columnNames.length];
+            for (int c = 0; c < values.length; c++) {
+                values[c] = getValue(row, c);
+            }
+            return values;
+        }
+
+        private String decodeEntry(int column, int code) {
+            int offsets = dictionaryOffsets[column];
+            int bytesStart = offsets + (dictionarySizes[column] + 1) * Integer.BYTES;
+            int start = data.getInt(offsets + code * Integer.BYTES);
+            int end = data.getInt(offsets + (code + 1) * Integer.BYTES);
+            byte[] bytes = new byte[end - start];
+            data.get(bytesStart + start, bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package database;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Date;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * compiles the CSV files of a CNF release into one binary snapshot file, see CNFSnapshot for the layout.
+ *
+ * every record is converted with the same CNFTable rules as the database import, the rows are sorted
+ * by primary key and duplicate keys are dropped the same way the database would reject them.
+ * the snapshot is written during the Maven build (process-classes), so startup only has to map it.
+ *
+ * usage: CNFSnapshotCompiler dataDirectory outputFile
+ */
+public class CNFSnapshotCompiler {
+
+    private CNFSnapshotCompiler() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: CNFSnapshotCompiler <data directory> <snapshot file>");
+            System.exit(1);
+        }
+        compile(Path.of(args[0]), Path.of(args[1]));
+    }
+
+    /**
+     * compiles every CNF CSV file found in a directory. missing files are left out of the snapshot.
+     *
+     * @param dataDirectory the directory with the CSV files of the release
+     * @param snapshotFile the snapshot to write, replaced atomically
+     * @throws IOException if a file cannot be read or the snapshot cannot be written
+     */
+    public static void compile(Path dataDirectory, Path snapshotFile) throws IOException {
+        List<CompiledTable> compiled = new ArrayList<>();
+        for (CNFTable table : CNFTable.values()) {
+            Path csv = dataDirectory.resolve(table.getCsvFileName());
+            if (!Files.isRegularFile(csv)) {
+                System.out.println("No " + table.getCsvFileName() + " in " + dataDirectory + ". Leaving out " + table + ".");
+                continue;
+            }
+            compiled.add(compileTable(table, csv));
+        }
+
+        //directory size: header, then per table name, hash, counts and offset
+        int directorySize = 12;
+        for (CompiledTable table : compiled) {
+            directorySize += 2 + utf8(table.name).length + 32 + 4 + 4 + 8;
+        }
+
+        Path directory = snapshotFile.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temp = Files.createTempFile(directory, "cnf", ".snapshot.tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(CNFSnapshot.MAGIC);
+            out.writeInt(CNFSnapshot.VERSION);
+            out.writeInt(compiled.size());
+
+            long offset = directorySize;
+            for (CompiledTable table : compiled) {
+                writeName(out, table.name);
+                out.write(table.sourceHash);
+                out.writeInt(table.rowCount);
+                out.writeInt(table.columnCount);
+                out.writeLong(offset);
+                offset += table.body.length;
+            }
+            for (CompiledTable table : compiled) {
+                out.write(table.body);
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        Files.move(temp, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        System.out.println("Wrote CNF snapshot " + snapshotFile + " (" + Files.size(snapshotFile) + " bytes).");
+    }
+
+    private static CompiledTable compileTable(CNFTable table, Path csv) throws IOException {
+        List<Object[]> rows = new ArrayList<>();
+        byte[] hash;
+        int failed = 0;
+
+        try (CNFCsvReader reader = CNFCsvReader.open(csv.toString())) {
+            hash = HexFormat.of().parseHex(reader.getContentHash());
+            reader.next(); // Skip header
+            while (reader.next()) {
+                if (!table.isUsable(reader)) {
+                    if (table.countsUnusableAsFailed()) {
+                        failed++;
+                    }
+                    continue;
+                }
+                try {
+                    rows.add(table.parse(reader));
+                } catch (Exception e) {
+                    failed++;
+                }
+            }
+        }
+
+        //stable sort, so the first record of a duplicate key is kept like the database import does
+        Comparator<Object[]> byKey = table.keyOrder();
+        rows.sort(byKey);
+        List<Object[]> unique = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            if (unique.isEmpty() || byKey.compare(unique.get(unique.size() - 1), row) != 0) {
+                unique.add(row);
+            } else {
+                failed++;
+            }
+        }
+
+        String[] columns = table.getColumns();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(body);
+        for (int c = 0; c < columns.length; c++) {
+            writeColumn(out, columns[c], unique, c);
+        }
+        out.flush();
+
+        System.out.println("Compiled " + table + ": " + unique.size() + " rows, " + failed + " skipped.");
+        return new CompiledTable(table.getTableName(), hash, unique.size(), columns.length, body.toByteArray());
+    }
+
+    private static void writeColumn(DataOutputStream out, String name, List<Object[]> rows, int column)
+            throws IOException {
+        byte type = typeOf(rows, column);
+        out.writeByte(type);
+        writeName(out, name);
+
+        long[] nulls = new long[(rows.size() + 63) / 64];
+        for (int r = 0; r < rows.size(); r++) {
+            if (rows.get(r)[column] == null) {
+                nulls[r >>> 6] |= 1L << (r & 63);
+            }
+        }
+        for (long word : nulls) {
+            out.writeLong(word);
+        }
+
+        switch (type) {
+            case CNFSnapshot.INT -> {
+                for (Object[] row : rows) {
+                    out.writeInt(row[column] == null ? 0 : ((Number) row[column]).intValue());
+                }
+            }
+            case CNFSnapshot.DOUBLE -> {
+                for (Object[] row : rows) {
+                    out.writeDouble(row[column] == null ? 0 : ((Number) row[column]).doubleValue());
+                }
+            }
+            case CNFSnapshot.DATE -> {
+                for (Object[] row : rows) {
+                    out.writeInt(row[column] == null ? 0 : (int) ((Date) row[column]).toLocalDate().toEpochDay());
+                }
+            }
+            default -> writeStrings(out, rows, column);
+        }
+    }
+
+    /**
+     * writes a dictionary of the distinct values and one dictionary code per row
+     */
+    private static void writeStrings(DataOutputStream out, List<Object[]> rows, int column) throws IOException {
+        Map<String, Integer> codes = new LinkedHashMap<>();
+        int[] rowCodes = new int[rows.size()];
+        for (int r = 0; r < rows.size(); r++) {
+            Object value = rows.get(r)[column];
+            rowCodes[r] = value == null ? 0 : codes.computeIfAbsent(value.toString(), k -> codes.size());
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        out.writeInt(codes.size());
+        out.writeInt(0);
+        for (String value : codes.keySet()) {
+            bytes.write(utf8(value));
+            out.writeInt(bytes.size());
+        }
+        bytes.writeTo(out);
+
+        for (int code : rowCodes) {
+            out.writeInt(code);
+        }
+    }
+
+    /**
+     * @return the snapshot type of a column, taken from the values CNFTable produced for it
+     */
+    private static byte typeOf(List<Object[]> rows, int column) {
+        for (Object[] row : rows) {
+            Object value = row[column];
+            if (value instanceof Integer) {
+                return CNFSnapshot.INT;
+            } else if (value instanceof Double) {
+                return CNFSnapshot.DOUBLE;
+            } else if (value instanceof Date) {
+                return CNFSnapshot.DATE;
+            } else if (value != null) {
+                return CNFSnapshot.STRING;
+            }
+        }
+        return CNFSnapshot.STRING;
+    }
+
+    private static void writeName(OutputStream out, String name) throws IOException {
+        byte[] bytes = utf8(name);
+        out.write(bytes.length >>> 8);
+        out.write(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] utf8(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private record CompiledTable(String name, byte[] sourceHash, int rowCount, int columnCount, byte[] body) {
+    }
+}
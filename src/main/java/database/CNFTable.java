@@ -0,0 +1,338 @@
+package database;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.function.Predicate;
+
+/**
+ * describes how each Canadian Nutrient File CSV is imported into its database table.
+ *
+ * every constant holds the table name, the name of its CSV file in the CNF release, the first two
+ * column names of its header row (to recognize a file whatever its name), the columns in insert order,
+ * how many of the first columns form the primary key, a check that the CSV record has enough fields
+ * and the conversion from a CSV record into the values of one insert.
+ * the import logic in CNFLoader is shared by all tables and only uses this description.
+ */
+enum CNFTable {
+
+    FOOD_GROUP("food_group", "FOOD GROUP.csv", "FoodGroupID,FoodGroupCode",
+            new String[]{"id", "code", "name", "name_french"},
+            1,
+            row -> row.getFieldCount() >= 4,
+            row -> new Object[]{
+                    row.getInt(0),
+                    row.getString(1),
+                    row.getString(2),
+                    row.getString(3)
+            }),
+
+    FOOD_SOURCE("food_source", "FOOD SOURCE.csv", "FoodSourceID,FoodSourceCode",
+            new String[]{"id", "code", "description", "description_f"},
+            1,
+            row -> row.getFieldCount() >= 4,
+            row -> new Object[]{
+                    row.getInt(0),
+                    row.getString(1),
+                    row.getString(2),
+                    row.getString(3)
+            }),
+
+    FOOD_NAME("food_name", "FOOD NAME.csv", "FoodID,FoodCode",
+            new String[]{"id", "code", "food_group_id", "food_source_id", "description", "description_french",
+                    "date_entry", "date_publication", "country_code", "scientific_name"},
+            1,
+            row -> row.getFieldCount() >= 10,
+            row -> new Object[]{
+                    row.getInt(0),
+                    row.getString(1),
+                    row.getInt(2),
+                    row.getInt(3),
+                    row.getString(4),
+                    row.getString(5),
+                    row.getDateOrNull(6),
+                    row.getDateOrNull(7),
+                    row.isLetters(8, 2) ? row.getString(8) : null,
+                    row.getString(9)
+            }),
+
+    NUTRIENT_SOURCE("nutrient_source", "NUTRIENT SOURCE.csv", "NutrientSourceID,NutrientSourceCode",
+            new String[]{"id", "code", "description", "description_f"},
+            1,
+            row -> row.getFieldCount() >= 4,
+            row -> new Object[]{
+                    row.getInt(0),
+                    row.getString(1),
+                    row.getString(2),
+                    row.getString(3)
+            }),
+
+    NUTRIENT("nutrient", "NUTRIENT NAME.csv", "NutrientID,NutrientCode",
+            new String[]{"id", "code", "symbol", "unit", "name", "name_french", "tagname", "decimals"},
+            1,
+            row -> row.getFieldCount() >= 8 && row.isDigits(0),
+            row -> new Object[]{
+                    row.getInt(0),
+                    row.getString(1),
+                    row.getString(2),
+                    row.getString(3),
+                    row.getString(4),
+                    row.getString(5),
+                    row.getString(6),
+                    row.getInt(7, 0)
+            }),
+
+    NUTRIENT_AMOUNT("nutrient_amount", "NUTRIENT AMOUNT.csv", "FoodID,NutrientID",
+            new String[]{"food_id", "nutrient_id", "value", "std_error", "num_observations", "source_id", "date_of_entry"},
+            2,
+            row -> row.getFieldCount() >= 7,
+            row -> new Object[]{
+                    row.getInt(0),
+                    row.getInt(1),
+                    row.getDouble(2, 0.0),
+                    row.getDouble(3, 0.0),
+                    row.getInt(4, 0),
+                    row.getInt(5, 0),
+                    row.isEmpty(6) ? null : row.getDate(6)
+            }),
+
+    MEASURE_NAME("measure_name", "MEASURE NAME.csv", "MeasureID,MeasureDescription",
+            new String[]{"id", "description", "description_f"},
+            1,
+            row -> row.getFieldCount() >= 3,
+            row -> new Object[]{
+                    row.getInt(0),
+                    row.getString(1),
+                    row.getString(2)
+            }),
+
+    CONVERSION_FACTOR("conversion_factor", "CONVERSION FACTOR.csv", "FoodID,MeasureID",
+            new String[]{"food_id", "measure_id", "factor_value", "date_of_entry"},
+            2,
+            row -> row.getFieldCount() >= 4,
+            row -> new Object[]{
+                    row.getInt(0),
+                    row.getInt(1),
+                    row.getDouble(2),
+                    row.getString(3)
+            }),
+
+    REFUSE_NAME("refuse_name", "REFUSE NAME.csv", "RefuseID,RefuseDescription",
+            new String[]{"id", "description", "description_f"},
+            1,
+            row -> row.getFieldCount() >= 3,
+            row -> new Object[]{
+                    row.getInt(0),
+                    row.getString(1),
+                    row.getString(2)
+            }),
+
+    REFUSE_AMOUNT("refuse_amount", "REFUSE AMOUNT.csv", "FoodID,RefuseID",
+            new String[]{"food_id", "refuse_id", "amount", "date_of_entry"},
+            2,
+            row -> row.getFieldCount() >= 4,
+            row -> new Object[]{
+                    row.getInt(0),
+                    row.getInt(1),
+                    row.getDouble(2),
+                    row.getString(3)
+            }),
+
+    YIELD_NAME("yield_name", "YIELD NAME.csv", "YieldID,YieldDescription",
+            new String[]{"id", "description", "description_f"},
+            1,
+            row -> row.getFieldCount() >= 3,
+            row -> new Object[]{
+                    row.getInt(0),
+                    row.getString(1),
+                    row.getString(2)
+            }),
+
+    YIELD_AMOUNT("yield_amount", "YIELD AMOUNT.csv", "FoodID,YieldID",
+            new String[]{"food_id", "yield_id", "amount", "date_of_entry"},
+            2,
+            row -> row.getFieldCount() >= 3,
+            row -> new Object[]{
+                    row.getInt(0),
+                    row.getInt(1),
+                    row.getDouble(2),
+                    row.isEmpty(3) ? null : row.getString(3)
+            });
+
+
+    /**
+     * converts the current record of a CSV reader into the values of an insert,
+     * in the same order as the table columns.
+     * a record that cannot be converted throws an exception and is counted as a failed row.
+     */
+    @FunctionalInterface
+    interface RowParser {
+        Object[] parse(CNFCsvReader row) throws Exception;
+    }
+
+    private final String tableName;
+    private final String csvFileName;
+    private final String headerStart;
+    private final String[] columns;
+    private final int keyColumns;
+    private final Comparator<Object[]> keyOrder;
+    private final Predicate<CNFCsvReader> usable;
+    private final RowParser parser;
+
+    CNFTable(String tableName, String csvFileName, String headerStart, String[] columns, int keyColumns,
+             Predicate<CNFCsvReader> usable, RowParser parser) {
+        this.tableName = tableName;
+        this.csvFileName = csvFileName;
+        this.headerStart = normalizeHeader(headerStart);
+        this.columns = columns;
+        this.keyColumns = keyColumns;
+        Comparator<Object[]> order = Comparator.comparingInt(values -> (Integer) values[0]);
+        this.keyOrder = keyColumns > 1 ? order.thenComparingInt(values -> (Integer) values[1]) : order;
+        this.usable = usable;
+        this.parser = parser;
+    }
+
+    /**
+     * @return the name of the database table
+     */
+    String getTableName() {
+        return tableName;
+    }
+
+    /**
+     * @return the file name of the table's CSV in the CNF release, for example "FOOD GROUP.csv"
+     */
+    String getCsvFileName() {
+        return csvFileName;
+    }
+
+    /**
+     * finds the table of a CSV file by its header row
+     *
+     * @param header a reader positioned on the header record
+     * @return the table whose header starts with the same two column names, or null if there is none
+     */
+    static CNFTable forHeader(CNFCsvReader header) {
+        if (header.getFieldCount() < 2) {
+            return null;
+        }
+        String start = normalizeHeader(header.getString(0) + "," + header.getString(1));
+        for (CNFTable table : values()) {
+            if (table.headerStart.equals(start)) {
+                return table;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the column names in lowercase without blanks or other characters,
+     *         so a byte order mark or a different case still matches
+     */
+    private static String normalizeHeader(String header) {
+        StringBuilder normalized = new StringBuilder(header.length());
+        for (int i = 0; i < header.length(); i++) {
+            char c = header.charAt(i);
+            if ((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == ',') {
+                normalized.append(c);
+            } else if (c >= 'A' && c <= 'Z') {
+                normalized.append((char) (c + 32));
+            }
+        }
+        return normalized.toString();
+    }
+
+    /**
+     * @return the table columns in insert order
+     */
+    String[] getColumns() {
+        return columns;
+    }
+
+    /**
+     * @return the number of leading columns that form the primary key
+     */
+    int getKeyColumns() {
+        return keyColumns;
+    }
+
+    /**
+     * @return an order of insert values by primary key, the key columns are ints
+     */
+    Comparator<Object[]> keyOrder() {
+        return keyOrder;
+    }
+
+    /**
+     * @return the parameterized insert statement for one row of the table
+     */
+    String getInsertSql() {
+        return "INSERT INTO " + tableName + " (" + String.join(", ", columns) + ") VALUES ("
+                + "?, ".repeat(columns.length - 1) + "?)";
+    }
+
+    /**
+     * @return an insert that updates the non key columns when the primary key already exists
+     */
+    String getUpsertSql() {
+        StringBuilder sql = new StringBuilder(getInsertSql()).append(" ON DUPLICATE KEY UPDATE ");
+        for (int i = keyColumns; i < columns.length; i++) {
+            if (i > keyColumns) {
+                sql.append(", ");
+            }
+            sql.append(columns[i]).append(" = VALUES(").append(columns[i]).append(')');
+        }
+        return sql.toString();
+    }
+
+    /**
+     * @return a delete of one row by its primary key
+     */
+    String getDeleteSql() {
+        StringBuilder sql = new StringBuilder("DELETE FROM ").append(tableName).append(" WHERE ");
+        for (int i = 0; i < keyColumns; i++) {
+            if (i > 0) {
+                sql.append(" AND ");
+            }
+            sql.append(columns[i]).append(" = ?");
+        }
+        return sql.toString();
+    }
+
+    /**
+     * @return a select of all rows ordered by primary key
+     */
+    String getSelectSql() {
+        return "SELECT " + String.join(", ", columns) + " FROM " + tableName
+                + " ORDER BY " + String.join(", ", Arrays.copyOf(columns, keyColumns));
+    }
+
+    /**
+     * @param row a reader positioned on a record
+     * @return true if the record has the fields this table needs
+     */
+    boolean isUsable(CNFCsvReader row) {
+        return usable.test(row);
+    }
+
+    /**
+     * @return true if a record that is not usable counts as a failed row. food groups and foods
+     *         without all their fields were always left out without being counted
+     */
+    boolean countsUnusableAsFailed() {
+        return this != FOOD_GROUP && this != FOOD_NAME;
+    }
+
+    /**
+     * @param row a reader positioned on a record
+     * @return the insert values for the record
+     * @throws Exception if a field cannot be converted
+     */
+    Object[] parse(CNFCsvReader row) throws Exception {
+        return parser.parse(row);
+    }
+
+    @Override
+    public String toString() {
+        return tableName;
+    }
+}
@@ -0,0 +1,684 @@
+package database;
+
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+/**
+ * a bounded pool of database connections that can be used from several threads.
+ *
+ * getConnection() lends a connection out, and close() on the returned connection gives it back
+ * instead of closing it, so code that opens a connection in try-with-resources for every query
+ * no longer pays for a new TCP connection and login each time.
+ *
+ * - at most maxSize connections are open, a caller waits up to the borrow timeout for a free one
+ * - a connection that was idle for a while is checked with isValid() before it is lent out
+ * - connections that stay idle longer than the idle timeout are closed by a background thread
+ * - a connection that is not given back within the leak threshold is reported once, together
+ *   with the stack of the code that borrowed it
+ * - a returned connection is rolled back and its auto-commit, read-only and isolation settings
+ *   are restored, so the next borrower gets a clean connection
+ * - statements the borrower did not close are closed when the connection is given back
+ * - every connection keeps its prepared statements in a StatementCache, so a query that was
+ *   prepared before on the same connection is not prepared again
+ */
+public class ConnectionPool implements DataSource, AutoCloseable {
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final int maxSize;
+
+    private volatile long idleTimeoutMillis = TimeUnit.MINUTES.toMillis(5);
+    private volatile long borrowTimeoutMillis = TimeUnit.SECONDS.toMillis(30);
+    private volatile long leakThresholdMillis = TimeUnit.SECONDS.toMillis(60);
+    private volatile long validationIntervalMillis = TimeUnit.SECONDS.toMillis(1);
+    private volatile int statementCacheSize = 64;
+
+    //guards everything below, connections are opened, checked and closed outside of it
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition returned = lock.newCondition();
+
+    //most recently returned first, so the connections at the end can time out
+    private final ArrayDeque<PooledConnection> idle = new ArrayDeque<>();
+    private final Set<Lease> leased = Collections.newSetFromMap(new IdentityHashMap<>());
+    private int total = 0;
+    private int waiting = 0;
+    private boolean closed = false;
+
+    private long borrowed = 0;
+    private long created = 0;
+    private long evicted = 0;
+    private long leaks = 0;
+    private long timeouts = 0;
+    private long totalWaitNanos = 0;
+
+    //counted outside the lock, statements are prepared by borrowers that hold no pool lock
+    private final LongAdder statementHits = new LongAdder();
+    private final LongAdder statementMisses = new LongAdder();
+
+    private final ScheduledExecutorService housekeeper;
+
+    /**
+     * the numbers of a pool at one moment
+     *
+     * @param total the open connections
+     * @param active the connections that are lent out
+     * @param idle the connections waiting in the pool
+     * @param waiting the threads waiting for a connection
+     * @param borrowed the number of times a connection was lent out
+     * @param created the number of connections opened
+     * @param evicted the number of connections closed because they were idle, broken or could not be reset
+     * @param leaks the number of connections reported as not given back
+     * @param timeouts the number of callers that gave up waiting for a connection
+     * @param averageWaitMillis the average time a caller waited for a connection
+     * @param statementHits the number of prepared statements found in a statement cache
+     * @param statementMisses the number of prepared statements that had to be prepared
+     */
+    public record Stats(int total, int active, int idle, int waiting, long borrowed, long created,
+                        long evicted, long leaks, long timeouts, double averageWaitMillis,
+                        long statementHits, long statementMisses) {
+    }
+
+    /**
+     * @param url the JDBC URL of the database
+     * @param user the database user
+     * @param password the password of the user
+     * @param maxSize the maximum number of open connections
+     */
+    public ConnectionPool(String url, String user, String password, int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be at least 1: " + maxSize);
+        }
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.maxSize = maxSize;
+
+        housekeeper = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "connection-pool-housekeeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        housekeeper.scheduleWithFixedDelay(this::houseKeep, 5, 5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * @param millis how long a connection may stay unused in the pool before it is closed
+     */
+    public void setIdleTimeout(long millis) {
+        idleTimeoutMillis = millis;
+    }
+
+    /**
+     * @param millis how long getConnection() waits for a free connection before it fails
+     */
+    public void setBorrowTimeout(long millis) {
+        borrowTimeoutMillis = millis;
+    }
+
+    /**
+     * @param millis how long a connection may be lent out before it is reported as a leak
+     */
+    public void setLeakDetectionThreshold(long millis) {
+        leakThresholdMillis = millis;
+    }
+
+    /**
+     * @param millis how long a connection has to be idle before it is checked on borrow
+     */
+    public void setValidationInterval(long millis) {
+        validationIntervalMillis = millis;
+    }
+
+    /**
+     * @param size the number of prepared statements each new connection keeps, 0 to not keep any
+     */
+    public void setStatementCacheSize(int size) {
+        statementCacheSize = size;
+    }
+
+    /**
+     * lends out a connection, close() on it gives it back to the pool
+     *
+     * @return a connection of the pool
+     * @throws SQLTransientConnectionException if no connection became free within the borrow timeout
+     * @throws SQLException if the pool is closed or a new connection cannot be opened
+     */
+    @Override
+    public Connection getConnection() throws SQLException {
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(borrowTimeoutMillis);
+
+        while (true) {
+            PooledConnection pooled = null;
+            boolean open = false;
+
+            lock.lock();
+            try {
+                //a new caller queues behind the ones already waiting, so nobody is overtaken until they time out
+                boolean queued = false;
+                while (!closed && ((idle.isEmpty() && total >= maxSize) || (!queued && waiting > 0))) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        timeouts++;
+                        passOn();
+                        throw new SQLTransientConnectionException("No database connection became free within "
+                                + borrowTimeoutMillis + " ms, all " + maxSize + " connections are in use");
+                    }
+                    waiting++;
+                    queued = true;
+                    try {
+                        returned.awaitNanos(remaining);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        passOn();
+                        throw new SQLException("Interrupted while waiting for a database connection", e);
+                    } finally {
+                        waiting--;
+                    }
+                }
+                if (closed) {
+                    throw new SQLException("The connection pool is closed");
+                }
+                if (!idle.isEmpty()) {
+                    pooled = idle.pollFirst();
+                } else {
+                    //reserve the slot, the connection is opened after the lock is released
+                    total++;
+                    open = true;
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            if (open) {
+                pooled = open();
+            } else if (!isUsable(pooled)) {
+                destroy(pooled);
+                continue;
+            }
+            return lend(pooled, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * not supported, the pool always connects as the user it was created with
+     */
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("The connection pool only connects as " + user);
+    }
+
+    /**
+     * @return the current numbers of the pool
+     */
+    public Stats getStats() {
+        lock.lock();
+        try {
+            double averageWait = borrowed == 0 ? 0 : totalWaitNanos / 1e6 / borrowed;
+            return new Stats(total, leased.size(), idle.size(), waiting, borrowed, created,
+                    evicted, leaks, timeouts, averageWait, statementHits.sum(), statementMisses.sum());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * closes the idle connections and stops the pool, connections that are lent out are closed
+     * when they are given back
+     */
+    @Override
+    public void close() {
+        List<PooledConnection> toClose;
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            toClose = new ArrayList<>(idle);
+            total -= idle.size();
+            idle.clear();
+            returned.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        housekeeper.shutdownNow();
+        toClose.forEach(ConnectionPool::closeQuietly);
+    }
+
+    private PooledConnection open() throws SQLException {
+        try {
+            PooledConnection pooled = new PooledConnection(DriverManager.getConnection(url, user, password),
+                    statementCacheSize);
+            lock.lock();
+            try {
+                created++;
+            } finally {
+                lock.unlock();
+            }
+            return pooled;
+        } catch (SQLException | RuntimeException e) {
+            release();
+            throw e;
+        }
+    }
+
+    private boolean isUsable(PooledConnection pooled) {
+        if (System.currentTimeMillis() - pooled.lastUsed < validationIntervalMillis) {
+            return true;
+        }
+        try {
+            return pooled.connection.isValid(2);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private Connection lend(PooledConnection pooled, long waitNanos) {
+        Lease lease = new Lease(pooled);
+        lease.proxy = (Connection) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, lease);
+        lock.lock();
+        try {
+            leased.add(lease);
+            borrowed++;
+            totalWaitNanos += waitNanos;
+        } finally {
+            lock.unlock();
+        }
+        return lease.proxy;
+    }
+
+    /**
+     * takes a connection back from a lease, resets it and puts it in the pool
+     */
+    private void giveBack(Lease lease) {
+        lock.lock();
+        try {
+            leased.remove(lease);
+        } finally {
+            lock.unlock();
+        }
+
+        PooledConnection pooled = lease.pooled;
+        if (!pooled.reset()) {
+            destroy(pooled);
+            return;
+        }
+
+        lock.lock();
+        try {
+            if (!closed) {
+                pooled.lastUsed = System.currentTimeMillis();
+                idle.addFirst(pooled);
+                returned.signal();
+                return;
+            }
+            total--;
+        } finally {
+            lock.unlock();
+        }
+        closeQuietly(pooled);
+    }
+
+    /**
+     * closes a connection that cannot be used anymore and frees its slot
+     */
+    private void destroy(PooledConnection pooled) {
+        lock.lock();
+        try {
+            evicted++;
+        } finally {
+            lock.unlock();
+        }
+        release();
+        closeQuietly(pooled);
+    }
+
+    private void release() {
+        lock.lock();
+        try {
+            total--;
+            returned.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * wakes the next waiter if a connection is free, for a waiter that leaves without taking
+     * the connection it may have been woken for. called with the lock held
+     */
+    private void passOn() {
+        if (!idle.isEmpty() || total < maxSize) {
+            returned.signal();
+        }
+    }
+
+    /**
+     * runs on the housekeeper thread: closes connections that were idle too long and reports leaks
+     */
+    private void houseKeep() {
+        long now = System.currentTimeMillis();
+        List<PooledConnection> expired = new ArrayList<>();
+        List<Lease> leaked = new ArrayList<>();
+
+        lock.lock();
+        try {
+            while (!idle.isEmpty() && now - idle.peekLast().lastUsed > idleTimeoutMillis) {
+                expired.add(idle.pollLast());
+                total--;
+                evicted++;
+            }
+            for (Lease lease : leased) {
+                if (!lease.leakReported && now - lease.borrowedAt > leakThresholdMillis) {
+                    lease.leakReported = true;
+                    leaks++;
+                    leaked.add(lease);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        expired.forEach(ConnectionPool::closeQuietly);
+        for (Lease lease : leaked) {
+            System.err.println("Possible connection leak: a connection was borrowed "
+                    + (now - lease.borrowedAt) / 1000 + " s ago and has not been closed. It was borrowed here:");
+            lease.borrowStack.printStackTrace();
+        }
+    }
+
+    private static void closeQuietly(PooledConnection pooled) {
+        try {
+            pooled.connection.close();
+        } catch (SQLException e) {
+            System.err.println("Error closing a pooled connection: " + e.getMessage());
+        }
+    }
+
+    /**
+     * a physical connection with the settings it had when it was opened
+     */
+    private static class PooledConnection {
+        private final Connection connection;
+        private final StatementCache statements;
+        private final boolean autoCommit;
+        private final boolean readOnly;
+        private final int isolation;
+        private volatile long lastUsed = System.currentTimeMillis();
+
+        PooledConnection(Connection connection, int statementCacheSize) throws SQLException {
+            this.connection = connection;
+            this.statements = new StatementCache(statementCacheSize);
+            try {
+                autoCommit = connection.getAutoCommit();
+                readOnly = connection.isReadOnly();
+                isolation = connection.getTransactionIsolation();
+            } catch (SQLException e) {
+                connection.close();
+                throw e;
+            }
+        }
+
+        /**
+         * undoes what a borrower left behind
+         *
+         * @return false if the connection could not be reset and has to be closed
+         */
+        boolean reset() {
+            try {
+                if (connection.isClosed()) {
+                    return false;
+                }
+                if (!connection.getAutoCommit()) {
+                    connection.rollback();
+                }
+                if (connection.getAutoCommit() != autoCommit) {
+                    connection.setAutoCommit(autoCommit);
+                }
+                if (connection.isReadOnly() != readOnly) {
+                    connection.setReadOnly(readOnly);
+                }
+                if (connection.getTransactionIsolation() != isolation) {
+                    connection.setTransactionIsolation(isolation);
+                }
+                connection.clearWarnings();
+                return true;
+            } catch (SQLException e) {
+                System.err.println("Could not reset a pooled connection, it is closed: " + e.getMessage());
+                return false;
+            }
+        }
+    }
+
+    /**
+     * one loan of a connection, the handler behind the connection a borrower gets.
+     * close() gives the connection back, every other call after that fails.
+     */
+    private class Lease implements InvocationHandler {
+        private final PooledConnection pooled;
+        private final long borrowedAt = System.currentTimeMillis();
+        private final Exception borrowStack = new Exception("Connection borrowed");
+        private volatile boolean returnedToPool = false;
+        private boolean leakReported = false;
+        private Connection proxy;
+
+        //the statements handed out on this lease and not closed yet
+        private final Set<Statement> open = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+
+        Lease(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!returnedToPool) {
+                        returnedToPool = true;
+                        closeStatements();
+                        giveBack(this);
+                    }
+                    return null;
+                case "isClosed":
+                    return returnedToPool || pooled.connection.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "pooled " + pooled.connection;
+                default:
+                    break;
+            }
+            if (returnedToPool) {
+                throw new SQLException("Connection is closed");
+            }
+
+            //prepareStatement(sql) and prepareStatement(sql, autoGeneratedKeys) go through the cache
+            if (method.getName().equals("prepareStatement")
+                    && (args.length == 1 || (args.length == 2 && args[1] instanceof Integer))) {
+                int generatedKeys = args.length == 2 ? (Integer) args[1] : Statement.NO_GENERATED_KEYS;
+                return prepare(new StatementCache.Key((String) args[0], generatedKeys));
+            }
+
+            Object result;
+            try {
+                result = method.invoke(pooled.connection, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+            if (result instanceof Statement statement) {
+                open.add(statement);
+            }
+            return result;
+        }
+
+        private PreparedStatement prepare(StatementCache.Key key) throws SQLException {
+            PreparedStatement statement = pooled.statements.take(key);
+            if (statement != null) {
+                statementHits.increment();
+            } else {
+                statementMisses.increment();
+                statement = pooled.connection.prepareStatement(key.sql(), key.autoGeneratedKeys());
+            }
+            CachedStatement handler = new CachedStatement(this, key, statement);
+            PreparedStatement handle = (PreparedStatement) Proxy.newProxyInstance(
+                    ConnectionPool.class.getClassLoader(), new Class<?>[]{PreparedStatement.class}, handler);
+            open.add(handle);
+            return handle;
+        }
+
+        /**
+         * closes what the borrower left open, cached statements go back to the cache
+         */
+        private void closeStatements() {
+            List<Statement> left;
+            synchronized (open) {
+                left = new ArrayList<>(open);
+                open.clear();
+            }
+            for (Statement statement : left) {
+                try {
+                    statement.close();
+                } catch (SQLException e) {
+                    System.err.println("Error closing a statement that was left open: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * the handler behind a prepared statement from the cache.
+     * close() clears the statement and puts it back in the cache of its connection.
+     */
+    private static class CachedStatement implements InvocationHandler {
+        private final Lease lease;
+        private final StatementCache.Key key;
+        private final PreparedStatement statement;
+        private volatile boolean closed = false;
+
+        CachedStatement(Lease lease, StatementCache.Key key, PreparedStatement statement) {
+            this.lease = lease;
+            this.key = key;
+            this.statement = statement;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        lease.open.remove((Statement) proxy);
+                        recycle();
+                    }
+                    return null;
+                case "isClosed":
+                    return closed || statement.isClosed();
+                case "getConnection":
+                    return lease.proxy;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "cached " + statement;
+                default:
+                    break;
+            }
+            if (closed) {
+                throw new SQLException("Statement is closed");
+            }
+            try {
+                return method.invoke(statement, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+        private void recycle() {
+            try {
+                if (statement.isClosed()) {
+                    return;
+                }
+                ResultSet results = statement.getResultSet();
+                if (results != null) {
+                    results.close();
+                }
+                statement.clearParameters();
+                statement.clearBatch();
+                statement.clearWarnings();
+                lease.pooled.statements.put(key, statement);
+            } catch (SQLException e) {
+                StatementCache.closeQuietly(statement);
+            }
+        }
+    }
+
+    @Override
+    public PrintWriter getLogWriter() {
+        return DriverManager.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) {
+        DriverManager.setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) {
+        DriverManager.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() {
+        return DriverManager.getLoginTimeout();
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        throw new SQLException("Not a wrapper for " + iface.getName());
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) {
+        return iface.isInstance(this);
+    }
+}
@@ -1,5 +1,6 @@
 package database;
 
+import java.io.IOException;
 import java.sql.Connection;
 
 
@@ -11,7 +12,10 @@ import java.sql.SQLException;
 
 /*
  * this class uses the Singleton design pattern
- * this class ensures that only one instance of the database connection exists at any time
+ * this class ensures that only one pool of database connections exists at any time
+ * getConnection() borrows a connection from the pool, closing it gives it back
+ * the database is MySQL or an embedded H2 database, see StorageBackend
+ * with -Dnutrisci.profile=true every query is measured by a QueryProfiler
  */
 
 public class DBConnection {
@@ -19,42 +23,123 @@ public class DBConnection {
 	//singleton instance of DBConnection
     private static DBConnection instance;
     
-    //shared JDBC Connection object
-    private static Connection connection;
+    //shared pool of JDBC connections
+    private final ConnectionPool pool;
     
     //database information
-    private static final String URL = "jdbc:mysql://localhost:3306/nutrientDB";
-    private static final String USER = "root";
-    private static final String PASSWORD = "pass1234";
+    private final StorageBackend backend;
+    private final String importUrl;
+
+    //the tables an embedded database is created with
+    private static final String SCHEMA_FILE = "src/main/java/database/db.sql";
+
+    //measures the queries of the pooled connections, null unless -Dnutrisci.profile=true
+    private final QueryProfiler profiler;
+
+    //the most connections the application keeps open at once
+    private static final int POOL_SIZE = 8;
 
     /**
      * private constructor to prevent instantiation from outside the class
-     * initializes the JDBC connection to the database
+     * creates the connection pool of the configured backend and opens its first connection.
+     * an embedded database gets the tables of db.sql it does not have yet.
      * @throws SQLException if the conncection to the database fails
      */
     private DBConnection() throws SQLException {
-        connection = DriverManager.getConnection(URL, USER, PASSWORD);
+        backend = StorageBackend.fromConfiguration();
+        String url = backend.getUrl();
+        importUrl = backend.getImportUrl();
+
+        //the pooled MySQL connections prepare statements on the server, so a cached statement skips parsing and planning
+        String poolUrl = backend == StorageBackend.MYSQL ? url + "&useServerPrepStmts=true" : url;
+        pool = new ConnectionPool(poolUrl, backend.getUser(), backend.getPassword(), POOL_SIZE);
+        try {
+            //fail here like before if the database cannot be reached, the connection stays in the pool
+            try (Connection conn = pool.getConnection()) {
+                backend.createSchema(conn, SCHEMA_FILE);
+            }
+        } catch (SQLException e) {
+            pool.close();
+            throw e;
+        } catch (IOException e) {
+            pool.close();
+            throw new SQLException("Could not read " + SCHEMA_FILE + " to create the embedded database", e);
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(pool::close, "connection-pool-shutdown"));
+
+        if (Boolean.getBoolean("nutrisci.profile")) {
+            profiler = new QueryProfiler();
+            Runtime.getRuntime().addShutdownHook(new Thread(profiler::dump, "query-profile-report"));
+        } else {
+            profiler = null;
+        }
     }
 
     /**
      * returns the singleton instance of DBConnection.
-     * if the instance doesn't exist or the current connection is closed, a new instance is created.
+     * if the instance doesn't exist, it is created together with its connection pool.
      * @return the singleton DBConnection instance
      * @throws SQLException if access to database throws an error
      */
-    public static DBConnection getInstance() throws SQLException {
-        if (instance == null || connection.isClosed()) {
+    public static synchronized DBConnection getInstance() throws SQLException {
+        if (instance == null) {
             instance = new DBConnection();
         }
         return instance;
     }
 
     /**
-     * 
-     * @return the active connection object
+     * borrows a connection from the pool, closing it returns it to the pool.
+     * can be called from any thread.
+     * @return a connection of the pool
+     * @throws SQLException if no connection is free in time or a new one cannot be opened
+     */
+    public Connection getConnection() throws SQLException {
+        Connection conn = pool.getConnection();
+        return profiler != null ? profiler.wrap(conn) : conn;
+    }
+
+    /**
+     * @return the profiler that measures the queries, null if the application runs without -Dnutrisci.profile=true
+     */
+    public QueryProfiler getProfiler() {
+        return profiler;
+    }
+
+    /**
+     * @return the database engine the connections go to
+     */
+    public StorageBackend getBackend() {
+        return backend;
+    }
+
+    /**
+     * @return the connection pool, for code that takes a DataSource
+     */
+    public ConnectionPool getPool() {
+        return pool;
+    }
+
+    /**
+     * @return the current numbers of the connection pool
+     */
+    public ConnectionPool.Stats getPoolStats() {
+        return pool.getStats();
+    }
+
+    /**
+     * opens a separate connection that is not shared with the rest of the application.
+     * used by work that runs on its own thread, such as the parallel CNF imports.
+     * these connections are not pooled, so the session settings of a bulk import
+     * never reach the rest of the application and a long import does not hold a pool slot.
+     * only these connections may use LOAD DATA LOCAL INFILE.
+     * the caller is responsible for closing it.
+     *
+     * @return a new connection to the database
+     * @throws SQLException if the connection to the database fails
      */
-    public Connection getConnection() {
-        return connection;
+    public Connection openConnection() throws SQLException {
+        return DriverManager.getConnection(importUrl, backend.getUser(), backend.getPassword());
     }
 }
 
@@ -0,0 +1,254 @@
+package database;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * decodes CSV field values straight from a byte range of a buffer.
+ *
+ * the methods never throw for bad input and never create objects on the common path: an invalid
+ * value is reported through a sentinel (NO_INT, NO_DATE, NaN), so a loader can check a field and
+ * convert it in one pass instead of validating first and parsing again, or catching exceptions.
+ * the ranges are the trimmed, unquoted bounds CNFCsvReader keeps for every field.
+ */
+final class FieldDecoder {
+
+    /** returned by decodeInt for a field that is not a whole number in the int range */
+    static final long NO_INT = Long.MIN_VALUE;
+
+    /** returned by decodeDate for a field that is not a YYYY-MM-DD date */
+    static final int NO_DATE = Integer.MIN_VALUE;
+
+    //powers of ten that are exact doubles, used by the fast path of decodeDouble
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private FieldDecoder() {
+    }
+
+    /**
+     * @return the whole number in [start, end) with an optional sign, or NO_INT
+     */
+    static long decodeInt(ByteBuffer data, int start, int end) {
+        int i = start;
+        if (i >= end) {
+            return NO_INT;
+        }
+        boolean negative = false;
+        byte first = data.get(i);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            if (++i == end) {
+                return NO_INT;
+            }
+        }
+
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = data.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return NO_INT;
+            }
+            value = value * 10 + digit;
+            if (value > (long) Integer.MAX_VALUE + 1) {
+                return NO_INT;
+            }
+        }
+
+        value = negative ? -value : value;
+        return value > Integer.MAX_VALUE ? NO_INT : value;
+    }
+
+    /**
+     * @return the decimal number in [start, end), or NaN if it is not a number.
+     *         accepts what Double.parseDouble accepts for plain and scientific notation.
+     */
+    static double decodeDouble(ByteBuffer data, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (data.get(i) == '-' || data.get(i) == '+')) {
+            negative = data.get(i) == '-';
+            i++;
+        }
+
+        //fast path: plain decimals with at most 15 significant digits are exact when divided once
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean anyDigit = false;
+        boolean seenPoint = false;
+        for (; i < end; i++) {
+            byte b = data.get(i);
+            if (b >= '0' && b <= '9') {
+                if (mantissa != 0 || b != '0') {
+                    digits++;
+                }
+                mantissa = mantissa * 10 + (b - '0');
+                anyDigit = true;
+                if (seenPoint) {
+                    fractionDigits++;
+                }
+                if (digits > 15 || fractionDigits >= POWERS_OF_TEN.length) {
+                    break;
+                }
+            } else if (b == '.' && !seenPoint) {
+                seenPoint = true;
+            } else {
+                break;
+            }
+        }
+
+        if (i == end) {
+            if (!anyDigit) {
+                return Double.NaN;
+            }
+            double value = mantissa / POWERS_OF_TEN[fractionDigits];
+            return negative ? -value : value;
+        }
+
+        //long numbers and exponents are checked here and converted by the JDK, which then cannot fail
+        if (!isDecimal(data, start, end)) {
+            return Double.NaN;
+        }
+        byte[] bytes = new byte[end - start];
+        data.get(start, bytes);
+        return Double.parseDouble(new String(bytes, StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * reads a date the same way Date.valueOf(String) does: the month has to be between 1 and 12
+     * and the day between 1 and 31, days past the end of the month roll over into the next month.
+     *
+     * @return the date in [start, end) as days since 1970-01-01, or NO_DATE
+     */
+    static int decodeDate(ByteBuffer data, int start, int end) {
+        if (!isDateShape(data, start, end)) {
+            return NO_DATE;
+        }
+        int year = digitsAt(data, start, 4);
+        int month = digitsAt(data, start + 5, 2);
+        int day = digitsAt(data, start + 8, 2);
+        if (month < 1 || month > 12 || day < 1 || day > 31) {
+            return NO_DATE;
+        }
+        return (int) (daysToFirstOfMonth(year, month) + day - 1);
+    }
+
+    /**
+     * @return true if [start, end) has the form YYYY-MM-DD, the month and day are not checked
+     */
+    static boolean isDateShape(ByteBuffer data, int start, int end) {
+        if (end - start != 10) {
+            return false;
+        }
+        for (int i = 0; i < 10; i++) {
+            byte b = data.get(start + i);
+            boolean ok = (i == 4 || i == 7) ? b == '-' : (b >= '0' && b <= '9');
+            if (!ok) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true if [start, end) is not empty and only holds the digits 0 to 9
+     */
+    static boolean isDigits(ByteBuffer data, int start, int end) {
+        if (start >= end) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            byte b = data.get(i);
+            if (b < '0' || b > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true if [start, end) holds at least minLength ASCII letters and nothing else
+     */
+    static boolean isLetters(ByteBuffer data, int start, int end, int minLength) {
+        if (end - start < minLength) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            byte b = data.get(i);
+            if (!((b >= 'A' && b <= 'Z') || (b >= 'a' && b <= 'z'))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * checks the decimal grammar of Double.parseDouble: sign, digits with an optional point,
+     * an optional exponent. the trailing type letters (d, f) it also allows are not used in CNF files.
+     */
+    private static boolean isDecimal(ByteBuffer data, int start, int end) {
+        int i = start;
+        if (i < end && (data.get(i) == '-' || data.get(i) == '+')) {
+            i++;
+        }
+        int digits = 0;
+        while (i < end && isDigit(data.get(i))) {
+            i++;
+            digits++;
+        }
+        if (i < end && data.get(i) == '.') {
+            i++;
+            while (i < end && isDigit(data.get(i))) {
+                i++;
+                digits++;
+            }
+        }
+        if (digits == 0) {
+            return false;
+        }
+        if (i < end && (data.get(i) == 'e' || data.get(i) == 'E')) {
+            i++;
+            if (i < end && (data.get(i) == '-' || data.get(i) == '+')) {
+                i++;
+            }
+            int exponentDigits = 0;
+            while (i < end && isDigit(data.get(i))) {
+                i++;
+                exponentDigits++;
+            }
+            if (exponentDigits == 0) {
+                return false;
+            }
+        }
+        return i == end;
+    }
+
+    /**
+     * @return the days from 1970-01-01 to the first day of a month, same result as LocalDate.toEpochDay
+     */
+    private static long daysToFirstOfMonth(int year, int month) {
+        //days from civil, counting years from March so the leap day is the last day of the year
+        long y = month <= 2 ? year - 1 : year;
+        long era = Math.floorDiv(y, 400);
+        long yearOfEra = y - era * 400;
+        int monthFromMarch = month > 2 ? month - 3 : month + 9;
+        long dayOfYear = (153L * monthFromMarch + 2) / 5;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    private static int digitsAt(ByteBuffer data, int start, int count) {
+        int value = 0;
+        for (int i = 0; i < count; i++) {
+            value = value * 10 + (data.get(start + i) - '0');
+        }
+        return value;
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+}
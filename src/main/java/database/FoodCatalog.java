@@ -0,0 +1,225 @@
+package database;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * all foods of the food_name table, read once and shared by every panel that lets the user pick a food.
+ *
+ * the foods are kept in parallel arrays ordered by id: the id, description, French description,
+ * food group and food source of the food at each index. the catalog is read on a background thread
+ * (see load), so building a panel never waits for food_name on the event dispatch thread, and
+ * the food pickers show the foods from these arrays instead of their own copy of the names.
+ * foods are looked up by id, two foods with the same description stay two foods.
+ *
+ * like the NutrientMatrix, it is read again after an import changed food_name (see invalidate).
+ */
+public final class FoodCatalog {
+
+    /**
+     * a food as it is shown in a food picker
+     *
+     * @param id the food id
+     * @param description the English description
+     */
+    public record Food(int id, String description) {
+
+        @Override
+        public String toString() {
+            return description;
+        }
+    }
+
+    private static CompletableFuture<FoodCatalog> loading;
+
+    private final int[] ids;
+    private final String[] descriptions;
+    private final String[] frenchDescriptions;
+    private final int[] foodGroupIds;
+    private final int[] foodSourceIds;
+
+    private FoodCatalog(int[] ids, String[] descriptions, String[] frenchDescriptions, int[] foodGroupIds,
+                        int[] foodSourceIds) {
+        this.ids = ids;
+        this.descriptions = descriptions;
+        this.frenchDescriptions = frenchDescriptions;
+        this.foodGroupIds = foodGroupIds;
+        this.foodSourceIds = foodSourceIds;
+    }
+
+    /**
+     * starts reading food_name on a background thread, unless it is already read or being read
+     *
+     * @return the catalog once it is read
+     */
+    public static synchronized CompletableFuture<FoodCatalog> load() {
+        if (loading == null || loading.isCompletedExceptionally()) {
+            CompletableFuture<FoodCatalog> future = new CompletableFuture<>();
+            loading = future;
+            Thread thread = new Thread(() -> {
+                try (Connection conn = DBConnection.getInstance().getConnection()) {
+                    future.complete(read(conn));
+                } catch (Throwable e) {
+                    System.err.println("Error loading food names.");
+                    e.printStackTrace();
+                    future.completeExceptionally(e);
+                }
+            }, "food-catalog");
+            thread.setDaemon(true);
+            thread.start();
+        }
+        return loading;
+    }
+
+    /**
+     * returns the catalog, waiting for it to be read if it is not yet
+     *
+     * @return all foods
+     * @throws SQLException if food_name cannot be read
+     */
+    public static FoodCatalog getInstance() throws SQLException {
+        try {
+            return load().get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SQLException sqlException) {
+                throw sqlException;
+            }
+            throw new SQLException("Could not load the food catalog", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while loading the food catalog", e);
+        }
+    }
+
+    /**
+     * drops the catalog, the next load() reads food_name again.
+     * called after an import wrote to food_name.
+     */
+    public static synchronized void invalidate() {
+        loading = null;
+    }
+
+    /**
+     * reads the foods of food_name
+     *
+     * @param conn a connection to the database
+     * @return the catalog of the foods
+     * @throws SQLException if the table cannot be read
+     */
+    static FoodCatalog read(Connection conn) throws SQLException {
+        long start = System.nanoTime();
+        int size = 0;
+        int[] ids = new int[1024];
+        String[] descriptions = new String[1024];
+        String[] frenchDescriptions = new String[1024];
+        int[] foodGroupIds = new int[1024];
+        int[] foodSourceIds = new int[1024];
+
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(
+                     "SELECT id, description, description_french, food_group_id, food_source_id FROM food_name ORDER BY id")) {
+            while (rs.next()) {
+                if (size == ids.length) {
+                    ids = Arrays.copyOf(ids, size * 2);
+                    descriptions = Arrays.copyOf(descriptions, size * 2);
+                    frenchDescriptions = Arrays.copyOf(frenchDescriptions, size * 2);
+                    foodGroupIds = Arrays.copyOf(foodGroupIds, size * 2);
+                    foodSourceIds = Arrays.copyOf(foodSourceIds, size * 2);
+                }
+                ids[size] = rs.getInt("id");
+                descriptions[size] = valueOrEmpty(rs.getString("description"));
+                frenchDescriptions[size] = valueOrEmpty(rs.getString("description_french"));
+                foodGroupIds[size] = rs.getInt("food_group_id");
+                foodSourceIds[size] = rs.getInt("food_source_id");
+                size++;
+            }
+        }
+
+        System.out.printf("Loaded %d food names in %d ms.%n", size, (System.nanoTime() - start) / 1_000_000);
+        return new FoodCatalog(Arrays.copyOf(ids, size), Arrays.copyOf(descriptions, size),
+                Arrays.copyOf(frenchDescriptions, size), Arrays.copyOf(foodGroupIds, size),
+                Arrays.copyOf(foodSourceIds, size));
+    }
+
+    private static String valueOrEmpty(String value) {
+        return value != null ? value : "";
+    }
+
+    /**
+     * @return the number of foods
+     */
+    public int size() {
+        return ids.length;
+    }
+
+    /**
+     * @param foodId a food id
+     * @return the index of the food, or -1 if there is no food with that id
+     */
+    public int indexOf(int foodId) {
+        int index = Arrays.binarySearch(ids, foodId);
+        return index >= 0 ? index : -1;
+    }
+
+    /**
+     * @param index the index of a food
+     * @return the id of the food
+     */
+    public int getId(int index) {
+        return ids[index];
+    }
+
+    /**
+     * @param index the index of a food
+     * @return the English description of the food
+     */
+    public String getDescription(int index) {
+        return descriptions[index];
+    }
+
+    /**
+     * @param index the index of a food
+     * @return the French description of the food
+     */
+    public String getFrenchDescription(int index) {
+        return frenchDescriptions[index];
+    }
+
+    /**
+     * @param index the index of a food
+     * @return the id of the food group of the food
+     */
+    public int getFoodGroupId(int index) {
+        return foodGroupIds[index];
+    }
+
+    /**
+     * @param index the index of a food
+     * @return the id of the food source of the food, 0 if it has none
+     */
+    public int getFoodSourceId(int index) {
+        return foodSourceIds[index];
+    }
+
+    /**
+     * @param index the index of a food
+     * @return the food for a food picker
+     */
+    public Food getFood(int index) {
+        return new Food(ids[index], descriptions[index]);
+    }
+
+    /**
+     * @param foodId a food id
+     * @return the English description of the food, or null if there is no food with that id
+     */
+    public String getDescriptionOf(int foodId) {
+        int index = indexOf(foodId);
+        return index >= 0 ? descriptions[index] : null;
+    }
+}
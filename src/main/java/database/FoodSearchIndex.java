@@ -0,0 +1,610 @@
+package database;
+
+import java.sql.SQLException;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.regex.Pattern;
+
+/**
+ * a search index over the English and French descriptions of the FoodCatalog, for the type-ahead
+ * fields of the food pickers.
+ *
+ * the descriptions are split into words, lower case and without accents ("Crème brûlée" is
+ * "creme" and "brulee"), so a query matches with or without accents. the index has:
+ * 1. the words, sorted, so the words starting with a query word are one range found by binary search
+ * 2. for every word, the catalog indexes of the foods it is in, and whether a description of the food starts with it
+ * 3. for every trigram (three letters in a row), the words it is in, so a query word found in
+ *    the middle of a word only has to be compared with the words that have all of its trigrams
+ * 4. a BK-tree of the words, for the words within a few typos of a query word ("brocoli" is
+ *    one edit from "broccoli")
+ *
+ * a food ranks higher the more query words it matches: if some foods match every query word,
+ * only those are found. then it ranks higher the better its words match: the same word, then
+ * a word starting with it, then a word containing it, then a word with the fewest typos, and a
+ * little higher if its description starts with the first query word ("milk" finds
+ * "Milk, fluid, skim" before "Cracker, milk"). foods that rank the same are ordered by the
+ * length of their description, shorter first, then by id.
+ *
+ * the index is built on a background thread once the catalog is loaded (see load), and again
+ * for the new catalog after an import.
+ */
+public final class FoodSearchIndex {
+
+    //the score of a query word matching a word of a food
+    private static final int EXACT = 16;
+    private static final int PREFIX = 12;
+    private static final int SUBSTRING = 8;
+    private static final int FUZZY = 8; //minus 2 for every typo
+    private static final int LEADING = 1; //if the description starts with the word matched by the first query word
+
+    private static volatile int maxDistance = Integer.getInteger("nutrisci.search.maxDistance", 2);
+
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+
+    private static CompletableFuture<FoodCatalog> loadedFrom;
+    private static CompletableFuture<FoodSearchIndex> loading;
+
+    private final FoodCatalog catalog;
+
+    //the words sorted, and the foods of word i in foods[foodStart[i]] to foods[foodStart[i + 1] - 1].
+    //a food is its index * 2, + 1 if the word is not the first word of its description
+    private final String[] words;
+    private final int[] foodStart;
+    private final int[] foods;
+
+    //the trigrams sorted, and the words of trigram i in trigramWords[wordStart[i]] to trigramWords[wordStart[i + 1] - 1]
+    private final long[] trigrams;
+    private final int[] wordStart;
+    private final int[] trigramWords;
+
+    //a BK-tree of the words with word 0 at the root: the children of word w are firstChild[w] and
+    //their nextSibling, and edge[c] is the edit distance between child c and its parent.
+    //all words within a distance of a word in a child are within that distance of the child's edge
+    private final int[] firstChild;
+    private final int[] nextSibling;
+    private final int[] edge;
+
+    private FoodSearchIndex(FoodCatalog catalog, String[] words, int[] foodStart, int[] foods,
+                            long[] trigrams, int[] wordStart, int[] trigramWords) {
+        this.catalog = catalog;
+        this.words = words;
+        this.foodStart = foodStart;
+        this.foods = foods;
+        this.trigrams = trigrams;
+        this.wordStart = wordStart;
+        this.trigramWords = trigramWords;
+
+        firstChild = new int[words.length];
+        nextSibling = new int[words.length];
+        edge = new int[words.length];
+        Arrays.fill(firstChild, -1);
+        Arrays.fill(nextSibling, -1);
+        int longest = 0;
+        for (String word : words) {
+            longest = Math.max(longest, word.length());
+        }
+        int[] previous = new int[longest + 1];
+        int[] current = new int[longest + 1];
+        for (int w = 1; w < words.length; w++) {
+            int parent = 0;
+            while (true) {
+                int d = distance(words[parent], words[w], previous, current);
+                int child = firstChild[parent];
+                while (child >= 0 && edge[child] != d) {
+                    child = nextSibling[child];
+                }
+                if (child < 0) {
+                    edge[w] = d;
+                    nextSibling[w] = firstChild[parent];
+                    firstChild[parent] = w;
+                    break;
+                }
+                parent = child;
+            }
+        }
+    }
+
+    /**
+     * sets how many typos a query word may have, by default the nutrisci.search.maxDistance
+     * system property or 2. a query word may have one typo for every three letters after the
+     * first, up to this number
+     *
+     * @param distance the largest edit distance between a query word and a word it matches, 0 to only match the words as typed
+     */
+    public static void setMaxDistance(int distance) {
+        if (distance < 0) {
+            throw new IllegalArgumentException("Max distance must be at least 0");
+        }
+        maxDistance = distance;
+    }
+
+    /**
+     * starts building the index of the food catalog on a background thread, unless it is already
+     * built or being built for the current catalog
+     *
+     * @return the index once it is built
+     */
+    public static synchronized CompletableFuture<FoodSearchIndex> load() {
+        CompletableFuture<FoodCatalog> catalog = FoodCatalog.load();
+        if (loading == null || catalog != loadedFrom) {
+            loadedFrom = catalog;
+            loading = catalog.thenApplyAsync(FoodSearchIndex::build);
+        }
+        return loading;
+    }
+
+    /**
+     * returns the index, waiting for it to be built if it is not yet
+     *
+     * @return the index of the current food catalog
+     * @throws SQLException if food_name cannot be read
+     */
+    public static FoodSearchIndex getInstance() throws SQLException {
+        try {
+            return load().get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SQLException sqlException) {
+                throw sqlException;
+            }
+            throw new SQLException("Could not build the food search index", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while building the food search index", e);
+        }
+    }
+
+    /**
+     * builds the index of the descriptions of a catalog
+     *
+     * @param catalog the foods
+     * @return the index
+     */
+    static FoodSearchIndex build(FoodCatalog catalog) {
+        long start = System.nanoTime();
+
+        //every (word, food) pair, with the word as a number in the order the words were found.
+        //a food that starts with the word sorts before the same food without, so it is the one that is found first
+        Map<String, Integer> wordIds = new HashMap<>();
+        List<String> wordList = new ArrayList<>();
+        long[] pairs = new long[catalog.size() * 16];
+        int pairCount = 0;
+        for (int food = 0; food < catalog.size(); food++) {
+            for (String description : new String[]{catalog.getDescription(food), catalog.getFrenchDescription(food)}) {
+                List<String> descriptionWords = words(description);
+                for (int position = 0; position < descriptionWords.size(); position++) {
+                    String word = descriptionWords.get(position);
+                    Integer id = wordIds.get(word);
+                    if (id == null) {
+                        id = wordList.size();
+                        wordIds.put(word, id);
+                        wordList.add(word);
+                    }
+                    if (pairCount == pairs.length) {
+                        pairs = Arrays.copyOf(pairs, pairCount * 2);
+                    }
+                    pairs[pairCount++] = (long) id << 32 | food * 2L | (position == 0 ? 0 : 1);
+                }
+            }
+        }
+
+        //number the words in sorted order instead
+        String[] words = wordList.toArray(new String[0]);
+        Arrays.sort(words);
+        int[] rank = new int[words.length];
+        for (int i = 0; i < words.length; i++) {
+            rank[wordIds.get(words[i])] = i;
+        }
+        for (int i = 0; i < pairCount; i++) {
+            pairs[i] = (long) rank[(int) (pairs[i] >>> 32)] << 32 | (pairs[i] & 0xFFFFFFFFL);
+        }
+        int[] foodStart = new int[words.length + 1];
+        int[] foods = group(pairs, pairCount, foodStart);
+
+        //every (trigram, word) pair, with the trigram as a number in sorted order
+        long[] keys = new long[words.length * 8];
+        int keyCount = 0;
+        for (String word : words) {
+            for (int i = 0; i + 3 <= word.length(); i++) {
+                if (keyCount == keys.length) {
+                    keys = Arrays.copyOf(keys, keyCount * 2);
+                }
+                keys[keyCount++] = trigram(word, i);
+            }
+        }
+        long[] trigrams = distinct(keys, keyCount);
+        pairs = new long[keyCount];
+        pairCount = 0;
+        for (int w = 0; w < words.length; w++) {
+            for (int i = 0; i + 3 <= words[w].length(); i++) {
+                pairs[pairCount++] = (long) Arrays.binarySearch(trigrams, trigram(words[w], i)) << 32 | w;
+            }
+        }
+        int[] wordStart = new int[trigrams.length + 1];
+        int[] trigramWords = group(pairs, pairCount, wordStart);
+
+        FoodSearchIndex index = new FoodSearchIndex(catalog, words, foodStart, foods, trigrams, wordStart, trigramWords);
+        System.out.printf("Built food search index of %d words in %d ms.%n", words.length,
+                (System.nanoTime() - start) / 1_000_000);
+        return index;
+    }
+
+    /**
+     * sorts (key, value) pairs and groups the distinct values by key
+     *
+     * @param pairs the key in the high and the value in the low 32 bits, the keys are 0 to start.length - 2
+     * @param count the number of pairs
+     * @param start filled with the start of the values of each key, and the number of values at the end
+     * @return the values, sorted by key and value
+     */
+    private static int[] group(long[] pairs, int count, int[] start) {
+        long[] sorted = distinct(pairs, count);
+        int[] values = new int[sorted.length];
+        for (int i = 0; i < sorted.length; i++) {
+            values[i] = (int) sorted[i];
+            start[(int) (sorted[i] >>> 32) + 1]++;
+        }
+        for (int i = 1; i < start.length; i++) {
+            start[i] += start[i - 1];
+        }
+        return values;
+    }
+
+    private static long[] distinct(long[] values, int count) {
+        long[] sorted = Arrays.copyOf(values, count);
+        Arrays.sort(sorted);
+        int distinct = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1]) {
+                sorted[distinct++] = sorted[i];
+            }
+        }
+        return Arrays.copyOf(sorted, distinct);
+    }
+
+    private static long trigram(String word, int at) {
+        return (long) word.charAt(at) << 32 | (long) word.charAt(at + 1) << 16 | word.charAt(at + 2);
+    }
+
+    /**
+     * splits a text into lower case words without accents, as they are kept in the index
+     *
+     * @param text a description or query
+     * @return the words, in the order of the text
+     */
+    static List<String> words(String text) {
+        String folded = text.toLowerCase(Locale.ROOT);
+        if (!isAscii(folded)) {
+            folded = MARKS.matcher(Normalizer.normalize(folded, Normalizer.Form.NFD)).replaceAll("")
+                    .replace("œ", "oe")
+                    .replace("æ", "ae");
+        }
+
+        List<String> words = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= folded.length(); i++) {
+            boolean letter = i < folded.length() && Character.isLetterOrDigit(folded.charAt(i));
+            if (letter && start < 0) {
+                start = i;
+            } else if (!letter && start >= 0) {
+                words.add(folded.substring(start, i));
+                start = -1;
+            }
+        }
+        return words;
+    }
+
+    private static boolean isAscii(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the catalog of the foods this index finds
+     */
+    public FoodCatalog getCatalog() {
+        return catalog;
+    }
+
+    /**
+     * @return the number of distinct words in the descriptions
+     */
+    public int getWordCount() {
+        return words.length;
+    }
+
+    /**
+     * finds the foods whose descriptions best match a query, allowing the configured number of
+     * typos in a query word (see setMaxDistance)
+     *
+     * @param query the text typed by the user
+     * @param limit the most foods to return
+     * @return the catalog indexes of the best matching foods, best first. getId of the catalog gives
+     *         their food ids. empty if the query has no words
+     */
+    public int[] search(String query, int limit) {
+        return search(query, limit, maxDistance);
+    }
+
+    /**
+     * finds the foods whose descriptions best match a query. if some foods match every query
+     * word, only those are returned, otherwise the foods that match the most query words
+     *
+     * @param query the text typed by the user
+     * @param limit the most foods to return
+     * @param maxDistance the most typos (edit distance) a query word may have to match a word, 0 for none
+     * @return the catalog indexes of the best matching foods, best first. getId of the catalog gives
+     *         their food ids. empty if the query has no words
+     */
+    public int[] search(String query, int limit, int maxDistance) {
+        List<String> terms = words(query);
+        if (terms.isEmpty() || limit <= 0) {
+            return new int[0];
+        }
+
+        Matches matches = new Matches();
+        for (int t = 0; t < terms.size(); t++) {
+            String term = terms.get(t);
+
+            //the words starting with the term are one range of the sorted words, the term itself first.
+            //the best kind of match comes first, a food keeps the score of its first match of a term
+            int from = lowerBound(term);
+            int to = lowerBound(term + Character.MAX_VALUE);
+            boolean exact = from < to && words[from].equals(term);
+            if (exact) {
+                matches.add(from, t, EXACT);
+            }
+            for (int word = exact ? from + 1 : from; word < to; word++) {
+                matches.add(word, t, PREFIX);
+            }
+            if (term.length() >= 3) {
+                for (int word : wordsContaining(term)) {
+                    matches.add(word, t, SUBSTRING);
+                }
+            }
+
+            //longer words may have more typos, a short word with a typo is too often another word
+            int distance = Math.min(maxDistance, (term.length() - 1) / 3);
+            if (distance > 0) {
+                for (long similar : wordsWithin(term, distance)) {
+                    matches.add((int) similar, t, FUZZY - 2 * (int) (similar >>> 32));
+                }
+            }
+        }
+
+        return best(matches, terms.size(), limit);
+    }
+
+    /**
+     * the foods found for the words of a query, and how well they match
+     */
+    private final class Matches {
+
+        //covered[f] is the number of terms food f matched, score[f] how well, term[f] the last term + 1 it matched
+        final int[] covered = new int[catalog.size()];
+        final int[] score = new int[catalog.size()];
+        final int[] term = new int[catalog.size()];
+        int[] found = new int[16];
+        int foundCount;
+
+        /**
+         * adds the foods of a word that matches a query word, unless a food already matched that query word
+         *
+         * @param word the index of the word
+         * @param t the index of the query word
+         * @param points the score of the match
+         */
+        void add(int word, int t, int points) {
+            for (int i = foodStart[word]; i < foodStart[word + 1]; i++) {
+                int food = foods[i] >>> 1;
+                if (term[food] == t + 1) {
+                    continue;
+                }
+                term[food] = t + 1;
+                score[food] += points + (t == 0 && (foods[i] & 1) == 0 ? LEADING : 0);
+                if (covered[food]++ == 0) {
+                    if (foundCount == found.length) {
+                        found = Arrays.copyOf(found, foundCount * 2);
+                    }
+                    found[foundCount++] = food;
+                }
+            }
+        }
+    }
+
+    /**
+     * @param term a query word
+     * @param maxDistance the largest edit distance
+     * @return the words within the distance of the term that are not the term itself, as the
+     *         distance in the high and the word in the low 32 bits, closest first
+     */
+    private long[] wordsWithin(String term, int maxDistance) {
+        if (words.length == 0) {
+            return new long[0];
+        }
+
+        long[] result = new long[16];
+        int count = 0;
+        int[] previous = new int[term.length() + 1];
+        int[] current = new int[term.length() + 1];
+        int[] stack = new int[16];
+        int size = 0;
+        stack[size++] = 0;
+
+        //a child at edge e of a word at distance d from the term can only be within the distance if |e - d| <= maxDistance
+        while (size > 0) {
+            int word = stack[--size];
+            int d = distance(words[word], term, previous, current);
+            if (d > 0 && d <= maxDistance) {
+                if (count == result.length) {
+                    result = Arrays.copyOf(result, count * 2);
+                }
+                result[count++] = (long) d << 32 | word;
+            }
+            for (int child = firstChild[word]; child >= 0; child = nextSibling[child]) {
+                if (Math.abs(edge[child] - d) <= maxDistance) {
+                    if (size == stack.length) {
+                        stack = Arrays.copyOf(stack, size * 2);
+                    }
+                    stack[size++] = child;
+                }
+            }
+        }
+
+        result = Arrays.copyOf(result, count);
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * the Levenshtein distance: the number of letters to insert, delete or replace to turn a into b
+     *
+     * @param previous a row of b.length() + 1, used by the calculation
+     * @param current a row of b.length() + 1, used by the calculation
+     */
+    private static int distance(String a, String b, int[] previous, int[] current) {
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            char c = a.charAt(i - 1);
+            for (int j = 1; j <= b.length(); j++) {
+                int replace = previous[j - 1] + (c == b.charAt(j - 1) ? 0 : 1);
+                current[j] = Math.min(replace, Math.min(previous[j], current[j - 1]) + 1);
+            }
+            int[] row = previous;
+            previous = current;
+            current = row;
+        }
+        return previous[b.length()];
+    }
+
+    /**
+     * @param term a query word of at least three letters
+     * @return the words that contain the term but do not start with it
+     */
+    private int[] wordsContaining(String term) {
+        //the trigram of the term with the fewest words, every word with the term is among them
+        int rarest = -1;
+        for (int i = 0; i + 3 <= term.length(); i++) {
+            int trigram = Arrays.binarySearch(trigrams, trigram(term, i));
+            if (trigram < 0) {
+                return new int[0];
+            }
+            if (rarest < 0 || wordStart[trigram + 1] - wordStart[trigram] < wordStart[rarest + 1] - wordStart[rarest]) {
+                rarest = trigram;
+            }
+        }
+
+        int[] result = new int[wordStart[rarest + 1] - wordStart[rarest]];
+        int count = 0;
+        for (int i = wordStart[rarest]; i < wordStart[rarest + 1]; i++) {
+            String word = words[trigramWords[i]];
+            if (!word.startsWith(term) && word.contains(term)) {
+                result[count++] = trigramWords[i];
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * @param text a text
+     * @return the index of the first word that is not less than the text
+     */
+    private int lowerBound(String text) {
+        int index = Arrays.binarySearch(words, text);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    /**
+     * picks the best foods without sorting all of them
+     *
+     * @param matches the foods found
+     * @param terms the number of query words
+     * @param limit the most foods to return
+     * @return the catalog indexes of at most limit foods, best first
+     */
+    private int[] best(Matches matches, int terms, int limit) {
+        //the foods that match every query word, if there are any, as the fuzzy matches of one word
+        //should not push aside the foods that have them all
+        int[] found = matches.found;
+        int count = 0;
+        boolean all = false;
+        for (int i = 0; i < matches.foundCount && !all; i++) {
+            all = matches.covered[found[i]] == terms;
+        }
+        for (int i = 0; i < matches.foundCount; i++) {
+            if (!all || matches.covered[found[i]] == terms) {
+                found[count++] = found[i];
+            }
+        }
+
+        //a key sorts by the query words matched, most first, then by score, highest first,
+        //then by the length of the description, then by index
+        long[] heap = new long[Math.min(limit, count)];
+        int size = 0;
+        for (int i = 0; i < count; i++) {
+            int food = found[i];
+            long key = (long) Math.min(terms - matches.covered[food], 0xF) << 56
+                    | (long) (0xFFFF - Math.min(matches.score[food], 0xFFFF)) << 40
+                    | (long) Math.min(catalog.getDescription(food).length(), 0xFFFF) << 24
+                    | food;
+            if (size < heap.length) {
+                heap[size++] = key;
+                siftUp(heap, size - 1);
+            } else if (key < heap[0]) {
+                heap[0] = key;
+                siftDown(heap, size);
+            }
+        }
+
+        Arrays.sort(heap, 0, size);
+        int[] result = new int[size];
+        for (int i = 0; i < size; i++) {
+            result[i] = (int) (heap[i] & 0xFFFFFF);
+        }
+        return result;
+    }
+
+    //a heap with the largest key, the worst of the best foods, at the top
+    private static void siftUp(long[] heap, int i) {
+        while (i > 0 && heap[(i - 1) / 2] < heap[i]) {
+            swap(heap, i, (i - 1) / 2);
+            i = (i - 1) / 2;
+        }
+    }
+
+    private static void siftDown(long[] heap, int size) {
+        int i = 0;
+        while (true) {
+            int largest = i;
+            for (int child = 2 * i + 1; child <= 2 * i + 2 && child < size; child++) {
+                if (heap[child] > heap[largest]) {
+                    largest = child;
+                }
+            }
+            if (largest == i) {
+                return;
+            }
+            swap(heap, i, largest);
+            i = largest;
+        }
+    }
+
+    private static void swap(long[] heap, int i, int j) {
+        long tmp = heap[i];
+        heap[i] = heap[j];
+        heap[j] = tmp;
+    }
+}
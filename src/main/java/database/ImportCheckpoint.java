@@ -0,0 +1,100 @@
+package database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * position of an import that was committed in chunks, stored in the cnf_import_checkpoint table.
+ *
+ * the checkpoint is written in the same transaction as the rows of the chunk, so after a crash
+ * it always points at the first record that is not in the table yet.
+ * it is removed in the transaction that finishes the import.
+ *
+ * @param contentHash the content hash of the CSV file being imported
+ * @param byteOffset the byte offset of the next record
+ * @param lineNumber the line number of the next record
+ * @param inserted the rows inserted before the checkpoint
+ * @param failed the rows that failed before the checkpoint
+ */
+record ImportCheckpoint(String contentHash, long byteOffset, long lineNumber, int inserted, int failed) {
+
+    private static final String CREATE_SQL = "CREATE TABLE IF NOT EXISTS cnf_import_checkpoint ("
+            + "table_name VARCHAR(64) PRIMARY KEY, "
+            + "content_hash CHAR(64) NOT NULL, "
+            + "byte_offset BIGINT NOT NULL, "
+            + "line_number BIGINT NOT NULL, "
+            + "rows_inserted INT NOT NULL, "
+            + "rows_failed INT NOT NULL, "
+            + "updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP)";
+
+    private static final String SAVE_SQL = "INSERT INTO cnf_import_checkpoint "
+            + "(table_name, content_hash, byte_offset, line_number, rows_inserted, rows_failed, updated_at) "
+            + "VALUES (?, ?, ?, ?, ?, ?, CURRENT_TIMESTAMP) "
+            + "ON DUPLICATE KEY UPDATE content_hash = VALUES(content_hash), byte_offset = VALUES(byte_offset), "
+            + "line_number = VALUES(line_number), rows_inserted = VALUES(rows_inserted), "
+            + "rows_failed = VALUES(rows_failed), updated_at = CURRENT_TIMESTAMP";
+
+    /**
+     * @param conn the connection of the import
+     * @param table the table name
+     * @return the checkpoint of an unfinished import of the table, null if there is none
+     * @throws SQLException if the checkpoint table cannot be read or created
+     */
+    static ImportCheckpoint load(Connection conn, String table) throws SQLException {
+        String sql = "SELECT content_hash, byte_offset, line_number, rows_inserted, rows_failed "
+                + "FROM cnf_import_checkpoint WHERE table_name = ?";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, table);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    return new ImportCheckpoint(rs.getString(1), rs.getLong(2), rs.getLong(3),
+                            rs.getInt(4), rs.getInt(5));
+                }
+                return null;
+            }
+        } catch (SQLException e) {
+            //database created before the checkpoint table existed
+            conn.rollback();
+            try (Statement create = conn.createStatement()) {
+                create.executeUpdate(CREATE_SQL);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * writes the checkpoint of a table, on the connection of the import so it is part of the chunk
+     *
+     * @param conn the connection of the import
+     * @param table the table name
+     * @throws SQLException if the checkpoint cannot be written
+     */
+    void save(Connection conn, String table) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(SAVE_SQL)) {
+            stmt.setString(1, table);
+            stmt.setString(2, contentHash);
+            stmt.setLong(3, byteOffset);
+            stmt.setLong(4, lineNumber);
+            stmt.setInt(5, inserted);
+            stmt.setInt(6, failed);
+            stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * removes the checkpoint of a table once its import is finished or started over
+     *
+     * @param conn the connection of the import
+     * @param table the table name
+     * @throws SQLException if the checkpoint cannot be removed
+     */
+    static void clear(Connection conn, String table) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("DELETE FROM cnf_import_checkpoint WHERE table_name = ?")) {
+            stmt.setString(1, table);
+            stmt.executeUpdate();
+        }
+    }
+}
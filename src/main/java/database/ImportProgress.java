@@ -0,0 +1,30 @@
+package database;
+
+import java.time.Duration;
+
+/**
+ * progress of a chunked CNF import, reported after every committed chunk.
+ *
+ * @param table the table being imported
+ * @param rows the rows read from the file so far, including the ones of earlier runs
+ * @param bytesRead the bytes of the file read so far
+ * @param totalBytes the size of the file
+ * @param rowsPerSecond the rows read per second since the import was started or resumed
+ * @param eta the estimated time until the import is finished
+ */
+public record ImportProgress(String table, long rows, long bytesRead, long totalBytes,
+                             double rowsPerSecond, Duration eta) {
+
+    /**
+     * @return the share of the file that was read, between 0 and 100
+     */
+    public double getPercent() {
+        return totalBytes == 0 ? 100 : bytesRead * 100.0 / totalBytes;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %.1f%% (%d rows, %.0f rows/s, ETA %ds)",
+                table, getPercent(), rows, rowsPerSecond, eta.toSeconds());
+    }
+}
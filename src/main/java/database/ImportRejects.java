@@ -0,0 +1,267 @@
+package database;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * collects the rows of one table import that could not be converted or inserted.
+ *
+ * every rejected row is written to a reject CSV file (line number, error class, message, record)
+ * through a buffered writer, and only the first few stack traces are printed, so a release with
+ * thousands of bad lines is imported at full speed and can be looked at afterwards.
+ * close() prints how many rows failed for each cause.
+ *
+ * the file is only created once a row is rejected. the methods can be called from several threads.
+ * rows rejected between hold() and release() are only recorded if the statement they belong to
+ * succeeds, so a statement that is run again another way does not reject its rows twice.
+ */
+class ImportRejects implements Closeable {
+
+    private static final String HEADER = "line,error,message,record";
+
+    private final CNFTable table;
+    private final Path file;
+    private final int maxStackTraces;
+    private final boolean append;
+
+    private BufferedWriter writer;
+    private boolean writeFailed = false;
+    private int count = 0;
+
+    //"error class: message" with numbers and quoted values removed -> number of rows
+    private final Map<String, Integer> causes = new HashMap<>();
+
+    //rows rejected since hold(), null if rows are recorded right away
+    private List<Held> held;
+
+    /**
+     * @param table the table being imported
+     * @param directory the directory of the reject files
+     * @param maxStackTraces the number of stack traces printed before only the reject file is written
+     * @param append true to add to the reject file of an earlier run, for a resumed import
+     */
+    ImportRejects(CNFTable table, Path directory, int maxStackTraces, boolean append) {
+        this.table = table;
+        this.file = directory.resolve(table.getTableName() + ".rejects.csv");
+        this.maxStackTraces = maxStackTraces;
+        this.append = append;
+        if (!append) {
+            //a fresh import replaces the rejects of the last one
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                System.err.println("Could not remove the old reject file " + file + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * records a row that failed with an exception
+     *
+     * @param lineNumber the line of the record in the CSV file, 0 if the row did not come from a CSV file
+     * @param record the record as it appears in the file, or the converted values
+     * @param error why the row failed
+     */
+    synchronized void reject(long lineNumber, String record, Exception error) {
+        if (held != null) {
+            held.add(new Held(lineNumber, record, error, null, null));
+            return;
+        }
+        if (count < maxStackTraces) {
+            System.err.println("Failed to insert row" + at(lineNumber) + ": " + record);
+            error.printStackTrace();
+        } else if (count == maxStackTraces) {
+            System.err.println("More rows of " + table + " failed. Only the first " + maxStackTraces
+                    + " are printed, the others are written to " + file + ".");
+        }
+        add(lineNumber, record, error.getClass().getSimpleName(), String.valueOf(error.getMessage()));
+    }
+
+    /**
+     * records a row that was refused before it was converted, no stack trace is printed
+     *
+     * @param lineNumber the line of the record in the CSV file
+     * @param record the record as it appears in the file
+     * @param error a short name of the problem
+     * @param message what is wrong with the record
+     */
+    synchronized void reject(long lineNumber, String record, String error, String message) {
+        if (held != null) {
+            held.add(new Held(lineNumber, record, null, error, message));
+            return;
+        }
+        add(lineNumber, record, error, message);
+    }
+
+    /**
+     * keeps the rows rejected from now on until release() or discard() is called
+     */
+    synchronized void hold() {
+        held = new ArrayList<>();
+    }
+
+    /**
+     * records the rows rejected since hold()
+     */
+    synchronized void release() {
+        List<Held> rows = held;
+        held = null;
+        if (rows == null) {
+            return;
+        }
+        for (Held row : rows) {
+            if (row.exception() != null) {
+                reject(row.lineNumber(), row.record(), row.exception());
+            } else {
+                reject(row.lineNumber(), row.record(), row.error(), row.message());
+            }
+        }
+    }
+
+    /**
+     * forgets the rows rejected since hold(), their records are read again
+     */
+    synchronized void discard() {
+        held = null;
+    }
+
+    /**
+     * @return the number of rejected rows
+     */
+    synchronized int getCount() {
+        return count;
+    }
+
+    /**
+     * @return the reject CSV file, it only exists if a row was rejected
+     */
+    Path getFile() {
+        return file;
+    }
+
+    /**
+     * closes the reject file and prints the number of rejected rows per cause, most common first
+     */
+    @Override
+    public synchronized void close() {
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                System.err.println("Error writing the reject file " + file + ": " + e.getMessage());
+            }
+            writer = null;
+        }
+        if (count == 0) {
+            return;
+        }
+
+        System.out.println(count + " rows of " + table + " were rejected, see " + file + ":");
+        List<Map.Entry<String, Integer>> sorted = new ArrayList<>(causes.entrySet());
+        sorted.sort(Map.Entry.<String, Integer>comparingByValue().reversed());
+        for (Map.Entry<String, Integer> cause : sorted) {
+            System.out.printf("%8d  %s%n", cause.getValue(), cause.getKey());
+        }
+    }
+
+    private void add(long lineNumber, String record, String error, String message) {
+        count++;
+        causes.merge(error + ": " + generalize(message), 1, Integer::sum);
+
+        if (writeFailed) {
+            return;
+        }
+        try {
+            if (writer == null) {
+                open();
+            }
+            writer.write(lineNumber > 0 ? Long.toString(lineNumber) : "");
+            writer.write(',');
+            writer.write(quote(error));
+            writer.write(',');
+            writer.write(quote(message == null ? null : message.replace('\n', ' ').replace('\r', ' ')));
+            writer.write(',');
+            writer.write(quote(record));
+            writer.newLine();
+        } catch (IOException e) {
+            //the rows are still counted, only the file is incomplete
+            writeFailed = true;
+            System.err.println("Error writing the reject file " + file + ": " + e.getMessage());
+        }
+    }
+
+    private void open() throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        boolean header = !append || !Files.exists(file);
+        writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        if (header) {
+            writer.write(HEADER);
+            writer.newLine();
+        }
+    }
+
+    private String at(long lineNumber) {
+        return lineNumber > 0 ? " at line " + lineNumber + " of " + table : " of " + table;
+    }
+
+    /**
+     * removes the values from an error message, so messages of the same cause count together.
+     * "Duplicate entry '12' for key 'PRIMARY'" becomes "Duplicate entry '?' for key '?'"
+     */
+    static String generalize(String message) {
+        if (message == null) {
+            return "";
+        }
+        StringBuilder cause = new StringBuilder(Math.min(message.length(), 100));
+        boolean quoted = false;
+        for (int i = 0; i < message.length() && cause.length() < 100; i++) {
+            char c = message.charAt(i);
+            if (c == '\'' || c == '"' || c == '`') {
+                if (!quoted) {
+                    cause.append(c).append('?');
+                }
+                quoted = !quoted;
+                if (!quoted) {
+                    cause.append(c);
+                }
+            } else if (quoted) {
+                continue;
+            } else if (Character.isDigit(c)) {
+                if (cause.length() == 0 || cause.charAt(cause.length() - 1) != '#') {
+                    cause.append('#');
+                }
+            } else if (c == '\n' || c == '\r') {
+                break;
+            } else {
+                cause.append(c);
+            }
+        }
+        return cause.toString();
+    }
+
+    /**
+     * a row rejected while the rejects are held, with either the exception or the error and message
+     */
+    private record Held(long lineNumber, String record, Exception exception, String error, String message) {
+    }
+
+    /**
+     * quotes a field for the reject CSV file
+     */
+    private static String quote(String value) {
+        if (value == null) {
+            return "";
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
@@ -0,0 +1,100 @@
+package database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * remembers which version of each CNF CSV file was imported, in the cnf_import_state table.
+ *
+ * the whole table is read with one query the first time it is needed and kept in memory,
+ * so checking all twelve files on startup costs a single round trip.
+ * databases created before the table existed get it created on first use.
+ */
+class ImportState {
+
+    private static final String CREATE_SQL = "CREATE TABLE IF NOT EXISTS cnf_import_state ("
+            + "table_name VARCHAR(64) PRIMARY KEY, "
+            + "source_file VARCHAR(255), "
+            + "content_hash CHAR(64) NOT NULL, "
+            + "row_count INT NOT NULL, "
+            + "imported_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP)";
+
+    private static final String SAVE_SQL = "INSERT INTO cnf_import_state "
+            + "(table_name, source_file, content_hash, row_count, imported_at) "
+            + "VALUES (?, ?, ?, ?, CURRENT_TIMESTAMP) "
+            + "ON DUPLICATE KEY UPDATE source_file = VALUES(source_file), content_hash = VALUES(content_hash), "
+            + "row_count = VALUES(row_count), imported_at = CURRENT_TIMESTAMP";
+
+    //content hash per table name, null until the state table has been read
+    private static Map<String, String> hashes;
+
+    private ImportState() {
+    }
+
+    /**
+     * @param table the table name
+     * @return the content hash of the file last imported into the table, null if it was never imported
+     * @throws SQLException if the state table cannot be read or created
+     */
+    static synchronized String getHash(String table) throws SQLException {
+        if (hashes == null) {
+            hashes = loadHashes();
+        }
+        return hashes.get(table);
+    }
+
+    /**
+     * records a finished import, on the connection of the import so it is part of its transaction
+     *
+     * @param conn the connection of the import
+     * @param table the table name
+     * @param sourceFile the path of the imported CSV file
+     * @param contentHash the content hash of the file
+     * @param rowCount the number of rows of the table that come from the file
+     * @throws SQLException if the state cannot be written
+     */
+    static void save(Connection conn, String table, String sourceFile, String contentHash, int rowCount)
+            throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(SAVE_SQL)) {
+            stmt.setString(1, table);
+            stmt.setString(2, sourceFile);
+            stmt.setString(3, contentHash);
+            stmt.setInt(4, rowCount);
+            stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * updates the cached hash once the transaction that saved it is committed
+     *
+     * @param table the table name
+     * @param contentHash the content hash of the imported file
+     */
+    static synchronized void remember(String table, String contentHash) {
+        if (hashes != null) {
+            hashes.put(table, contentHash);
+        }
+    }
+
+    private static Map<String, String> loadHashes() throws SQLException {
+        Map<String, String> result = new HashMap<>();
+        try (Connection conn = DBConnection.getInstance().openConnection();
+             Statement stmt = conn.createStatement()) {
+
+            try (ResultSet rs = stmt.executeQuery("SELECT table_name, content_hash FROM cnf_import_state")) {
+                while (rs.next()) {
+                    result.put(rs.getString(1), rs.getString(2));
+                }
+            } catch (SQLException e) {
+                //database created before the state table existed, nothing was recorded yet
+                stmt.executeUpdate(CREATE_SQL);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,107 @@
+package database;
+
+import java.util.Arrays;
+
+/**
+ * a set of int values without boxing, used to hold the ids of a parent table.
+ *
+ * open addressing with linear probing in a power of two table that is kept at most half full,
+ * so a lookup is a multiply, a shift and usually one or two array reads.
+ */
+class IntHashSet {
+
+    //marks a free slot, the value itself is tracked by containsEmptyValue
+    private static final int EMPTY = Integer.MIN_VALUE;
+
+    private int[] slots;
+    private int size;
+    private boolean containsEmptyValue;
+
+    /**
+     * @param expectedSize the number of values the set should hold without growing
+     */
+    IntHashSet(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize) * 2 - 1) << 1;
+        slots = new int[capacity];
+        Arrays.fill(slots, EMPTY);
+    }
+
+    /**
+     * @param value the value to add
+     * @return true if the set did not contain the value yet
+     */
+    boolean add(int value) {
+        if (value == EMPTY) {
+            boolean added = !containsEmptyValue;
+            containsEmptyValue = true;
+            if (added) {
+                size++;
+            }
+            return added;
+        }
+
+        if ((size + 1) * 2 > slots.length) {
+            grow();
+        }
+        int mask = slots.length - 1;
+        for (int i = slot(value, mask); ; i = (i + 1) & mask) {
+            if (slots[i] == value) {
+                return false;
+            }
+            if (slots[i] == EMPTY) {
+                slots[i] = value;
+                size++;
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @param value the value to look for
+     * @return true if the set contains the value
+     */
+    boolean contains(int value) {
+        if (value == EMPTY) {
+            return containsEmptyValue;
+        }
+        int mask = slots.length - 1;
+        for (int i = slot(value, mask); ; i = (i + 1) & mask) {
+            if (slots[i] == value) {
+                return true;
+            }
+            if (slots[i] == EMPTY) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * @return the number of values in the set
+     */
+    int size() {
+        return size;
+    }
+
+    private void grow() {
+        int[] old = slots;
+        slots = new int[old.length * 2];
+        Arrays.fill(slots, EMPTY);
+        int mask = slots.length - 1;
+        for (int value : old) {
+            if (value != EMPTY) {
+                int i = slot(value, mask);
+                while (slots[i] != EMPTY) {
+                    i = (i + 1) & mask;
+                }
+                slots[i] = value;
+            }
+        }
+    }
+
+    /**
+     * spreads the bits of ids that are close together over the whole table (Fibonacci hashing)
+     */
+    private static int slot(int value, int mask) {
+        return (value * 0x9E3779B9 >>> 16 ^ value * 0x9E3779B9) & mask;
+    }
+}
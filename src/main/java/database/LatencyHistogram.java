@@ -0,0 +1,79 @@
+package database;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * counts durations in buckets that grow with the duration, so a percentile can be read with
+ * about 6% error whether a query takes 20 microseconds or 20 seconds.
+ *
+ * a duration falls in the power of two range of its microseconds, split into 16 equal buckets.
+ * recording is one array increment and can be done from several threads without a lock.
+ */
+class LatencyHistogram {
+
+    //16 buckets per power of two
+    private static final int SUB_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    //durations up to 2^40 microseconds, about 12 days, the last bucket takes anything longer
+    private static final int RANGES = 40;
+
+    private final AtomicLongArray counts = new AtomicLongArray(SUB_BUCKETS + (RANGES - SUB_BITS) * SUB_BUCKETS);
+
+    /**
+     * @param nanos the duration to count
+     */
+    void record(long nanos) {
+        counts.incrementAndGet(bucket(Math.max(0, nanos / 1000)));
+    }
+
+    /**
+     * @param percentile the percentile between 0 and 100, for example 95
+     * @return the duration in microseconds that the given share of the recorded durations did not exceed,
+     *         0 if nothing was recorded
+     */
+    long getPercentileMicros(double percentile) {
+        long total = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            total += counts.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return upperBound(i);
+            }
+        }
+        return upperBound(counts.length() - 1);
+    }
+
+    private static int bucket(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int range = 63 - Long.numberOfLeadingZeros(micros);
+        if (range >= RANGES) {
+            return SUB_BUCKETS + (RANGES - SUB_BITS) * SUB_BUCKETS - 1;
+        }
+        //the bits after the leading one choose the bucket inside the range
+        int sub = (int) (micros >>> (range - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS + (range - SUB_BITS) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * @return the largest duration in microseconds that falls in a bucket
+     */
+    private static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int range = (bucket - SUB_BUCKETS) / SUB_BUCKETS + SUB_BITS;
+        int sub = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+        long width = 1L << (range - SUB_BITS);
+        return (1L << range) + (sub + 1) * width - 1;
+    }
+}
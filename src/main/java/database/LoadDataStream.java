@@ -0,0 +1,258 @@
+package database;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+
+/**
+ * turns the records of a CNF CSV file into the tab separated input of a LOAD DATA LOCAL INFILE statement.
+ *
+ * each record is converted with the same CNFTable conversion the batched inserts use,
+ * so trimming, empty fields and invalid dates end up exactly the same in the table.
+ * records are converted one at a time while the driver reads the stream, nothing is copied to disk.
+ * the stream can end after a number of records, so a file can be loaded in several chunks.
+ * records that cannot be converted are recorded in the ImportRejects of the import.
+ * LOAD DATA LOCAL truncates text that is too long for its column instead of failing the row,
+ * so such records are rejected here like the batched inserts reject them (see setMaxLengths).
+ * rows the server skips are only counted, LOAD DATA does not say which ones they were.
+ */
+class LoadDataStream extends InputStream {
+
+    //written for NULL values, LOAD DATA reads \N as NULL
+    private static final String NULL = "\\N";
+
+    private final CNFCsvReader reader;
+    private final CNFTable table;
+    private final int maxRecords;
+    private final ImportRejects rejects;
+
+    //ids of the parent tables, null to leave the checks to the server
+    private ParentKeys parents;
+
+    //the most characters of every column, 0 if the column has no limit or is not text
+    private int[] maxLengths;
+
+    private byte[] buffer = new byte[0];
+    private int position = 0;
+    private boolean finished = false;
+
+    private int records = 0;
+    private int sent = 0;
+    private int failed = 0;
+
+    /**
+     * @param reader the CSV reader, positioned before the first record to load
+     * @param table the table the records are loaded into
+     * @param rejects where records that cannot be converted are recorded
+     */
+    LoadDataStream(CNFCsvReader reader, CNFTable table, ImportRejects rejects) {
+        this(reader, table, Integer.MAX_VALUE, rejects);
+    }
+
+    /**
+     * @param reader the CSV reader, positioned before the first record to load
+     * @param table the table the records are loaded into
+     * @param maxRecords the number of records after which the stream ends
+     * @param rejects where records that cannot be converted are recorded
+     */
+    LoadDataStream(CNFCsvReader reader, CNFTable table, int maxRecords, ImportRejects rejects) {
+        this.reader = reader;
+        this.table = table;
+        this.maxRecords = maxRecords;
+        this.rejects = rejects;
+    }
+
+    /**
+     * @param parents the ids of the parent tables, records that refer to a missing id are rejected
+     *                instead of being written to the stream
+     */
+    void setParentKeys(ParentKeys parents) {
+        this.parents = parents;
+    }
+
+    /**
+     * @param maxLengths the most characters of every column, 0 for no limit, see readMaxLengths.
+     *                   null writes all text as it is
+     */
+    void setMaxLengths(int[] maxLengths) {
+        this.maxLengths = maxLengths;
+    }
+
+    /**
+     * reads the lengths of the CHAR and VARCHAR columns of a table
+     *
+     * @param conn a connection to the database
+     * @param table the table
+     * @return the most characters of every column of the table, 0 for the other columns
+     * @throws SQLException if the columns cannot be read
+     */
+    static int[] readMaxLengths(Connection conn, CNFTable table) throws SQLException {
+        String[] columns = table.getColumns();
+        int[] lengths = new int[columns.length];
+        DatabaseMetaData meta = conn.getMetaData();
+        try (ResultSet rs = meta.getColumns(conn.getCatalog(), null, table.getTableName(), null)) {
+            while (rs.next()) {
+                int type = rs.getInt("DATA_TYPE");
+                if (type != Types.VARCHAR && type != Types.CHAR) {
+                    continue;
+                }
+                String name = rs.getString("COLUMN_NAME");
+                for (int i = 0; i < columns.length; i++) {
+                    if (columns[i].equalsIgnoreCase(name)) {
+                        lengths[i] = rs.getInt("COLUMN_SIZE");
+                    }
+                }
+            }
+        }
+        return lengths;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+        return buffer[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!fill()) {
+            return -1;
+        }
+        int n = Math.min(len, buffer.length - position);
+        System.arraycopy(buffer, position, b, off, n);
+        position += n;
+        return n;
+    }
+
+    /**
+     * @return the number of rows written to the stream
+     */
+    int getSent() {
+        return sent;
+    }
+
+    /**
+     * @return the number of CSV records that could not be converted
+     */
+    int getFailed() {
+        return failed;
+    }
+
+    /**
+     * makes sure the buffer holds unread bytes
+     *
+     * @return false once every CSV record has been converted
+     */
+    private boolean fill() {
+        while (position >= buffer.length) {
+            if (finished) {
+                return false;
+            }
+
+            if (records == maxRecords || !reader.next()) {
+                finished = true;
+                return false;
+            }
+            records++;
+
+            if (!table.isUsable(reader)) {
+                if (table.countsUnusableAsFailed()) {
+                    failed++;
+                    BatchInserter.rejectUnusable(rejects, table, reader);
+                }
+                continue;
+            }
+
+            try {
+                Object[] values = table.parse(reader);
+                int missing = parents != null ? parents.findMissing(values) : -1;
+                if (missing >= 0) {
+                    failed++;
+                    parents.reject(rejects, reader.getLineNumber(), values, missing);
+                    continue;
+                }
+                int tooLong = findTooLong(values);
+                if (tooLong >= 0) {
+                    failed++;
+                    rejects.reject(reader.getLineNumber(), reader.getRecordText(), "DataTooLong",
+                            "Data too long for column " + table.getColumns()[tooLong]
+                                    + " (at most " + maxLengths[tooLong] + " characters)");
+                    continue;
+                }
+                buffer = toRow(values).getBytes(StandardCharsets.UTF_8);
+                position = 0;
+                sent++;
+            } catch (Exception ex) {
+                failed++;
+                rejects.reject(reader.getLineNumber(), reader.getRecordText(), ex);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the index of the first text value longer than its column, -1 if all values fit
+     */
+    private int findTooLong(Object[] values) {
+        if (maxLengths == null) {
+            return -1;
+        }
+        for (int i = 0; i < values.length && i < maxLengths.length; i++) {
+            if (maxLengths[i] > 0 && values[i] instanceof String s
+                    && s.codePointCount(0, s.length()) > maxLengths[i]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the values of one row as a tab separated line
+     */
+    private static String toRow(Object[] values) {
+        StringBuilder row = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                row.append('\t');
+            }
+            Object value = values[i];
+            if (value == null) {
+                row.append(NULL);
+            } else if (value instanceof String s) {
+                appendEscaped(row, s);
+            } else if (value instanceof Date d) {
+                row.append(d.toString());
+            } else {
+                row.append(value);
+            }
+        }
+        return row.append('\n').toString();
+    }
+
+    /**
+     * escapes the characters LOAD DATA treats as separators
+     */
+    private static void appendEscaped(StringBuilder row, String s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '\\' -> row.append("\\\\");
+                case '\t' -> row.append("\\t");
+                case '\n' -> row.append("\\n");
+                case '\r' -> row.append("\\r");
+                default -> row.append(c);
+            }
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package database;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * all nutrients of the nutrient table, read once and looked up by any of their names.
+ *
+ * the views show nutrients by a short display name such as "Protein", the CNF names them
+ * "PROTEIN" and gives them a code and an INFOODS tagname such as "PROCNT". the catalog turns
+ * any of these into the nutrient id, so the rest of the application filters and indexes by
+ * id instead of comparing names. the six nutrients the views offer first keep their short
+ * display names, every other nutrient is shown by its CNF name in title case.
+ *
+ * like NutrientMatrix, it is loaded on first use and again after an import (see invalidate).
+ */
+public final class NutrientCatalog {
+
+    /**
+     * a nutrient of the nutrient table
+     *
+     * @param id the nutrient id
+     * @param code the CNF nutrient code
+     * @param symbol the CNF symbol, for example "PROT"
+     * @param unit the unit of its amounts, for example "g"
+     * @param name the CNF name, for example "PROTEIN"
+     * @param tagname the INFOODS tagname, for example "PROCNT"
+     * @param displayName the name shown to the user, for example "Protein"
+     */
+    public record Nutrient(int id, String code, String symbol, String unit, String name, String tagname,
+                           String displayName) {
+    }
+
+    //tagnames and display names of the nutrients the views offer first, in this order
+    private static final String[][] COMMON = {
+            {"ENERC_KCAL", "Energy"},
+            {"PROCNT", "Protein"},
+            {"FAT", "Fat"},
+            {"CHOCDF", "Carbohydrate"},
+            {"FIBTG", "Fiber"},
+            {"SUGAR", "Sugar"}
+    };
+
+    private static NutrientCatalog instance;
+
+    //by id
+    private final List<Nutrient> nutrients;
+    //common ones first, then by id
+    private final List<Nutrient> choices;
+    //lower case display name, name, tagname, code and symbol
+    private final Map<String, Nutrient> byKey = new HashMap<>();
+    private final Map<Integer, Nutrient> byId = new HashMap<>();
+
+    private NutrientCatalog(List<Nutrient> nutrients) {
+        this.nutrients = Collections.unmodifiableList(nutrients);
+        for (Nutrient nutrient : nutrients) {
+            byId.put(nutrient.id(), nutrient);
+        }
+
+        //a display name wins over a CNF name, a CNF name over a tagname and so on
+        for (Nutrient nutrient : nutrients) {
+            addKey(nutrient.displayName(), nutrient);
+        }
+        for (Nutrient nutrient : nutrients) {
+            addKey(nutrient.name(), nutrient);
+        }
+        for (Nutrient nutrient : nutrients) {
+            addKey(nutrient.tagname(), nutrient);
+        }
+        for (Nutrient nutrient : nutrients) {
+            addKey(nutrient.code(), nutrient);
+            addKey(nutrient.symbol(), nutrient);
+        }
+
+        List<Nutrient> ordered = new ArrayList<>();
+        for (String[] common : COMMON) {
+            Nutrient nutrient = find(common[1]);
+            if (nutrient != null) {
+                ordered.add(nutrient);
+            }
+        }
+        for (Nutrient nutrient : nutrients) {
+            if (!ordered.contains(nutrient)) {
+                ordered.add(nutrient);
+            }
+        }
+        choices = Collections.unmodifiableList(ordered);
+    }
+
+    private void addKey(String key, Nutrient nutrient) {
+        if (key != null && !key.isBlank()) {
+            byKey.putIfAbsent(key.trim().toLowerCase(Locale.ROOT), nutrient);
+        }
+    }
+
+    /**
+     * returns the catalog, reading the nutrient table the first time
+     *
+     * @return all nutrients
+     * @throws SQLException if the nutrient table cannot be read
+     */
+    public static synchronized NutrientCatalog getInstance() throws SQLException {
+        if (instance == null) {
+            try (Connection conn = DBConnection.getInstance().getConnection()) {
+                instance = load(conn);
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * drops the loaded catalog, the next getInstance() reads the nutrient table again
+     */
+    public static synchronized void invalidate() {
+        instance = null;
+    }
+
+    /**
+     * reads the nutrient table
+     *
+     * @param conn a connection to the database
+     * @return the catalog of its nutrients
+     * @throws SQLException if the table cannot be read
+     */
+    static NutrientCatalog load(Connection conn) throws SQLException {
+        Map<String, String> commonNames = new HashMap<>();
+        for (String[] common : COMMON) {
+            commonNames.put(common[0], common[1]);
+        }
+
+        List<Nutrient> nutrients = new ArrayList<>();
+        Map<String, Integer> displayNames = new HashMap<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT id, code, symbol, unit, name, tagname FROM nutrient ORDER BY id")) {
+            while (rs.next()) {
+                String name = rs.getString("name");
+                String tagname = rs.getString("tagname");
+                String displayName = tagname != null ? commonNames.get(tagname.trim()) : null;
+                if (displayName == null) {
+                    displayName = titleCase(name != null ? name : tagname != null ? tagname : rs.getString("id"));
+                }
+                //two nutrients with the same name are told apart by their code
+                if (displayNames.merge(displayName.toLowerCase(Locale.ROOT), 1, Integer::sum) > 1) {
+                    displayName += " [" + rs.getString("code") + "]";
+                }
+                nutrients.add(new Nutrient(rs.getInt("id"), rs.getString("code"), rs.getString("symbol"),
+                        rs.getString("unit"), name, tagname, displayName));
+            }
+        }
+        return new NutrientCatalog(nutrients);
+    }
+
+    /**
+     * returns the display names of all nutrients, the common ones first.
+     * if the nutrient table cannot be read, only the common ones are returned.
+     *
+     * @return the names to offer in a nutrient combo box
+     */
+    public static String[] getChoices() {
+        try {
+            return getInstance().choices.stream().map(Nutrient::displayName).toArray(String[]::new);
+        } catch (SQLException e) {
+            System.err.println("Error loading nutrients.");
+            e.printStackTrace();
+            String[] names = new String[COMMON.length];
+            for (int i = 0; i < COMMON.length; i++) {
+                names[i] = COMMON[i][1];
+            }
+            return names;
+        }
+    }
+
+    /**
+     * @param key a display name, CNF name, tagname, code or symbol, in any case
+     * @return the nutrient, or null if no nutrient has that name
+     */
+    public Nutrient find(String key) {
+        return key != null ? byKey.get(key.trim().toLowerCase(Locale.ROOT)) : null;
+    }
+
+    /**
+     * @param key a display name, CNF name, tagname, code or symbol, in any case
+     * @return the nutrient id, or -1 if no nutrient has that name
+     */
+    public int getId(String key) {
+        Nutrient nutrient = find(key);
+        return nutrient != null ? nutrient.id() : -1;
+    }
+
+    /**
+     * @param id a nutrient id
+     * @return the nutrient, or null if there is no nutrient with that id
+     */
+    public Nutrient get(int id) {
+        return byId.get(id);
+    }
+
+    /**
+     * @return all nutrients, ordered by id
+     */
+    public List<Nutrient> getNutrients() {
+        return nutrients;
+    }
+
+    private static String titleCase(String name) {
+        StringBuilder title = new StringBuilder(name.length());
+        boolean start = true;
+        for (char c : name.trim().toCharArray()) {
+            title.append(start ? Character.toUpperCase(c) : Character.toLowerCase(c));
+            start = !Character.isLetterOrDigit(c) && c != '\'';
+        }
+        return title.toString();
+    }
+}
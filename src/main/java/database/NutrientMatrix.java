@@ -0,0 +1,500 @@
+package database;
+
+import model.NutrientVector;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * the nutrient amounts of every food, read from a memory mapped file instead of the database.
+ *
+ * nutrient_amount only changes when a CNF release is imported, so the application reads it from
+ * here instead of joining it with nutrient for every food it shows. the amounts are one dense
+ * array of doubles, a row of nutrientCount amounts per food, with a bitmap that tells which amounts
+ * exist. food and nutrient ids are turned into row and column indexes with arrays of ints, so a
+ * lookup is two reads and a bit test. the full CNF (about 5700 foods and 150 nutrients) takes
+ * about 9 MB.
+ *
+ * the arrays are not kept on the heap but in a file that is mapped read only, like a CNFSnapshot.
+ * the first process that needs the file builds it from the database, every other process on the
+ * host maps the same file and reads the pages already in the OS page cache instead of the tables.
+ * the file is stamped with the import state of the tables it was built from and rebuilt after one
+ * of them was imported again. a new file replaces the old one with an atomic move, so a process
+ * that still maps the old file keeps reading it undisturbed.
+ *
+ * file layout (big endian):
+ * <pre>
+ * int magic "NUTM", int version, 32 byte stamp,
+ * int food count, int nutrient count, int largest food id + 1, int largest nutrient id + 1
+ * then, each starting at a multiple of 8 bytes:
+ *     food ids, food group ids, nutrient ids (one int each, ordered by id)
+ *     food index by id, nutrient index by id (one int each, -1 for ids that do not exist)
+ *     presence bitmap (one bit per amount, in longs)
+ *     amounts (one double each, at food * nutrient count + nutrient)
+ * </pre>
+ *
+ * its columns are the nutrients of the NutrientCatalog, which turns nutrient names into the ids
+ * used here. the matrix also holds the food group of every food, which the swap search needs.
+ * a mapped file is never changed, so it can be read from any thread.
+ */
+public final class NutrientMatrix {
+
+    /** first int of every matrix file, "NUTM" */
+    static final int MAGIC = 0x4E55544D;
+
+    /** format version, files of other versions are rebuilt */
+    static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 56;
+
+    //the tables the matrix is built from, their import state is the stamp of the file
+    private static final String[] SOURCE_TABLES = {"food_name", "nutrient", "nutrient_amount"};
+
+    private static NutrientMatrix instance;
+
+    private final ByteBuffer data;
+    private final String file;
+
+    private final int foodCount;
+    private final int nutrientCount;
+    private final int foodIdRange;
+    private final int nutrientIdRange;
+
+    //byte offsets of the arrays in the file
+    private final int foodIdsOffset;
+    private final int foodGroupIdsOffset;
+    private final int nutrientIdsOffset;
+    private final int foodIndexOffset;
+    private final int nutrientIndexOffset;
+    private final int presentOffset;
+    private final int amountsOffset;
+
+    //the CNF names of the nutrients, by index
+    private final String[] nutrientNames;
+
+    private NutrientMatrix(ByteBuffer data, String file, String[] nutrientNames) {
+        this.data = data;
+        this.file = file;
+        this.nutrientNames = nutrientNames;
+
+        foodCount = data.getInt(40);
+        nutrientCount = data.getInt(44);
+        foodIdRange = data.getInt(48);
+        nutrientIdRange = data.getInt(52);
+
+        foodIdsOffset = HEADER_SIZE;
+        foodGroupIdsOffset = align(foodIdsOffset + 4L * foodCount);
+        nutrientIdsOffset = align(foodGroupIdsOffset + 4L * foodCount);
+        foodIndexOffset = align(nutrientIdsOffset + 4L * nutrientCount);
+        nutrientIndexOffset = align(foodIndexOffset + 4L * foodIdRange);
+        presentOffset = align(nutrientIndexOffset + 4L * nutrientIdRange);
+        amountsOffset = align(presentOffset + 8 * words(foodCount, nutrientCount));
+    }
+
+    /**
+     * returns the matrix, mapping its file and building the file first if it is missing or out of date.
+     * the file is target/nutrient.matrix unless -Dnutrisci.matrix.path names another one.
+     *
+     * @return the nutrient amounts of every food
+     * @throws SQLException if the tables cannot be read or the file cannot be written
+     */
+    public static synchronized NutrientMatrix getInstance() throws SQLException {
+        if (instance == null) {
+            NutrientCatalog catalog = NutrientCatalog.getInstance();
+            String[] names = catalog.getNutrients().stream().map(NutrientCatalog.Nutrient::name).toArray(String[]::new);
+            Path file = Path.of(System.getProperty("nutrisci.matrix.path", "target/nutrient.matrix"));
+            byte[] stamp = stamp();
+
+            try {
+                ByteBuffer data = map(file, stamp, names.length);
+                if (data == null) {
+                    long start = System.nanoTime();
+                    try (Connection conn = DBConnection.getInstance().getConnection()) {
+                        file = build(conn, catalog, file, stamp);
+                    }
+                    data = map(file, stamp, names.length);
+                    if (data == null) {
+                        throw new IOException("Built nutrient matrix cannot be read: " + file);
+                    }
+                    System.out.printf("Built nutrient matrix %s in %d ms.%n", file, (System.nanoTime() - start) / 1_000_000);
+                }
+                instance = new NutrientMatrix(data, file.toString(), names);
+            } catch (IOException e) {
+                throw new SQLException("Could not map the nutrient matrix " + file, e);
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * drops the mapped matrix and nutrient catalog, the next getInstance() checks the file again.
+     * called after an import wrote to food_name, nutrient or nutrient_amount, which changes the
+     * stamp the file must have, so the file is rebuilt.
+     */
+    public static synchronized void invalidate() {
+        instance = null;
+        NutrientCatalog.invalidate();
+    }
+
+    /**
+     * @return the SHA-256 of the content hashes the source tables were last imported from
+     */
+    private static byte[] stamp() throws SQLException {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String table : SOURCE_TABLES) {
+                digest.update((table + "=" + ImportState.getHash(table) + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+            return digest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * maps a matrix file read only
+     *
+     * @return the mapped file, or null if it does not exist, is not a matrix, has another version or
+     *         stamp, or does not have a column for every nutrient of the catalog
+     */
+    private static ByteBuffer map(Path file, byte[] stamp, int nutrientCount) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        ByteBuffer data;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE) {
+                return null;
+            }
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        byte[] fileStamp = new byte[stamp.length];
+        data.get(8, fileStamp);
+        if (data.getInt(0) != MAGIC || data.getInt(4) != VERSION || !Arrays.equals(fileStamp, stamp)
+                || data.getInt(44) != nutrientCount) {
+            return null;
+        }
+        return size(data.getInt(40), data.getInt(44), data.getInt(48), data.getInt(52)) == data.limit() ? data : null;
+    }
+
+    /**
+     * writes the matrix of the tables to a new file and moves it over the old one
+     *
+     * @param conn a connection to the database
+     * @param catalog the nutrients, one column each
+     * @param file where the file is wanted
+     * @param stamp the stamp to write into the file
+     * @return the path of the new file, normally file
+     * @throws SQLException if a table cannot be read
+     * @throws IOException if the file cannot be written
+     */
+    static Path build(Connection conn, NutrientCatalog catalog, Path file, byte[] stamp) throws SQLException, IOException {
+        List<int[]> foods = new ArrayList<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT id, food_group_id FROM food_name ORDER BY id")) {
+            while (rs.next()) {
+                foods.add(new int[]{rs.getInt(1), rs.getInt(2)});
+            }
+        }
+        List<NutrientCatalog.Nutrient> nutrients = catalog.getNutrients();
+
+        int foodCount = foods.size();
+        int nutrientCount = nutrients.size();
+        int foodIdRange = foods.isEmpty() ? 0 : Math.max(0, foods.get(foodCount - 1)[0] + 1);
+        int nutrientIdRange = nutrients.isEmpty() ? 0 : Math.max(0, nutrients.get(nutrientCount - 1).id() + 1);
+        long size = size(foodCount, nutrientCount, foodIdRange, nutrientIdRange);
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Nutrient matrix of " + foodCount + " foods is too large to be mapped");
+        }
+
+        Path directory = file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        //every process writes its own file, so two processes building at the same time do not mix their rows
+        Path temp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                data.putInt(0, MAGIC);
+                data.putInt(4, VERSION);
+                data.put(8, stamp);
+                data.putInt(40, foodCount);
+                data.putInt(44, nutrientCount);
+                data.putInt(48, foodIdRange);
+                data.putInt(52, nutrientIdRange);
+
+                NutrientMatrix matrix = new NutrientMatrix(data, temp.toString(), null);
+                matrix.writeIds(foods, nutrients);
+                int rows = matrix.writeAmounts(conn);
+                data.force();
+                System.out.printf("Wrote %d nutrient amounts of %d foods and %d nutrients.%n", rows, foodCount, nutrientCount);
+            }
+
+            try {
+                //readable by the processes of other users, the temporary file is only readable by its owner
+                Files.setPosixFilePermissions(temp, PosixFilePermissions.fromString("rw-r--r--"));
+            } catch (UnsupportedOperationException e) {
+                //not a POSIX file system, the file keeps the permissions of its directory
+            }
+
+            try {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                return file;
+            } catch (IOException e) {
+                //some systems do not replace a file another process has mapped, this process uses its own
+                System.err.println("Could not replace " + file + ", using " + temp + " instead.");
+                temp.toFile().deleteOnExit();
+                return temp;
+            }
+        } catch (SQLException | IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+    }
+
+    /**
+     * writes the ids, food groups and index arrays of a new file
+     */
+    private void writeIds(List<int[]> foods, List<NutrientCatalog.Nutrient> nutrients) {
+        for (int id = 0; id < foodIdRange; id++) {
+            data.putInt(foodIndexOffset + 4 * id, -1);
+        }
+        for (int id = 0; id < nutrientIdRange; id++) {
+            data.putInt(nutrientIndexOffset + 4 * id, -1);
+        }
+        for (int food = 0; food < foodCount; food++) {
+            int id = foods.get(food)[0];
+            data.putInt(foodIdsOffset + 4 * food, id);
+            data.putInt(foodGroupIdsOffset + 4 * food, foods.get(food)[1]);
+            if (id >= 0) {
+                data.putInt(foodIndexOffset + 4 * id, food);
+            }
+        }
+        for (int nutrient = 0; nutrient < nutrientCount; nutrient++) {
+            int id = nutrients.get(nutrient).id();
+            data.putInt(nutrientIdsOffset + 4 * nutrient, id);
+            if (id >= 0) {
+                data.putInt(nutrientIndexOffset + 4 * id, nutrient);
+            }
+        }
+    }
+
+    /**
+     * writes all of nutrient_amount into a new file
+     *
+     * @return the number of amounts written
+     */
+    private int writeAmounts(Connection conn) throws SQLException {
+        int rows = 0;
+        try (Statement stmt = conn.createStatement()) {
+            stmt.setFetchSize(10_000);
+            try (ResultSet rs = stmt.executeQuery("SELECT food_id, nutrient_id, value FROM nutrient_amount")) {
+                while (rs.next()) {
+                    double value = rs.getDouble(3);
+                    if (rs.wasNull()) {
+                        continue;
+                    }
+                    int food = getFoodIndex(rs.getInt(1));
+                    int nutrient = getNutrientIndex(rs.getInt(2));
+                    if (food >= 0 && nutrient >= 0) {
+                        int cell = food * nutrientCount + nutrient;
+                        int word = presentOffset + 8 * (cell >>> 6);
+                        data.putDouble(amountsOffset + 8 * cell, value);
+                        data.putLong(word, data.getLong(word) | 1L << cell);
+                        rows++;
+                    }
+                }
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * @return the number of longs of the presence bitmap
+     */
+    private static long words(int foodCount, int nutrientCount) {
+        return ((long) foodCount * nutrientCount + 63) / 64;
+    }
+
+    private static int align(long offset) {
+        return (int) ((offset + 7) & ~7L);
+    }
+
+    /**
+     * @return the size in bytes of a file with the given counts
+     */
+    private static long size(int foodCount, int nutrientCount, int foodIdRange, int nutrientIdRange) {
+        long offset = HEADER_SIZE;
+        offset = align(offset + 4L * foodCount);
+        offset = align(offset + 4L * foodCount);
+        offset = align(offset + 4L * nutrientCount);
+        offset = align(offset + 4L * foodIdRange);
+        offset = align(offset + 4L * nutrientIdRange);
+        return offset + 8 * words(foodCount, nutrientCount) + 8L * foodCount * nutrientCount;
+    }
+
+    /**
+     * @return the path of the mapped file
+     */
+    public String getFile() {
+        return file;
+    }
+
+    /**
+     * @return the number of foods
+     */
+    public int getFoodCount() {
+        return foodCount;
+    }
+
+    /**
+     * @return the number of nutrients
+     */
+    public int getNutrientCount() {
+        return nutrientCount;
+    }
+
+    /**
+     * @param foodId the id of a food
+     * @return the index of the food, or -1 if there is no such food
+     */
+    public int getFoodIndex(int foodId) {
+        return foodId >= 0 && foodId < foodIdRange ? data.getInt(foodIndexOffset + 4 * foodId) : -1;
+    }
+
+    /**
+     * @param nutrientId the id of a nutrient
+     * @return the index of the nutrient, or -1 if there is no such nutrient
+     */
+    public int getNutrientIndex(int nutrientId) {
+        return nutrientId >= 0 && nutrientId < nutrientIdRange ? data.getInt(nutrientIndexOffset + 4 * nutrientId) : -1;
+    }
+
+    /**
+     * @param food the index of a food
+     * @return the id of the food
+     */
+    public int getFoodId(int food) {
+        return data.getInt(foodIdsOffset + 4 * food);
+    }
+
+    /**
+     * @param food the index of a food
+     * @return the id of the food group of the food
+     */
+    public int getFoodGroupId(int food) {
+        return data.getInt(foodGroupIdsOffset + 4 * food);
+    }
+
+    /**
+     * @param nutrient the index of a nutrient
+     * @return the id of the nutrient
+     */
+    public int getNutrientId(int nutrient) {
+        return data.getInt(nutrientIdsOffset + 4 * nutrient);
+    }
+
+    /**
+     * @param nutrient the index of a nutrient
+     * @return the CNF name of the nutrient
+     */
+    public String getNutrientName(int nutrient) {
+        return nutrientNames[nutrient];
+    }
+
+    /**
+     * @param food the index of a food
+     * @param nutrient the index of a nutrient
+     * @return true if the CNF has an amount of the nutrient for the food
+     */
+    public boolean has(int food, int nutrient) {
+        int cell = food * nutrientCount + nutrient;
+        return (data.getLong(presentOffset + 8 * (cell >>> 6)) & (1L << cell)) != 0;
+    }
+
+    /**
+     * @param food the index of a food
+     * @param nutrient the index of a nutrient
+     * @return the amount of the nutrient in 100 g of the food, 0 if the CNF has none (see has)
+     */
+    public double get(int food, int nutrient) {
+        return data.getDouble(amountsOffset + 8 * (food * nutrientCount + nutrient));
+    }
+
+    /**
+     * @param foodId the id of a food
+     * @param nutrientId the id of a nutrient, see NutrientCatalog
+     * @return the amount of the nutrient in 100 g of the food, or NaN if the food, the nutrient or the amount does not exist
+     */
+    public double getAmount(int foodId, int nutrientId) {
+        int food = getFoodIndex(foodId);
+        int nutrient = getNutrientIndex(nutrientId);
+        return food >= 0 && nutrient >= 0 && has(food, nutrient) ? get(food, nutrient) : Double.NaN;
+    }
+
+    /**
+     * @return a vector without amounts, with one entry per nutrient of the matrix
+     */
+    public NutrientVector newVector() {
+        return new NutrientVector(nutrientCount);
+    }
+
+    /**
+     * @param foodId the id of a food
+     * @return the amounts of all nutrients in 100 g of the food, without amounts if there is no such food
+     */
+    public NutrientVector getVector(int foodId) {
+        NutrientVector vector = newVector();
+        addTo(foodId, 1, vector);
+        return vector;
+    }
+
+    /**
+     * adds the amounts of all nutrients of a food to totals
+     *
+     * @param foodId the id of a food
+     * @param scale the factor the amounts are multiplied with, 1 for the amounts in 100 g
+     * @param totals the totals, from newVector()
+     */
+    public void addTo(int foodId, double scale, NutrientVector totals) {
+        int food = getFoodIndex(foodId);
+        if (food < 0) {
+            return;
+        }
+        int first = food * nutrientCount;
+        for (int nutrient = 0; nutrient < nutrientCount; nutrient++) {
+            int cell = first + nutrient;
+            if ((data.getLong(presentOffset + 8 * (cell >>> 6)) & (1L << cell)) != 0) {
+                totals.add(nutrient, data.getDouble(amountsOffset + 8 * cell) * scale);
+            }
+        }
+    }
+
+    /**
+     * converts a vector for the views that show nutrients by name
+     *
+     * @param vector a vector from newVector()
+     * @return the amounts by CNF nutrient name
+     */
+    public Map<String, Double> toMap(NutrientVector vector) {
+        return vector.toMap(this::getNutrientName);
+    }
+}
@@ -0,0 +1,273 @@
+package database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * fills an empty table from a large CSV file using several cores.
+ *
+ * the file is split into byte ranges that end on record boundaries (see CNFCsvReader.split),
+ * the ranges are parsed and validated on a ForkJoinPool and the converted rows are put into a
+ * bounded queue in batches. insert workers, each with its own connection, take the batches from
+ * the queue and insert them. when the queue is full the parsers wait, so memory stays bounded.
+ *
+ * row order does not matter because the CNF tables are keyed by their ids.
+ * every worker commits on its own connection, so a failed import can leave part of the rows in the table.
+ * the import state is not saved in that case, and the next start brings the table up to date
+ * with the primary key diff of CNFLoader.
+ */
+class ParallelCsvImport {
+
+    //put into the queue once per insert worker when all ranges are parsed
+    private static final List<BatchInserter.Row> END = new ArrayList<>();
+
+    //shared by all imports, so tables imported at the same time do not start more parsers than there are cores
+    private static final ForkJoinPool PARSE_POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    private final CNFTable table;
+    private final int parsers;
+    private final int insertWorkers;
+    private final int batchSize;
+    private final int commitInterval;
+    private final boolean bulkSession;
+    private final Consumer<ImportProgress> progressListener;
+    private final ImportRejects rejects;
+
+    //ids of the parent tables, checked by the parsers so rows with a missing parent are never queued
+    private ParentKeys parents;
+
+    private final BlockingQueue<List<BatchInserter.Row>> queue;
+    private final AtomicInteger inserted = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicLong rowsRead = new AtomicLong();
+    private final AtomicLong bytesRead = new AtomicLong();
+
+    //first error of a parser or insert worker, stops the other threads
+    private volatile Exception failure;
+
+    /**
+     * @param table the table to fill
+     * @param parsers the number of parser threads the file is split for, the parse pool itself is shared by all imports
+     * @param insertWorkers the number of connections that insert rows
+     * @param batchSize the number of rows per batch
+     * @param commitInterval the number of rows an insert worker commits at once
+     * @param bulkSession true to turn off foreign key and unique checks on the insert connections
+     * @param progressListener told after every parsed range, from the parser threads
+     * @param rejects where records that cannot be converted or inserted are recorded
+     */
+    ParallelCsvImport(CNFTable table, int parsers, int insertWorkers, int batchSize, int commitInterval,
+                      boolean bulkSession, Consumer<ImportProgress> progressListener, ImportRejects rejects) {
+        this.table = table;
+        this.parsers = Math.max(1, parsers);
+        this.insertWorkers = Math.max(1, insertWorkers);
+        this.batchSize = Math.max(1, batchSize);
+        this.commitInterval = Math.max(1, commitInterval);
+        this.bulkSession = bulkSession;
+        this.progressListener = progressListener;
+        this.rejects = rejects;
+        this.queue = new ArrayBlockingQueue<>(this.insertWorkers * 4);
+    }
+
+    /**
+     * @param parents the ids of the parent tables, null to leave the checks to the database
+     */
+    void setParentKeys(ParentKeys parents) {
+        this.parents = parents;
+    }
+
+    /**
+     * imports all records of a CSV file
+     *
+     * @param reader the CSV reader, positioned before the header
+     * @throws Exception the first error of a parser or insert worker
+     */
+    void run(CNFCsvReader reader) throws Exception {
+        reader.next(); // Skip header
+        bytesRead.set(reader.getPosition());
+        List<CNFCsvReader> ranges = reader.split(parsers * 4);
+        long size = reader.getSize();
+        long start = System.nanoTime();
+
+        ExecutorService inserters = Executors.newFixedThreadPool(insertWorkers);
+        try {
+            List<Future<?>> workers = new ArrayList<>();
+            for (int i = 0; i < insertWorkers; i++) {
+                workers.add(inserters.submit(() -> {
+                    insertLoop();
+                    return null;
+                }));
+            }
+
+            try {
+                PARSE_POOL.submit(() -> ranges.parallelStream().forEach(range -> {
+                    parseRange(range);
+                    report(bytesRead.addAndGet(range.getSize()), size, start);
+                })).get();
+            } catch (ExecutionException e) {
+                fail(e.getCause() instanceof Exception ex ? ex : e);
+            } finally {
+                for (int i = 0; i < insertWorkers; i++) {
+                    put(END);
+                }
+            }
+
+            for (Future<?> worker : workers) {
+                try {
+                    worker.get();
+                } catch (ExecutionException e) {
+                    fail(e.getCause() instanceof Exception ex ? ex : e);
+                }
+            }
+        } finally {
+            inserters.shutdownNow();
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * @return the number of inserted rows
+     */
+    int getInserted() {
+        return inserted.get();
+    }
+
+    /**
+     * @return the number of records that could not be converted or inserted
+     */
+    int getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * converts the records of one range and queues them in batches
+     */
+    private void parseRange(CNFCsvReader range) {
+        List<BatchInserter.Row> batch = new ArrayList<>(batchSize);
+        while (failure == null && range.next()) {
+            rowsRead.incrementAndGet();
+            if (!table.isUsable(range)) {
+                if (table.countsUnusableAsFailed()) {
+                    failed.incrementAndGet();
+                    BatchInserter.rejectUnusable(rejects, table, range);
+                }
+                continue;
+            }
+            Object[] values;
+            try {
+                values = table.parse(range);
+            } catch (Exception ex) {
+                failed.incrementAndGet();
+                rejects.reject(range.getLineNumber(), range.getRecordText(), ex);
+                continue;
+            }
+            int missing = parents != null ? parents.findMissing(values) : -1;
+            if (missing >= 0) {
+                failed.incrementAndGet();
+                parents.reject(rejects, range.getLineNumber(), values, missing);
+                continue;
+            }
+            batch.add(new BatchInserter.Row(values, range.getLineNumber()));
+            if (batch.size() == batchSize) {
+                put(batch);
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+        if (!batch.isEmpty()) {
+            put(batch);
+        }
+    }
+
+    /**
+     * inserts queued batches on its own connection until the end marker is taken
+     */
+    private void insertLoop() throws Exception {
+        boolean ended = false;
+        try (Connection conn = DBConnection.getInstance().openConnection();
+             PreparedStatement stmt = conn.prepareStatement(table.getInsertSql())) {
+
+            if (bulkSession) {
+                BulkLoadSession.disableChecks(conn);
+            }
+            conn.setAutoCommit(false);
+            BatchInserter inserter = new BatchInserter(stmt, table, batchSize, rejects);
+            int uncommitted = 0;
+
+            while (true) {
+                List<BatchInserter.Row> batch = queue.take();
+                if (batch == END) {
+                    ended = true;
+                    break;
+                }
+                for (BatchInserter.Row row : batch) {
+                    inserter.add(row.values(), row.lineNumber());
+                }
+                inserter.flush();
+                uncommitted += batch.size();
+                if (uncommitted >= commitInterval) {
+                    conn.commit();
+                    uncommitted = 0;
+                }
+            }
+
+            conn.commit();
+            inserted.addAndGet(inserter.getInserted());
+            failed.addAndGet(inserter.getFailed());
+        } catch (Exception e) {
+            fail(e);
+            //keep taking batches so the parsers are not blocked on a full queue
+            while (!ended && queue.take() != END) {
+                //discarded
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * queues a batch, gives up once another thread failed
+     */
+    private void put(List<BatchInserter.Row> batch) {
+        try {
+            while (!queue.offer(batch, 100, TimeUnit.MILLISECONDS)) {
+                if (failure != null && batch != END) {
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            fail(e);
+        }
+    }
+
+    private synchronized void report(long bytes, long size, long start) {
+        double seconds = Math.max((System.nanoTime() - start) / 1e9, 1e-9);
+        double bytesPerSecond = bytes / seconds;
+        Duration eta = bytesPerSecond > 0
+                ? Duration.ofMillis((long) ((size - bytes) / bytesPerSecond * 1000))
+                : Duration.ZERO;
+        progressListener.accept(new ImportProgress(table.getTableName(), rowsRead.get(), bytes, size,
+                rowsRead.get() / seconds, eta));
+    }
+
+    private synchronized void fail(Exception e) {
+        if (failure == null) {
+            failure = e;
+        }
+    }
+}
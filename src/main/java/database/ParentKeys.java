@@ -0,0 +1,108 @@
+package database;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * the ids of every table a CNF table refers to, held in memory while the table is imported.
+ *
+ * the foreign keys come from db.sql. before a child table such as nutrient_amount is imported,
+ * the ids of its parents (food_name, nutrient, nutrient_source) are read into IntHashSets, and
+ * every row is checked against them before it is sent. a row with a missing parent is rejected
+ * with the key it is missing, instead of costing a round trip and an exception in the database.
+ *
+ * the sets are only read after they are loaded, so the parsers of a parallel import can share them.
+ */
+class ParentKeys {
+
+    //per checked foreign key: the column index in the insert values, the parent ids and a description
+    private final int[] columns;
+    private final IntHashSet[] ids;
+    private final SchemaGraph.ForeignKey[] foreignKeys;
+
+    private ParentKeys(List<Integer> columns, List<IntHashSet> ids, List<SchemaGraph.ForeignKey> foreignKeys) {
+        this.columns = columns.stream().mapToInt(Integer::intValue).toArray();
+        this.ids = ids.toArray(new IntHashSet[0]);
+        this.foreignKeys = foreignKeys.toArray(new SchemaGraph.ForeignKey[0]);
+    }
+
+    /**
+     * reads the ids of every parent of a table
+     *
+     * @param conn the connection of the import
+     * @param table the table that is imported
+     * @param schema the schema of db.sql
+     * @return the parent ids, or null if the table has no foreign keys
+     * @throws SQLException if a parent table cannot be read
+     */
+    static ParentKeys load(Connection conn, CNFTable table, SchemaGraph schema) throws SQLException {
+        List<String> tableColumns = Arrays.asList(table.getColumns());
+        List<Integer> columns = new ArrayList<>();
+        List<IntHashSet> ids = new ArrayList<>();
+        List<SchemaGraph.ForeignKey> checked = new ArrayList<>();
+
+        for (SchemaGraph.ForeignKey fk : schema.getForeignKeys(table.getTableName())) {
+            int column = tableColumns.indexOf(fk.column());
+            if (column < 0) {
+                continue;
+            }
+            columns.add(column);
+            ids.add(loadIds(conn, fk));
+            checked.add(fk);
+        }
+        return checked.isEmpty() ? null : new ParentKeys(columns, ids, checked);
+    }
+
+    private static IntHashSet loadIds(Connection conn, SchemaGraph.ForeignKey fk) throws SQLException {
+        IntHashSet set = new IntHashSet(1024);
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT " + fk.parentColumn() + " FROM " + fk.parentTable())) {
+            while (rs.next()) {
+                set.add(rs.getInt(1));
+            }
+        }
+        return set;
+    }
+
+    /**
+     * @param values the converted values of a row
+     * @return the index of the first foreign key whose parent does not exist, or -1 if the row is fine.
+     *         NULL values do not need a parent.
+     */
+    int findMissing(Object[] values) {
+        for (int i = 0; i < columns.length; i++) {
+            Object value = values[columns[i]];
+            if (value != null && !ids[i].contains(((Number) value).intValue())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param values the converted values of a row
+     * @param missing the index returned by findMissing
+     * @return a message naming the missing key, for example "food_source_id 32 is not in food_source"
+     */
+    String describe(Object[] values, int missing) {
+        SchemaGraph.ForeignKey fk = foreignKeys[missing];
+        return fk.column() + " " + values[columns[missing]] + " is not in " + fk.parentTable();
+    }
+
+    /**
+     * records a row with a missing parent in the rejects of the import
+     *
+     * @param rejects the rejects of the import
+     * @param lineNumber the line of the record in the CSV file, 0 if unknown
+     * @param values the converted values of the row
+     * @param missing the index returned by findMissing
+     */
+    void reject(ImportRejects rejects, long lineNumber, Object[] values, int missing) {
+        rejects.reject(lineNumber, Arrays.toString(values), "MissingParent", describe(values, missing));
+    }
+}
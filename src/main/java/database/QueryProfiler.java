@@ -0,0 +1,415 @@
+package database;
+
+import java.awt.EventQueue;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * measures the SQL the application runs, per query shape.
+ *
+ * wrap() puts a proxy around a connection that times every statement it executes. the SQL is
+ * reduced to its shape (literals replaced by ?, whitespace collapsed), so the same query with
+ * other values is counted together. for every shape the profiler keeps the number of executions,
+ * a latency histogram, the rows read and the code that ran it.
+ *
+ * it also looks for N+1 patterns: the same shape executed at least nPlusOneThreshold times in one
+ * action, usually a query inside a loop that could be one query. an action is the Swing event a
+ * query runs in, or on other threads a run of queries without a pause of ACTION_GAP_MILLIS.
+ *
+ * DBConnection installs it when the application runs with -Dnutrisci.profile=true and prints
+ * the report on shutdown. report() and dump() give it at any time.
+ */
+public class QueryProfiler {
+
+    //on threads other than the Swing event thread, a pause this long ends an action
+    private static final long ACTION_GAP_MILLIS = 200;
+
+    //report columns are cut to this length
+    private static final int SHAPE_WIDTH = 70;
+
+    private final ConcurrentHashMap<String, QueryStats> stats = new ConcurrentHashMap<>();
+    //replaced by reset(), so the actions every thread is in are forgotten as well
+    private volatile ThreadLocal<Action> actions = new ThreadLocal<>();
+    private volatile int nPlusOneThreshold = 10;
+
+    /**
+     * the numbers of one query shape
+     */
+    private static class QueryStats {
+        private final String shape;
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder executions = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+        private final LongAdder rows = new LongAdder();
+        private final LongAdder nPlusOneActions = new LongAdder();
+        private final LongAccumulator maxPerAction = new LongAccumulator(Math::max, 0);
+
+        //"class.method:line" of the code that executed the query -> executions
+        private final ConcurrentHashMap<String, LongAdder> callers = new ConcurrentHashMap<>();
+
+        QueryStats(String shape) {
+            this.shape = shape;
+        }
+    }
+
+    /**
+     * the executions per shape of the action a thread is running
+     */
+    private static class Action {
+        private final Object event;
+        private long lastQuery;
+        private final Map<String, Integer> executions = new HashMap<>();
+        private final Set<String> reported = new HashSet<>();
+
+        Action(Object event) {
+            this.event = event;
+        }
+    }
+
+    /**
+     * @param executions how often one shape has to run in one action to be reported as N+1
+     */
+    public void setNPlusOneThreshold(int executions) {
+        nPlusOneThreshold = executions;
+    }
+
+    /**
+     * @param conn the connection to measure
+     * @return a connection that records every statement it executes and otherwise behaves like conn
+     */
+    public Connection wrap(Connection conn) {
+        return (Connection) Proxy.newProxyInstance(QueryProfiler.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, new ProfiledConnection(conn));
+    }
+
+    /**
+     * forgets everything recorded so far
+     */
+    public void reset() {
+        actions = new ThreadLocal<>();
+        stats.clear();
+    }
+
+    /**
+     * prints the report
+     */
+    public void dump() {
+        System.out.println(report());
+    }
+
+    /**
+     * @return a table of every query shape, the slowest in total first, with the N+1 patterns and
+     *         the code that ran each query
+     */
+    public String report() {
+        List<QueryStats> sorted = new ArrayList<>(stats.values());
+        sorted.sort((a, b) -> Long.compare(b.totalNanos.sum(), a.totalNanos.sum()));
+
+        StringBuilder report = new StringBuilder("SQL profile, " + sorted.size() + " query shapes:\n");
+        report.append(String.format("%8s %10s %9s %9s %9s %9s %9s  %s%n",
+                "calls", "total ms", "p50 us", "p95 us", "p99 us", "max us", "rows", "query"));
+        List<QueryStats> nPlusOne = new ArrayList<>();
+
+        for (QueryStats query : sorted) {
+            //a percentile is the top of its histogram bucket, which can be above the slowest execution
+            long max = TimeUnit.NANOSECONDS.toMicros(query.maxNanos.get());
+            report.append(String.format("%8d %10.1f %9d %9d %9d %9d %9d  %s%n",
+                    query.executions.sum(),
+                    query.totalNanos.sum() / 1e6,
+                    Math.min(query.latency.getPercentileMicros(50), max),
+                    Math.min(query.latency.getPercentileMicros(95), max),
+                    Math.min(query.latency.getPercentileMicros(99), max),
+                    max,
+                    query.rows.sum(),
+                    shorten(query.shape)));
+
+            List<Map.Entry<String, LongAdder>> callers = new ArrayList<>(query.callers.entrySet());
+            callers.sort((a, b) -> Long.compare(b.getValue().sum(), a.getValue().sum()));
+            for (Map.Entry<String, LongAdder> caller : callers.subList(0, Math.min(3, callers.size()))) {
+                report.append(String.format("%8d %60s  from %s%n", caller.getValue().sum(), "", caller.getKey()));
+            }
+            if (query.nPlusOneActions.sum() > 0) {
+                nPlusOne.add(query);
+            }
+        }
+
+        if (!nPlusOne.isEmpty()) {
+            report.append("Possible N+1 queries (run at least ").append(nPlusOneThreshold)
+                    .append(" times in one action):\n");
+            for (QueryStats query : nPlusOne) {
+                report.append(String.format("%8d actions, up to %d times each: %s%n",
+                        query.nPlusOneActions.sum(), query.maxPerAction.get(), shorten(query.shape)));
+            }
+        }
+        return report.toString();
+    }
+
+    /**
+     * reduces SQL to its shape: --, # and block comments removed, string and number literals replaced by ?,
+     * lists of values collapsed to one, whitespace collapsed and the trailing ; removed.
+     * "SELECT * FROM t WHERE id IN (1, 2,3)" becomes "SELECT * FROM t WHERE id IN (?)"
+     *
+     * @param sql the SQL text
+     * @return the shape of the SQL
+     */
+    static String normalize(String sql) {
+        StringBuilder shape = new StringBuilder(sql.length());
+        int n = sql.length();
+        int i = 0;
+        while (i < n) {
+            char c = sql.charAt(i);
+            if (c == '\'' || c == '"') {
+                //string literal, '' inside it is an escaped quote
+                i++;
+                while (i < n && !(sql.charAt(i) == c && (i + 1 == n || sql.charAt(i + 1) != c))) {
+                    i += sql.charAt(i) == c ? 2 : 1;
+                }
+                i++;
+                shape.append('?');
+            } else if (c == '#' || c == '-' && i + 1 < n && sql.charAt(i + 1) == '-') {
+                while (i < n && sql.charAt(i) != '\n') {
+                    i++;
+                }
+            } else if (c == '/' && i + 1 < n && sql.charAt(i + 1) == '*') {
+                int end = sql.indexOf("*/", i + 2);
+                i = end < 0 ? n : end + 2;
+                //a comment separates the words around it like a space
+                if (shape.length() > 0 && shape.charAt(shape.length() - 1) != ' ') {
+                    shape.append(' ');
+                }
+            } else if (Character.isWhitespace(c)) {
+                while (i < n && Character.isWhitespace(sql.charAt(i))) {
+                    i++;
+                }
+                //a removed comment may already have left a space
+                if (shape.length() == 0 || shape.charAt(shape.length() - 1) != ' ') {
+                    shape.append(' ');
+                }
+            } else if (Character.isDigit(c) && (shape.length() == 0 || !isNamePart(shape.charAt(shape.length() - 1)))) {
+                while (i < n && (Character.isDigit(sql.charAt(i)) || sql.charAt(i) == '.')) {
+                    i++;
+                }
+                shape.append('?');
+            } else {
+                shape.append(c);
+                i++;
+            }
+        }
+
+        String result = shape.toString().trim();
+        if (result.endsWith(";")) {
+            result = result.substring(0, result.length() - 1).trim();
+        }
+        return result.replaceAll("\\(\\s*\\?(\\s*,\\s*\\?)+\\s*\\)", "(?)");
+    }
+
+    private static boolean isNamePart(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '.';
+    }
+
+    private static String shorten(String shape) {
+        return shape.length() <= SHAPE_WIDTH ? shape : shape.substring(0, SHAPE_WIDTH - 3) + "...";
+    }
+
+    /**
+     * records one execution
+     *
+     * @param sql the SQL that was executed
+     * @param nanos how long the execution took
+     * @return the numbers of the shape, for the rows read afterwards
+     */
+    private QueryStats record(String sql, long nanos) {
+        QueryStats query = stats.computeIfAbsent(normalize(sql), QueryStats::new);
+        query.executions.increment();
+        query.totalNanos.add(nanos);
+        query.maxNanos.accumulate(nanos);
+        query.latency.record(nanos);
+        query.callers.computeIfAbsent(findCaller(), caller -> new LongAdder()).increment();
+        countInAction(query);
+        return query;
+    }
+
+    /**
+     * counts an execution in the current action of the thread and reports a shape once per action
+     * when it reaches the N+1 threshold
+     */
+    private void countInAction(QueryStats query) {
+        long now = System.currentTimeMillis();
+        Object event = EventQueue.isDispatchThread() ? EventQueue.getCurrentEvent() : null;
+        ThreadLocal<Action> current = actions;
+        Action action = current.get();
+        boolean sameAction = action != null && (event != null
+                ? action.event == event
+                : action.event == null && now - action.lastQuery < ACTION_GAP_MILLIS);
+        if (!sameAction) {
+            action = new Action(event);
+            current.set(action);
+        }
+        action.lastQuery = now;
+
+        int count = action.executions.merge(query.shape, 1, Integer::sum);
+        query.maxPerAction.accumulate(count);
+        if (count >= nPlusOneThreshold && action.reported.add(query.shape)) {
+            query.nPlusOneActions.increment();
+        }
+    }
+
+    /**
+     * @return the first method on the stack that is not part of the database layer or a library
+     */
+    private static String findCaller() {
+        return StackWalker.getInstance().walk(frames -> frames
+                .filter(frame -> !isInfrastructure(frame.getClassName()))
+                .findFirst()
+                .map(frame -> frame.getClassName() + "." + frame.getMethodName() + ":" + frame.getLineNumber())
+                .orElse("unknown"));
+    }
+
+    private static boolean isInfrastructure(String className) {
+        return className.startsWith("database.") || className.startsWith("java.") || className.startsWith("jdk.")
+                || className.startsWith("javax.") || className.startsWith("sun.") || className.startsWith("com.sun.")
+                || className.startsWith("com.mysql.") || className.startsWith("org.h2.");
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * wraps the statements a connection creates
+     */
+    private class ProfiledConnection implements InvocationHandler {
+        private final Connection connection;
+
+        ProfiledConnection(Connection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    break;
+            }
+            Object result = QueryProfiler.invoke(connection, method, args);
+
+            String sql = args != null && args.length > 0 && args[0] instanceof String text ? text : null;
+            if (result instanceof CallableStatement statement) {
+                return wrapStatement(statement, CallableStatement.class, (Connection) proxy, sql);
+            } else if (result instanceof PreparedStatement statement) {
+                return wrapStatement(statement, PreparedStatement.class, (Connection) proxy, sql);
+            } else if (result instanceof Statement statement) {
+                return wrapStatement(statement, Statement.class, (Connection) proxy, null);
+            }
+            return result;
+        }
+
+        private Object wrapStatement(Statement statement, Class<?> type, Connection proxy, String sql) {
+            return Proxy.newProxyInstance(QueryProfiler.class.getClassLoader(), new Class<?>[]{type},
+                    new ProfiledStatement(statement, proxy, sql));
+        }
+    }
+
+    /**
+     * times the executions of a statement and counts the rows of its results
+     */
+    private class ProfiledStatement implements InvocationHandler {
+        private final Statement statement;
+        private final Connection connection;
+
+        //the SQL of a prepared statement, null for a plain statement
+        private final String preparedSql;
+
+        //what the last execution recorded, the rows of its results are added to it
+        private QueryStats last;
+
+        ProfiledStatement(Statement statement, Connection connection, String preparedSql) {
+            this.statement = statement;
+            this.connection = connection;
+            this.preparedSql = preparedSql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            switch (name) {
+                case "getConnection":
+                    return connection;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    break;
+            }
+
+            if (!name.startsWith("execute")) {
+                Object result = QueryProfiler.invoke(statement, method, args);
+                return name.equals("getResultSet") && result instanceof ResultSet rs ? countRows(rs, proxy) : result;
+            }
+
+            String sql = args != null && args.length > 0 && args[0] instanceof String text ? text : preparedSql;
+            long start = System.nanoTime();
+            Object result;
+            try {
+                result = QueryProfiler.invoke(statement, method, args);
+            } finally {
+                if (sql != null) {
+                    last = record(sql, System.nanoTime() - start);
+                }
+            }
+            return result instanceof ResultSet rs ? countRows(rs, proxy) : result;
+        }
+
+        private ResultSet countRows(ResultSet rs, Object statementProxy) {
+            QueryStats query = last;
+            if (query == null) {
+                return rs;
+            }
+            return (ResultSet) Proxy.newProxyInstance(QueryProfiler.class.getClassLoader(),
+                    new Class<?>[]{ResultSet.class}, (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "getStatement":
+                                return statementProxy;
+                            case "equals":
+                                return proxy == args[0];
+                            case "hashCode":
+                                return System.identityHashCode(proxy);
+                            default:
+                                break;
+                        }
+                        Object result = QueryProfiler.invoke(rs, method, args);
+                        if (method.getName().equals("next") && Boolean.TRUE.equals(result)) {
+                            query.rows.increment();
+                        }
+                        return result;
+                    });
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package database;
+
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+
+/**
+ * the rows currently stored in a CNF table, reduced to their primary key and a 64 bit hash of all values.
+ *
+ * used to compare a new CSV release against the table: rows with an unknown key or a different hash
+ * have to be written, keys that no CSV record asked for have to be deleted.
+ * the primary key is one or two INT columns, packed into a long, and the keys are kept sorted
+ * in plain arrays so even nutrient_amount fits in a few megabytes.
+ */
+class RowFingerprints {
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final CNFTable table;
+    private long[] keys = new long[1024];
+    private long[] hashes = new long[1024];
+    private boolean[] seen;
+    private int size;
+    private int kept;
+
+    private RowFingerprints(CNFTable table) {
+        this.table = table;
+    }
+
+    /**
+     * reads the key and hash of every row of a table
+     *
+     * @param conn the connection of the import
+     * @param table the table to read
+     * @return the fingerprints, sorted by key
+     * @throws SQLException if the table cannot be read
+     */
+    static RowFingerprints load(Connection conn, CNFTable table) throws SQLException {
+        RowFingerprints rows = new RowFingerprints(table);
+        int columns = table.getColumns().length;
+        Object[] values = new Object[columns];
+
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(table.getSelectSql())) {
+            while (rs.next()) {
+                for (int i = 0; i < columns; i++) {
+                    values[i] = rs.getObject(i + 1);
+                }
+                rows.add(rows.key(values), fingerprint(values));
+            }
+        }
+
+        rows.sort();
+        rows.seen = new boolean[rows.size];
+        return rows;
+    }
+
+    /**
+     * marks the key of a CSV row as still present and compares its values with the stored row
+     *
+     * @param values the values parsed from the CSV record
+     * @return true if the row is new or one of its values changed
+     */
+    boolean markChanged(Object[] values) {
+        int index = Arrays.binarySearch(keys, 0, size, key(values));
+        if (index < 0) {
+            return true;
+        }
+        seen[index] = true;
+        return hashes[index] != fingerprint(values);
+    }
+
+    /**
+     * marks the key of a CSV record that could not be converted as still present, so a record
+     * that is rejected or left out this time does not delete the row it was imported into before.
+     * nothing is marked if the key fields themselves are not ids.
+     *
+     * @param row a reader positioned on the record
+     */
+    void markSeen(CNFCsvReader row) {
+        int keyColumns = table.getKeyColumns();
+        for (int i = 0; i < keyColumns; i++) {
+            if (!row.isInt(i)) {
+                return;
+            }
+        }
+        int index = Arrays.binarySearch(keys, 0, size, key(row.getInt(0), keyColumns == 1 ? 0 : row.getInt(1)));
+        if (index >= 0) {
+            seen[index] = true;
+        }
+    }
+
+    /**
+     * deletes the rows whose key was not in the CSV file.
+     * rows that cannot be deleted, for example because a logged meal still refers to the food,
+     * are kept and counted by getKept().
+     *
+     * @param stmt the delete statement of the table
+     * @param batchSize the number of deletes sent at once
+     * @return the number of deleted rows
+     * @throws SQLException if the statement cannot be used
+     */
+    int deleteUnseen(PreparedStatement stmt, int batchSize) throws SQLException {
+        int keyColumns = table.getKeyColumns();
+        int pending = 0;
+        int deleted = 0;
+
+        for (int i = 0; i < size; i++) {
+            if (seen[i]) {
+                continue;
+            }
+            if (keyColumns == 1) {
+                stmt.setInt(1, (int) keys[i]);
+            } else {
+                stmt.setInt(1, (int) (keys[i] >>> 32));
+                stmt.setInt(2, (int) keys[i]);
+            }
+            stmt.addBatch();
+            if (++pending == batchSize) {
+                deleted += executeDeletes(stmt, pending);
+                pending = 0;
+            }
+        }
+
+        if (pending > 0) {
+            deleted += executeDeletes(stmt, pending);
+        }
+        return deleted;
+    }
+
+    /**
+     * @return the number of rows missing from the CSV file that could not be deleted
+     */
+    int getKept() {
+        return kept;
+    }
+
+    private int executeDeletes(PreparedStatement stmt, int pending) throws SQLException {
+        int[] counts;
+        try {
+            counts = stmt.executeBatch();
+        } catch (BatchUpdateException ex) {
+            counts = ex.getUpdateCounts() != null ? ex.getUpdateCounts() : new int[0];
+        } finally {
+            stmt.clearBatch();
+        }
+
+        int deleted = 0;
+        for (int count : counts) {
+            if (count > 0 || count == Statement.SUCCESS_NO_INFO) {
+                deleted++;
+            }
+        }
+        kept += pending - deleted;
+        return deleted;
+    }
+
+    /**
+     * @return the primary key of a row, the key columns are non negative ids
+     */
+    private long key(Object[] values) {
+        return key(((Number) values[0]).intValue(),
+                table.getKeyColumns() == 1 ? 0 : ((Number) values[1]).intValue());
+    }
+
+    private long key(int first, int second) {
+        if (table.getKeyColumns() == 1) {
+            return first;
+        }
+        return (long) first << 32 | (second & 0xFFFFFFFFL);
+    }
+
+    /**
+     * hashes the values of a row with FNV-1a. numbers are hashed by value so an Integer read
+     * back from the database matches the Integer parsed from the CSV.
+     */
+    static long fingerprint(Object[] values) {
+        long hash = FNV_OFFSET;
+        for (Object value : values) {
+            String text;
+            if (value == null) {
+                text = "\0";
+            } else if (value instanceof Double || value instanceof Float) {
+                text = Double.toString(((Number) value).doubleValue());
+            } else if (value instanceof Number n) {
+                text = Long.toString(n.longValue());
+            } else {
+                text = value.toString();
+            }
+            for (int i = 0; i < text.length(); i++) {
+                hash = (hash ^ text.charAt(i)) * FNV_PRIME;
+            }
+            //separator, so ("ab", "c") and ("a", "bc") differ
+            hash = (hash ^ 0xFFFF) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    private void add(long key, long hash) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            hashes = Arrays.copyOf(hashes, size * 2);
+        }
+        keys[size] = key;
+        hashes[size] = hash;
+        size++;
+    }
+
+    /**
+     * the select is ordered by primary key, this only sorts if the database returned another order
+     */
+    private void sort() {
+        for (int i = 1; i < size; i++) {
+            if (keys[i - 1] > keys[i]) {
+                Integer[] order = new Integer[size];
+                for (int j = 0; j < size; j++) {
+                    order[j] = j;
+                }
+                Arrays.sort(order, (a, b) -> Long.compare(keys[a], keys[b]));
+                long[] sortedKeys = new long[size];
+                long[] sortedHashes = new long[size];
+                for (int j = 0; j < size; j++) {
+                    sortedKeys[j] = keys[order[j]];
+                    sortedHashes[j] = hashes[order[j]];
+                }
+                keys = sortedKeys;
+                hashes = sortedHashes;
+                return;
+            }
+        }
+    }
+}
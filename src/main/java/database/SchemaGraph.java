@@ -0,0 +1,109 @@
+package database;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * the foreign key graph of the database schema, read from the CREATE TABLE statements in db.sql.
+ * it is used to find out which tables have to be filled before another table can be imported.
+ */
+public class SchemaGraph {
+
+    private static final Pattern CREATE_TABLE = Pattern.compile(
+            "CREATE\\s+TABLE\\s+(?:IF\\s+NOT\\s+EXISTS\\s+)?(\\w+)\\s*\\((.*?)\\)\\s*;",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    private static final Pattern FOREIGN_KEY = Pattern.compile(
+            "FOREIGN\\s+KEY\\s*\\(\\s*(\\w+)\\s*\\)\\s*REFERENCES\\s+(\\w+)\\s*\\(\\s*(\\w+)\\s*\\)",
+            Pattern.CASE_INSENSITIVE);
+
+    /**
+     * a single column foreign key, for example nutrient_amount.food_id referencing food_name.id
+     *
+     * @param table the table that holds the foreign key
+     * @param column the foreign key column
+     * @param parentTable the referenced table
+     * @param parentColumn the referenced column
+     */
+    public record ForeignKey(String table, String column, String parentTable, String parentColumn) {
+    }
+
+    //foreign keys of every table, in the order the tables are declared
+    private final Map<String, List<ForeignKey>> foreignKeys = new LinkedHashMap<>();
+
+    /**
+     * reads the schema from a SQL file
+     *
+     * @param schemaFile the path to db.sql
+     * @return the foreign key graph of the schema
+     * @throws IOException if the file cannot be read
+     */
+    public static SchemaGraph load(String schemaFile) throws IOException {
+        return parse(Files.readString(Path.of(schemaFile), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * builds the foreign key graph from SQL text
+     *
+     * @param sql the CREATE TABLE statements
+     * @return the foreign key graph of the statements
+     */
+    public static SchemaGraph parse(String sql) {
+        SchemaGraph graph = new SchemaGraph();
+        String withoutComments = sql.replaceAll("--[^\\n]*", "");
+
+        Matcher table = CREATE_TABLE.matcher(withoutComments);
+        while (table.find()) {
+            String name = table.group(1).toLowerCase();
+            List<ForeignKey> keys = new ArrayList<>();
+
+            Matcher fk = FOREIGN_KEY.matcher(table.group(2));
+            while (fk.find()) {
+                keys.add(new ForeignKey(name, fk.group(1).toLowerCase(),
+                        fk.group(2).toLowerCase(), fk.group(3).toLowerCase()));
+            }
+            graph.foreignKeys.put(name, keys);
+        }
+        return graph;
+    }
+
+    /**
+     * @return the names of all tables declared in the schema
+     */
+    public Set<String> getTables() {
+        return Collections.unmodifiableSet(foreignKeys.keySet());
+    }
+
+    /**
+     * @param table the table name
+     * @return the foreign keys declared on the table, empty if it has none
+     */
+    public List<ForeignKey> getForeignKeys(String table) {
+        return foreignKeys.getOrDefault(table.toLowerCase(), List.of());
+    }
+
+    /**
+     * @param table the table name
+     * @return the tables the given table references, without the table itself
+     */
+    public Set<String> getParents(String table) {
+        Set<String> parents = new LinkedHashSet<>();
+        for (ForeignKey fk : getForeignKeys(table)) {
+            if (!fk.parentTable().equals(fk.table())) {
+                parents.add(fk.parentTable());
+            }
+        }
+        return parents;
+    }
+}
@@ -0,0 +1,85 @@
+package database;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * the prepared statements of one pooled connection that are not in use, by SQL text.
+ *
+ * a statement is taken out of the cache while a caller uses it and put back when the caller
+ * closes it, so two callers never share a statement: if the same SQL is prepared again while
+ * it is in use, the second caller gets a new statement. when the cache is full, the statement
+ * that was used least recently is closed.
+ *
+ * with useServerPrepStmts the statements are prepared on the server, so a query that is found
+ * here is not parsed and planned again.
+ */
+class StatementCache {
+
+    /**
+     * what a statement was prepared with
+     *
+     * @param sql the SQL text
+     * @param autoGeneratedKeys Statement.RETURN_GENERATED_KEYS or Statement.NO_GENERATED_KEYS
+     */
+    record Key(String sql, int autoGeneratedKeys) {
+    }
+
+    private final int maxSize;
+
+    //least recently used first
+    private final LinkedHashMap<Key, PreparedStatement> statements = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * @param maxSize the number of statements kept before the least recently used is closed
+     */
+    StatementCache(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * takes a statement out of the cache, the caller has it to themselves until they put it back
+     *
+     * @param key the SQL of the statement
+     * @return the statement, or null if none is cached
+     */
+    synchronized PreparedStatement take(Key key) {
+        return statements.remove(key);
+    }
+
+    /**
+     * puts a statement back after use. it is closed instead if the cache already has one
+     * for the same SQL or the cache is disabled.
+     *
+     * @param key the SQL of the statement
+     * @param statement a statement prepared with the key, its parameters already cleared
+     */
+    void put(Key key, PreparedStatement statement) {
+        PreparedStatement evicted = null;
+        synchronized (this) {
+            if (maxSize > 0 && !statements.containsKey(key)) {
+                statements.put(key, statement);
+                if (statements.size() > maxSize) {
+                    Iterator<PreparedStatement> eldest = statements.values().iterator();
+                    evicted = eldest.next();
+                    eldest.remove();
+                }
+            } else {
+                evicted = statement;
+            }
+        }
+        if (evicted != null) {
+            closeQuietly(evicted);
+        }
+    }
+
+    static void closeQuietly(PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            System.err.println("Error closing a cached statement: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package database;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * the database engine the application stores its data in.
+ *
+ * the backend is chosen with the system property nutrisci.storage (or the environment variable
+ * NUTRISCI_STORAGE): "mysql", the default, uses the MySQL server at localhost, "embedded" runs H2
+ * inside the application in MySQL compatibility mode, in the database file given by
+ * nutrisci.storage.path (default ./nutrientDB). the embedded database is created from db.sql on
+ * the first start and filled by CNFLoader like a MySQL database, so it needs no server.
+ *
+ * the SQL of the application is written so it runs on both. features only MySQL has
+ * (LOAD DATA LOCAL INFILE, bulk sessions) are turned off for the embedded backend.
+ */
+public enum StorageBackend {
+
+    MYSQL,
+    EMBEDDED;
+
+    private static final String MYSQL_URL = "jdbc:mysql://localhost:3306/nutrientDB?rewriteBatchedStatements=true";
+
+    //lets the server read files of the client, only given to the import connections that use LOAD DATA
+    private static final String LOAD_DATA_OPTIONS = "&allowLoadLocalInfile=true";
+
+    //MySQL mode, lower case names like MySQL on Linux, and value and day are column names here, not keywords
+    private static final String EMBEDDED_OPTIONS = ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;NON_KEYWORDS=VALUE,DAY";
+
+    /**
+     * @return the backend set by nutrisci.storage or NUTRISCI_STORAGE, MYSQL if neither is set
+     */
+    public static StorageBackend fromConfiguration() {
+        String name = System.getProperty("nutrisci.storage", System.getenv("NUTRISCI_STORAGE"));
+        if (name == null || name.isBlank()) {
+            return MYSQL;
+        }
+        try {
+            return valueOf(name.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            System.err.println("Unknown storage backend " + name + ". Using MySQL.");
+            return MYSQL;
+        }
+    }
+
+    /**
+     * @return the JDBC URL of the database
+     */
+    public String getUrl() {
+        if (this == MYSQL) {
+            return MYSQL_URL;
+        }
+        String path = System.getProperty("nutrisci.storage.path", "nutrientDB");
+        return "jdbc:h2:file:" + Path.of(path).toAbsolutePath() + EMBEDDED_OPTIONS;
+    }
+
+    /**
+     * @return the JDBC URL of the import connections, which may also stream CSV files with
+     *         LOAD DATA LOCAL INFILE
+     */
+    public String getImportUrl() {
+        return supportsLoadData() ? getUrl() + LOAD_DATA_OPTIONS : getUrl();
+    }
+
+    /**
+     * @return the user the application connects as
+     */
+    public String getUser() {
+        return this == MYSQL ? "root" : "sa";
+    }
+
+    /**
+     * @return the password of the user
+     */
+    public String getPassword() {
+        return this == MYSQL ? "pass1234" : "";
+    }
+
+    /**
+     * @return true if CSV files can be streamed with LOAD DATA LOCAL INFILE
+     */
+    public boolean supportsLoadData() {
+        return this == MYSQL;
+    }
+
+    /**
+     * @return true if a table can be filled in a BulkLoadSession, which reads information_schema
+     *         the MySQL way and drops and rebuilds indexes with MySQL's ALTER TABLE syntax
+     */
+    public boolean supportsBulkSession() {
+        return this == MYSQL;
+    }
+
+    /**
+     * creates the tables of db.sql the database does not have yet.
+     * a MySQL database is set up by running db.sql by hand, so nothing is done for it.
+     *
+     * @param conn a connection to the database
+     * @param schemaFile the path to db.sql
+     * @throws IOException if db.sql cannot be read
+     * @throws SQLException if a table cannot be created
+     */
+    void createSchema(Connection conn, String schemaFile) throws IOException, SQLException {
+        if (this == MYSQL) {
+            return;
+        }
+        String sql = Files.readString(Path.of(schemaFile), StandardCharsets.UTF_8).replaceAll("--[^\\n]*", "");
+        DatabaseMetaData meta = conn.getMetaData();
+        int created = 0;
+
+        try (Statement stmt = conn.createStatement()) {
+            for (String statement : sql.split(";")) {
+                statement = statement.trim();
+                String[] words = statement.split("\\s+", 4);
+                //the database is the file itself, CREATE DATABASE and USE only apply to MySQL
+                if (words.length < 3 || !words[0].equalsIgnoreCase("CREATE") || !words[1].equalsIgnoreCase("TABLE")) {
+                    continue;
+                }
+                String table = words[2].replaceAll("\\W.*", "").toLowerCase();
+                if (!tableExists(meta, table)) {
+                    stmt.execute(statement);
+                    created++;
+                }
+            }
+        }
+        if (created > 0) {
+            System.out.println("Created " + created + " tables of " + schemaFile + " in the embedded database.");
+        }
+    }
+
+    private static boolean tableExists(DatabaseMetaData meta, String table) throws SQLException {
+        try (ResultSet rs = meta.getTables(null, null, table, new String[]{"TABLE"})) {
+            return rs.next();
+        }
+    }
+}
@@ -139,3 +139,28 @@ CREATE TABLE user_profile (
                               weight DOUBLE NOT NULL,
                               unit_system ENUM('Metric', 'Imperial') NOT NULL
 );
+CREATE TABLE cnf_import_state (
+                                  table_name VARCHAR(64) PRIMARY KEY,
+                                  source_file VARCHAR(255),
+                                  content_hash CHAR(64) NOT NULL,
+                                  row_count INT NOT NULL,
+                                  imported_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+);
+CREATE TABLE cnf_import_checkpoint (
+                                       table_name VARCHAR(64) PRIMARY KEY,
+                                       content_hash CHAR(64) NOT NULL,
+                                       byte_offset BIGINT NOT NULL,
+                                       line_number BIGINT NOT NULL,
+                                       rows_inserted INT NOT NULL,
+                                       rows_failed INT NOT NULL,
+                                       updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+);
+CREATE TABLE cnf_import_reject (
+                                   id INT AUTO_INCREMENT PRIMARY KEY,
+                                   table_name VARCHAR(64) NOT NULL,
+                                   column_name VARCHAR(64) NOT NULL,
+                                   parent_table VARCHAR(64) NOT NULL,
+                                   row_key VARCHAR(100),
+                                   missing_value VARCHAR(100),
+                                   rejected_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+);
@@ -3,17 +3,21 @@ package model;
 //imports
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.IntFunction;
 
 
 /**
  * represents the nutritional information of a specific food item.
  * stores the name of the food and a map of nutrient names to their respective amounts.
+ * the amounts can also be given as a NutrientVector, the map is then only created when a view asks for it.
  */
 public class NutrientProfile {
 	
 	//declare variables
     private String foodName;
     private Map<String, Double> nutrientAmounts = new HashMap<>();	//holds the nutrient amount information
+    private NutrientVector nutrients;	//the amounts by nutrient index, null if they were given as a map
+    private IntFunction<String> nutrientNames;	//the name of a nutrient index of the vector
 
     
     //getters and setters for variables
@@ -39,6 +43,10 @@ public class NutrientProfile {
      * @return the map of nutrient names to their respective amounts
      */
     public Map<String, Double> getNutrientAmounts() {
+        //null like before if the map was set to null
+        if (nutrientAmounts == null && nutrients != null) {
+            nutrientAmounts = nutrients.toMap(nutrientNames);
+        }
         return nutrientAmounts;
     }
 
@@ -50,5 +58,28 @@ public class NutrientProfile {
      */
     public void setNutrientAmounts(Map<String, Double> nutrientAmounts) {
         this.nutrientAmounts = nutrientAmounts;
+        this.nutrients = null;
+        this.nutrientNames = null;
+    }
+
+    
+    /**
+     * @return the nutrient amounts by nutrient index, or null if they were given as a map
+     */
+    public NutrientVector getNutrients() {
+        return nutrients;
+    }
+
+    
+    /**
+     * sets the nutrient amounts as a vector.
+     *
+     * @param nutrients the amounts by nutrient index
+     * @param nutrientNames the name of a nutrient index, used when the amounts are asked for as a map
+     */
+    public void setNutrients(NutrientVector nutrients, IntFunction<String> nutrientNames) {
+        this.nutrients = nutrients;
+        this.nutrientNames = nutrientNames;
+        this.nutrientAmounts = null;
     }
 }
@@ -0,0 +1,225 @@
+package model;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.IntFunction;
+import java.util.function.ToIntFunction;
+
+/**
+ * an amount for each nutrient, indexed by the nutrient index of the NutrientMatrix and NutrientCatalog.
+ *
+ * the amounts are a plain double array with a bitmap that tells which nutrients have an amount,
+ * so adding up the ingredients of a day's meals is a loop over primitive arrays instead of merging
+ * boxed values into a map by nutrient name. a nutrient without an amount is not the same as an
+ * amount of 0: it is left out of toMap, like a food the CNF has no amount for.
+ *
+ * add, addScaled and scale change this vector and return it, so they can be chained.
+ * diff and copy return a new vector.
+ */
+public final class NutrientVector {
+
+    private final double[] values;
+    private final long[] present;
+
+    /**
+     * creates a vector without amounts
+     *
+     * @param size the number of nutrients
+     */
+    public NutrientVector(int size) {
+        values = new double[size];
+        present = new long[(size + 63) / 64];
+    }
+
+    /**
+     * creates a vector from amounts by nutrient name
+     *
+     * @param amounts the amounts by nutrient name
+     * @param indexOf the index of a nutrient name, negative for names that are not a nutrient
+     * @param size the number of nutrients
+     * @return the vector, without the names that are not a nutrient
+     */
+    public static NutrientVector fromMap(Map<String, Double> amounts, ToIntFunction<String> indexOf, int size) {
+        NutrientVector vector = new NutrientVector(size);
+        for (Map.Entry<String, Double> entry : amounts.entrySet()) {
+            int nutrient = indexOf.applyAsInt(entry.getKey());
+            if (nutrient >= 0 && entry.getValue() != null) {
+                vector.add(nutrient, entry.getValue());
+            }
+        }
+        return vector;
+    }
+
+    /**
+     * @return the number of nutrients
+     */
+    public int size() {
+        return values.length;
+    }
+
+    /**
+     * @return the number of nutrients with an amount
+     */
+    public int count() {
+        int count = 0;
+        for (long word : present) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    /**
+     * @param nutrient a nutrient index
+     * @return true if the nutrient has an amount
+     */
+    public boolean has(int nutrient) {
+        return (present[nutrient >>> 6] & (1L << nutrient)) != 0;
+    }
+
+    /**
+     * @param nutrient a nutrient index
+     * @return the amount of the nutrient, 0 if it has none
+     */
+    public double get(int nutrient) {
+        return values[nutrient];
+    }
+
+    /**
+     * @param nutrient a nutrient index
+     * @param amount the new amount of the nutrient
+     */
+    public void set(int nutrient, double amount) {
+        values[nutrient] = amount;
+        present[nutrient >>> 6] |= 1L << nutrient;
+    }
+
+    /**
+     * adds to the amount of one nutrient, which then has an amount
+     *
+     * @param nutrient a nutrient index
+     * @param amount the amount to add
+     */
+    public void add(int nutrient, double amount) {
+        values[nutrient] += amount;
+        present[nutrient >>> 6] |= 1L << nutrient;
+    }
+
+    /**
+     * removes all amounts
+     */
+    public void clear() {
+        Arrays.fill(values, 0);
+        Arrays.fill(present, 0);
+    }
+
+    /**
+     * adds the amounts of another vector
+     *
+     * @param other a vector of the same size
+     * @return this vector
+     */
+    public NutrientVector add(NutrientVector other) {
+        return addScaled(other, 1);
+    }
+
+    /**
+     * adds the amounts of another vector multiplied by a factor, for example the nutrients of
+     * 100 g of a food times the grams of an ingredient / 100
+     *
+     * @param other a vector of the same size
+     * @param factor the factor the amounts of other are multiplied with
+     * @return this vector
+     */
+    public NutrientVector addScaled(NutrientVector other, double factor) {
+        checkSize(other);
+        for (int i = 0; i < values.length; i++) {
+            values[i] += other.values[i] * factor;
+        }
+        for (int i = 0; i < present.length; i++) {
+            present[i] |= other.present[i];
+        }
+        return this;
+    }
+
+    /**
+     * multiplies all amounts by a factor
+     *
+     * @param factor the factor
+     * @return this vector
+     */
+    public NutrientVector scale(double factor) {
+        for (int i = 0; i < values.length; i++) {
+            values[i] *= factor;
+        }
+        return this;
+    }
+
+    /**
+     * @param other a vector of the same size
+     * @return a new vector of this minus other, with an amount for every nutrient either of them has
+     */
+    public NutrientVector diff(NutrientVector other) {
+        return copy().addScaled(other, -1);
+    }
+
+    /**
+     * @return a new vector with the same amounts
+     */
+    public NutrientVector copy() {
+        NutrientVector copy = new NutrientVector(values.length);
+        System.arraycopy(values, 0, copy.values, 0, values.length);
+        System.arraycopy(present, 0, copy.present, 0, present.length);
+        return copy;
+    }
+
+    /**
+     * @param n the number of nutrients to return
+     * @return the indexes of the n nutrients with the largest amounts, largest first.
+     *         fewer if fewer nutrients have an amount
+     */
+    public int[] top(int n) {
+        int[] top = new int[Math.max(0, Math.min(n, count()))];
+        int found = 0;
+        //keeps top sorted by amount, a new amount is moved in from the end like an insertion sort
+        for (int i = 0; i < values.length && top.length > 0; i++) {
+            if (!has(i) || (found == top.length && values[i] <= values[top[found - 1]])) {
+                continue;
+            }
+            int at = found < top.length ? found++ : found - 1;
+            while (at > 0 && values[top[at - 1]] < values[i]) {
+                top[at] = top[at - 1];
+                at--;
+            }
+            top[at] = i;
+        }
+        return top;
+    }
+
+    /**
+     * converts the vector for the views that show nutrients by name
+     *
+     * @param names the name of a nutrient index
+     * @return the amounts by nutrient name, in nutrient index order, without the nutrients that have no amount
+     */
+    public Map<String, Double> toMap(IntFunction<String> names) {
+        Map<String, Double> map = new LinkedHashMap<>();
+        for (int i = 0; i < values.length; i++) {
+            if (has(i)) {
+                map.merge(names.apply(i), values[i], Double::sum);
+            }
+        }
+        return map;
+    }
+
+    private void checkSize(NutrientVector other) {
+        if (other.values.length != values.length) {
+            throw new IllegalArgumentException("Vector of " + other.values.length + " nutrients, expected " + values.length);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return toMap(String::valueOf).toString();
+    }
+}
@@ -1,6 +1,8 @@
 package view;
 
-import database.DBConnection;
+import database.FoodCatalog;
+import database.NutrientCatalog;
+import database.NutrientMatrix;
 import org.jfree.chart.ChartFactory;
 import org.jfree.chart.ChartPanel;
 import org.jfree.chart.JFreeChart;
@@ -72,45 +74,36 @@ public abstract class AbstractTemplateComparisonChart extends JFrame {
     	swapName = "Swap";
 
     	
-    	//sql query
-        String sql = """
-            SELECT n.name AS nutrient_name,
-                   na.value AS amount,
-                   fn.id AS food_id,
-                   fn.description AS food_name
-            FROM nutrient_amount na
-            JOIN nutrient n ON na.nutrient_id = n.id
-            JOIN food_name fn ON fn.id = na.food_id
-            WHERE fn.id = ? OR fn.id = ?
-        """;
-
+    	//the nutrient amounts come from the nutrient matrix, the food names from the food catalog
         Set<String> mainNutrients = getMainNutrients();
 
-        try (Connection conn = DBConnection.getInstance().getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-        	
-//        	String originalName = "Original";
-//            String swapName = "Swap";
-
-            stmt.setInt(1, originalFoodId);
-            stmt.setInt(2, suggestedFoodId);
-
-            ResultSet rs = stmt.executeQuery();
-            
-            while (rs.next()) {
-                String nutrient = rs.getString("nutrient_name");
-                if (!mainNutrients.contains(nutrient)) continue;
-
-                double amount = rs.getDouble("amount");
-                int foodId = rs.getInt("food_id");
-                String foodName = rs.getString("food_name");
+        try {
+            NutrientMatrix matrix = NutrientMatrix.getInstance();
+            NutrientCatalog catalog = NutrientCatalog.getInstance();
+            FoodCatalog foods = FoodCatalog.getInstance();
+
+            for (int foodId : new int[]{originalFoodId, suggestedFoodId}) {
+                String foodName = foods.getDescriptionOf(foodId);
+                if (foodName == null) continue;
+                boolean found = false;
+
+                for (String nutrient : mainNutrients) {
+                    double amount = matrix.getAmount(foodId, catalog.getId(nutrient));
+                    if (Double.isNaN(amount)) continue;
+                    found = true;
+
+                    if (foodId == originalFoodId) {
+                        originalNutrientMap.put(nutrient, amount);
+                    } else if (foodId == suggestedFoodId) {
+                        swapNutrientMap.put(nutrient, amount);
+                    }
+                }
 
-                if (foodId == originalFoodId) {
+                //a food is only named in the chart if it has one of the main nutrients
+                if (found && foodId == originalFoodId) {
                     originalName = foodName;
-                    originalNutrientMap.put(nutrient, amount);
-                } else if (foodId == suggestedFoodId) {
+                } else if (found && foodId == suggestedFoodId) {
                     swapName = foodName;
-                    swapNutrientMap.put(nutrient, amount);
                 }
             }
 
@@ -0,0 +1,170 @@
+package view;
+
+import database.FoodCatalog;
+import database.FoodSearchIndex;
+
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.plaf.basic.ComboPopup;
+
+/**
+ * the model of a food combo box, showing the foods of the FoodCatalog.
+ *
+ * the model holds no copy of the foods: a row is the index of a food in the catalog, and the
+ * food of a row is only created when the combo box renders it. the rows are all foods, or the
+ * indexes given to setRows or found by filter, so filtering swaps one int array and fires one
+ * event instead of removing and adding thousands of items. filter asks the FoodSearchIndex, so
+ * typing in the search field of a food picker shows the best matches first.
+ *
+ * every food picker gets its own model because a combo box model holds the selection.
+ */
+class FoodComboBoxModel extends AbstractListModel<FoodCatalog.Food> implements ComboBoxModel<FoodCatalog.Food> {
+
+    private static final long serialVersionUID = 1L;
+
+    //the size of every cell, so neither the combo box nor its popup measure the foods one by one
+    static final FoodCatalog.Food PROTOTYPE = new FoodCatalog.Food(0, "Cheese, cheddar, reduced fat, reduced sodium");
+
+    //the most foods shown for a search, the best ones are at the top anyway
+    static final int SEARCH_LIMIT = 100;
+
+    private final FoodSearchIndex index;
+    private final FoodCatalog catalog;
+    private int[] rows;
+    private Object selected;
+
+    /**
+     * @param index the search index of the catalog whose foods are shown
+     */
+    FoodComboBoxModel(FoodSearchIndex index) {
+        this.index = index;
+        this.catalog = index.getCatalog();
+        if (catalog.size() > 0) {
+            selected = catalog.getFood(0);
+        }
+    }
+
+    @Override
+    public int getSize() {
+        return rows != null ? rows.length : catalog.size();
+    }
+
+    @Override
+    public FoodCatalog.Food getElementAt(int index) {
+        return catalog.getFood(rows != null ? rows[index] : index);
+    }
+
+    @Override
+    public void setSelectedItem(Object item) {
+        if (item == null ? selected != null : !item.equals(selected)) {
+            selected = item;
+            fireContentsChanged(this, -1, -1);
+        }
+    }
+
+    @Override
+    public Object getSelectedItem() {
+        return selected;
+    }
+
+    /**
+     * shows only some foods. the array is used as it is, not copied
+     *
+     * @param indexes the catalog indexes of the foods to show, in the order to show them, or null for all foods
+     */
+    void setRows(int[] indexes) {
+        int oldSize = getSize();
+        rows = indexes;
+        int newSize = getSize();
+
+        if (newSize < oldSize) {
+            fireIntervalRemoved(this, newSize, oldSize - 1);
+        } else if (newSize > oldSize) {
+            fireIntervalAdded(this, oldSize, newSize - 1);
+        }
+        if (newSize > 0) {
+            fireContentsChanged(this, 0, newSize - 1);
+        }
+    }
+
+    /**
+     * shows only the foods that best match a search, best first, and selects the best one
+     *
+     * @param text the text typed by the user, all foods are shown if it is blank
+     */
+    void filter(String text) {
+        if (text == null || text.isBlank()) {
+            setRows(null);
+            return;
+        }
+
+        int[] matches = index.search(text, SEARCH_LIMIT);
+        setRows(matches);
+        setSelectedItem(matches.length > 0 ? catalog.getFood(matches[0]) : null);
+    }
+
+    /**
+     * gives the combo box and its popup list a fixed cell size, so that opening the popup only
+     * renders the visible rows however many foods there are
+     *
+     * @param box a food combo box
+     */
+    static void setFixedCellSize(JComboBox<FoodCatalog.Food> box) {
+        box.setPrototypeDisplayValue(PROTOTYPE);
+        if (box.getUI().getAccessibleChild(box, 0) instanceof ComboPopup popup) {
+            popup.getList().setPrototypeCellValue(PROTOTYPE);
+        }
+    }
+
+    /**
+     * shows the foods of the catalog in a combo box once it and its search index are loaded,
+     * without waiting for them on the event dispatch thread. from then on, typing in the search
+     * field filters the combo box and opens its popup with the matches
+     *
+     * @param box the combo box, empty until the catalog is loaded
+     * @param search the type-ahead field of the combo box
+     * @param onError called on the event dispatch thread if the catalog cannot be loaded
+     */
+    static void bind(JComboBox<FoodCatalog.Food> box, JTextField search, Runnable onError) {
+        setFixedCellSize(box);
+        search.setEnabled(false);
+        FoodSearchIndex.load().whenComplete((index, error) -> SwingUtilities.invokeLater(() -> {
+            if (index == null) {
+                onError.run();
+                return;
+            }
+
+            FoodComboBoxModel model = new FoodComboBoxModel(index);
+            box.setModel(model);
+            search.setEnabled(true);
+            search.getDocument().addDocumentListener(new DocumentListener() {
+                @Override
+                public void insertUpdate(DocumentEvent e) {
+                    update();
+                }
+
+                @Override
+                public void removeUpdate(DocumentEvent e) {
+                    update();
+                }
+
+                @Override
+                public void changedUpdate(DocumentEvent e) {
+                    update();
+                }
+
+                private void update() {
+                    model.filter(search.getText());
+                    if (search.getText().isBlank() || model.getSize() == 0) {
+                        box.hidePopup();
+                    } else if (box.isShowing()) {
+                        box.showPopup();
+                    }
+                }
+            });
+            //enter takes the selected food, like a click in the popup
+            search.addActionListener(e -> box.hidePopup());
+        }));
+    }
+}
@@ -2,6 +2,7 @@ package view;
 
 import controller.OptimizeGoalsCommand;
 import controller.ISwapCommand;
+import database.NutrientCatalog;
 import model.SwapGoal;
 import model.UserProfile;
 
@@ -149,12 +150,13 @@ public class GoalOptimizerPanel extends JPanel {
     }
 
     /**
-     * provides a list of nutrients that users can select for goal setting
+     * provides a list of nutrients that users can select for goal setting,
+     * the common ones first and then every other nutrient of the catalog
      *
      * @return an array of nutrient names
      */
     private String[] nutrients() {
-        return new String[]{"Energy", "Protein", "Fat", "Carbohydrate", "Fiber", "Sugar"};
+        return NutrientCatalog.getChoices();
     }
 
     /**
@@ -15,11 +15,11 @@ import java.awt.BorderLayout;
 import java.awt.GridLayout;
 import java.util.Map;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Date;
 
 import database.DBConnection;
+import database.FoodCatalog;
 
 //Use of AI: Used AI to debug code and improve operations
 /**
@@ -30,12 +30,13 @@ import database.DBConnection;
  */
 public class MealLoggerPanel extends JPanel {
     private JTextField userField, quantityField;
-    private JComboBox<String> mealTypeBox, foodListBox;
+    private JComboBox<String> mealTypeBox;
+    private JComboBox<FoodCatalog.Food> foodListBox;
+    private JTextField foodSearchField;
     private JTextArea logOutput;
     private JButton addButton, logMealButton;
     private JTextField dateField;
     private final java.util.Set<String> expandedMeals = new java.util.HashSet<>();
-    private Map<String, Integer> foodNameToId = new HashMap<>();
     private List<Ingredient> ingredients = new ArrayList<>();
     private final UserProfile user;
 
@@ -55,11 +56,12 @@ public class MealLoggerPanel extends JPanel {
         setLayout(new BorderLayout(10, 10));
         setBorder(BorderFactory.createTitledBorder("Meal Logger"));
 
-        JPanel inputPanel = new JPanel(new GridLayout(5, 2, 10, 10));
+        JPanel inputPanel = new JPanel(new GridLayout(7, 2, 10, 10));
 
         userField = new JTextField(user.getName());
         userField.setEditable(false);
         mealTypeBox = new JComboBox<>(new String[]{"Breakfast", "Lunch", "Dinner", "Snack"});
+        foodSearchField = new JTextField();
         foodListBox = new JComboBox<>();
         quantityField = new JTextField();
         addButton = new JButton("Add Ingredient");
@@ -73,6 +75,8 @@ public class MealLoggerPanel extends JPanel {
 
         inputPanel.add(new JLabel("Meal Type:"));
         inputPanel.add(mealTypeBox);
+        inputPanel.add(new JLabel("Search Food:"));
+        inputPanel.add(foodSearchField);
         inputPanel.add(new JLabel("Food Item:"));
         inputPanel.add(foodListBox);
         inputPanel.add(new JLabel("Quantity (grams):"));
@@ -148,11 +152,14 @@ public class MealLoggerPanel extends JPanel {
 
         addButton.addActionListener(e -> {
             try {
-                String foodName = (String) foodListBox.getSelectedItem();
-                int foodId = foodNameToId.get(foodName);
+                FoodCatalog.Food food = (FoodCatalog.Food) foodListBox.getSelectedItem();
+                if (food == null) {
+                    JOptionPane.showMessageDialog(this, "No food selected. Search for a food and select it first.");
+                    return;
+                }
                 double qty = Double.parseDouble(quantityField.getText());
 
-                Ingredient ing = new Ingredient(foodId, foodName, qty);
+                Ingredient ing = new Ingredient(food.id(), food.description(), qty);
                 ingredients.add(ing);
                 logOutput.append("➕ " + ing + "\n");
 
@@ -221,23 +228,13 @@ public class MealLoggerPanel extends JPanel {
     }
 
     /**
-     * loads food item names and their ids from the database
-     * the names are added to the foodListBox combo box for the user selection
+     * shows the food items of the shared food catalog in the foodListBox combo box once they are loaded
+     * the catalog is read from the database once for all panels, not on the event dispatch thread
+     * typing in foodSearchField then narrows the foodListBox to the best matches
      */
     private void loadFoodItemsFromDB() {
-        try (Connection conn = DBConnection.getInstance().getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery("SELECT id, description FROM food_name")) {
-
-            while (rs.next()) {
-                int id = rs.getInt("id");
-                String name = rs.getString("description");
-                foodListBox.addItem(name);
-                foodNameToId.put(name, id);
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+        FoodComboBoxModel.bind(foodListBox, foodSearchField,
+                () -> JOptionPane.showMessageDialog(this, "Failed to load food items from database."));
     }
 
     /**
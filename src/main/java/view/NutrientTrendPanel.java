@@ -1,8 +1,10 @@
 package view;
 
 import database.DBConnection;
-import java.util.Set;
+import database.NutrientCatalog;
+import database.NutrientMatrix;
 
+import model.NutrientVector;
 import model.UserProfile;
 import org.jfree.chart.ChartFactory;
 import org.jfree.chart.ChartPanel;
@@ -16,7 +18,6 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.time.LocalDate;
 import java.time.format.DateTimeParseException;
-import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
@@ -27,16 +28,6 @@ import java.util.Map;
  */
 public class NutrientTrendPanel extends JPanel {
 	
-	//map user friendly names to database names
-	private static final Map<String, String> nutrientMap = Map.of(
-				"Energy", "ENERGY (KILOCALORIES)",
-			    "Protein", "PROTEIN",
-			    "Fat", "FAT (TOTAL LIPIDS)",
-			    "Carbohydrate", "CARBOHYDRATE, TOTAL (BY DIFFERENCE)",
-			    "Fiber", "FIBRE, TOTAL DIETARY",
-			    "Sugar", "SUGARS, TOTAL"
-		);
-	
 	//map the recommended daily nutrient portions based on the CFG
 	private static final Map<String, Double> RECOMMENDED_DAILY = Map.of(
 		    "ENERGY (KILOCALORIES)", 2500.0,
@@ -78,7 +69,7 @@ public class NutrientTrendPanel extends JPanel {
 
         // controls
         JPanel topPanel = new JPanel(new GridLayout(1, 2, 10, 10));
-        nutrientBox = new JComboBox<>(new String[]{"Energy", "Protein", "Fat", "Carbohydrate", "Fiber", "Sugar"});
+        nutrientBox = new JComboBox<>(NutrientCatalog.getChoices());
         loadButton = new JButton("Load Chart");
         
         pieChartButton = new JButton("Average Daily Portions");
@@ -138,8 +129,13 @@ public class NutrientTrendPanel extends JPanel {
      */
     private void loadChart() {
         String nutrient = (String) nutrientBox.getSelectedItem();
-        String dbNutrient = nutrientMap.get(nutrient);
-        if (dbNutrient == null) {
+        int dbNutrient = -1;
+        try {
+            dbNutrient = NutrientCatalog.getInstance().getId(nutrient);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        if (dbNutrient < 0) {
             JOptionPane.showMessageDialog(this, "Unknown nutrient.");
             return;
         }
@@ -158,38 +154,36 @@ public class NutrientTrendPanel extends JPanel {
             return;
         }
         
+        //the ingredients of the meals, their nutrient amounts come from the nutrient matrix
         String sql = """
         	    SELECT 
         	        lm.meal_date,
-        	        SUM(na.value) AS total_amount
+        	        mi.food_id
         	    FROM 
         	        logged_meal lm
         	    JOIN meal_ingredient mi ON lm.id = mi.meal_id
-        	    JOIN nutrient_amount na ON mi.food_id = na.food_id
-        	    JOIN nutrient n ON na.nutrient_id = n.id
         	    WHERE 
-        	        n.name = ? AND lm.user_name = ? AND lm.meal_date BETWEEN ? AND ?
-        	    GROUP BY lm.meal_date
+        	        lm.user_name = ? AND lm.meal_date BETWEEN ? AND ?
         	    ORDER BY lm.meal_date;
         	""";
 
-//SUM(na.value * mi.quantity_grams / 100)
+//matrix.getAmount(foodId, dbNutrient) * mi.quantity_grams / 100
         try (Connection conn = DBConnection.getInstance().getConnection();
 
              PreparedStatement stmt = conn.prepareStatement(sql)) {
 
-            //stmt.setString(1, nutrient);
-        	stmt.setString(1, dbNutrient);
-        	stmt.setString(2, user.getName());
-        	stmt.setString(3, startDate);
-        	stmt.setString(4, endDate);
+        	stmt.setString(1, user.getName());
+        	stmt.setString(2, startDate);
+        	stmt.setString(3, endDate);
 
+            NutrientMatrix matrix = NutrientMatrix.getInstance();
             ResultSet rs = stmt.executeQuery();
 
             while (rs.next()) {
+                double amount = matrix.getAmount(rs.getInt("food_id"), dbNutrient);
+                if (Double.isNaN(amount)) continue;
                 String date = rs.getDate("meal_date").toString();
-                double amount = rs.getDouble("total_amount");
-                dailyTotals.put(date, amount);
+                dailyTotals.merge(date, amount, Double::sum);
             }
             
             currentTotals = dailyTotals;
@@ -241,26 +235,21 @@ public class NutrientTrendPanel extends JPanel {
             return;
         }
 
-        //                SUM(na.value * mi.quantity_grams / 100) AS total
+        //                matrix.addTo(foodId, mi.quantity_grams / 100, day)
 
+        //the ingredients of the meals, their nutrient amounts come from the nutrient matrix
         String sql = """
             SELECT 
-                n.name,
                 lm.meal_date,
-                SUM(na.value) AS total
+                mi.food_id
             FROM 
                 logged_meal lm
             JOIN meal_ingredient mi ON lm.id = mi.meal_id
-            JOIN nutrient_amount na ON mi.food_id = na.food_id
-            JOIN nutrient n ON na.nutrient_id = n.id
             WHERE 
                 lm.user_name = ? AND lm.meal_date BETWEEN ? AND ?
-            GROUP BY n.name, lm.meal_date;
+            ORDER BY lm.meal_date;
         """;
 
-        Map<String, Double> totals = new LinkedHashMap<>();
-        Map<String, Set<String>> nutrientDateSet = new LinkedHashMap<>();
-
         try (Connection conn = DBConnection.getInstance().getConnection();
 
              PreparedStatement stmt = conn.prepareStatement(sql)) {
@@ -271,29 +260,32 @@ public class NutrientTrendPanel extends JPanel {
             stmt.setString(2, startDate);
             stmt.setString(3, endDate);
 
+            NutrientMatrix matrix = NutrientMatrix.getInstance();
             ResultSet rs = stmt.executeQuery();
 
-            while (rs.next()) {
-                String nutrient = rs.getString("name").trim().toUpperCase();
-                String date = rs.getDate("meal_date").toString();
-                double value = rs.getDouble("total");
-
-                totals.putIfAbsent(nutrient, 0.0);
-                totals.put(nutrient, totals.get(nutrient) + value);
+            //the meals are summed by day, each nutrient is averaged over the days that have an amount of it
+            NutrientVector totals = matrix.newVector();
+            NutrientVector day = matrix.newVector();
+            int[] days = new int[matrix.getNutrientCount()];
+            String date = null;
 
-                nutrientDateSet.putIfAbsent(nutrient, new HashSet<>());
-                nutrientDateSet.get(nutrient).add(date);
+            while (rs.next()) {
+                String mealDate = rs.getDate("meal_date").toString();
+                if (!mealDate.equals(date)) {
+                    addDay(day, totals, days);
+                    date = mealDate;
+                }
+                matrix.addTo(rs.getInt("food_id"), 1, day);
             }
+            addDay(day, totals, days);
 
-            Map<String, Double> averages = new LinkedHashMap<>();
-            for (Map.Entry<String, Double> entry : totals.entrySet()) {
-                String nutrient = entry.getKey();
-                double total = entry.getValue();
-                int days = nutrientDateSet.get(nutrient).size();
-                if (days > 0) {
-                    averages.put(nutrient, total / days);
+            NutrientVector averageVector = matrix.newVector();
+            for (int nutrient = 0; nutrient < days.length; nutrient++) {
+                if (days[nutrient] > 0) {
+                    averageVector.set(nutrient, totals.get(nutrient) / days[nutrient]);
                 }
             }
+            Map<String, Double> averages = averageVector.toMap(nutrient -> matrix.getNutrientName(nutrient).trim().toUpperCase());
             System.out.println("Averages: " + averages);
 
 
@@ -317,6 +309,20 @@ public class NutrientTrendPanel extends JPanel {
         }
     }
     
+    /**
+     * adds the nutrients of a day to the totals and counts the day for every nutrient it has,
+     * then clears the day for the next one
+     */
+    private static void addDay(NutrientVector day, NutrientVector totals, int[] days) {
+        for (int nutrient = 0; nutrient < days.length; nutrient++) {
+            if (day.has(nutrient)) {
+                days[nutrient]++;
+            }
+        }
+        totals.add(day);
+        day.clear();
+    }
+
     /**
      * shows user the progress notification message as a percentage
      * remove if you want no message to pop up
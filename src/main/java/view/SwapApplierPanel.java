@@ -3,6 +3,9 @@ package view;
 import controller.SwapEngine;
 
 import database.DBConnection;
+import database.FoodCatalog;
+import database.NutrientCatalog;
+import database.NutrientMatrix;
 import model.SwapGoal;
 import model.UserProfile;
 import org.jfree.chart.ChartFactory;
@@ -13,6 +16,7 @@ import org.jfree.data.category.DefaultCategoryDataset;
 import javax.swing.*;
 import java.awt.*;
 import java.sql.*;
+import java.time.LocalDate;
 
 //Use of AI: Used AI to debug code and improve operations
 
@@ -46,7 +50,7 @@ public class SwapApplierPanel extends JPanel {
 
         // controls
         JPanel controls = new JPanel(new GridLayout(2, 4, 10, 10));
-        nutrientBox = new JComboBox<>(new String[]{"Energy", "Protein", "Fat", "Carbohydrate", "Fiber", "Sugar"});
+        nutrientBox = new JComboBox<>(NutrientCatalog.getChoices());
         directionBox = new JComboBox<>(new String[]{"increase", "decrease"});
         daysBox = new JComboBox<>(new String[]{"7", "30"});
         amountField = new JTextField();
@@ -106,20 +110,18 @@ public class SwapApplierPanel extends JPanel {
             SELECT mi.id, mi.food_id, mi.quantity_grams
             FROM meal_ingredient mi
             JOIN logged_meal lm ON mi.meal_id = lm.id
-            JOIN nutrient_amount na ON mi.food_id = na.food_id
-            JOIN nutrient n ON na.nutrient_id = n.id
-            WHERE n.name = ? AND lm.user_name = ? AND mi.was_swapped = 0
-                  AND lm.meal_date >= CURDATE() - INTERVAL ? DAY
+            WHERE lm.user_name = ? AND mi.was_swapped = 0
+                  AND lm.meal_date >= ?
         """;
 
         try (Connection conn = DBConnection.getInstance().getConnection();
 
              PreparedStatement stmt = conn.prepareStatement(fetchSql)) {
 
-            stmt.setString(1, nutrient);
-            stmt.setString(2, user.getName());
-            stmt.setInt(3, days);
+            stmt.setString(1, user.getName());
+            stmt.setDate(2, Date.valueOf(LocalDate.now().minusDays(days)));
 
+            int nutrientId = NutrientCatalog.getInstance().getId(nutrient);
             ResultSet rs = stmt.executeQuery();
 
             while (rs.next()) {
@@ -127,13 +129,16 @@ public class SwapApplierPanel extends JPanel {
                 int foodId = rs.getInt("food_id");
                 double qty = rs.getDouble("quantity_grams");
 
-                double nutrientPer100g = getNutrientAmount(foodId, nutrient);
+                //only ingredients the nutrient matrix has an amount of the nutrient for
+                if (Double.isNaN(NutrientMatrix.getInstance().getAmount(foodId, nutrientId))) continue;
+
+                double nutrientPer100g = getNutrientAmount(foodId, nutrientId);
                 double before = nutrientPer100g * qty / 100;
 
-                String replacement = SwapEngine.suggestSwap(foodId, goal);
-                if (replacement != null) {
-                    int newFoodId = getFoodIdByName(replacement);
-                    double after = getNutrientAmount(newFoodId, nutrient) * qty / 100;
+                int newFoodId = SwapEngine.suggestSwapId(foodId, goal);
+                if (newFoodId != -1) {
+                    String replacement = FoodCatalog.getInstance().getDescriptionOf(newFoodId);
+                    double after = getNutrientAmount(newFoodId, nutrientId) * qty / 100;
 
                     totalBefore += before;
                     totalAfter += after;
@@ -176,47 +181,17 @@ public class SwapApplierPanel extends JPanel {
         chartContainer.revalidate();
     }
 
-    /**
-     * gets the food id from the database based on its name.
-     *
-     * @param name the food name
-     * @return the corresponding food id
-     * @throws Exception if the food is not found in the database
-     */
-    private int getFoodIdByName(String name) throws Exception {
-        try (Connection conn = DBConnection.getInstance().getConnection();
-
-             PreparedStatement stmt = conn.prepareStatement("SELECT id FROM food_name WHERE description = ?")) {
-            stmt.setString(1, name);
-            ResultSet rs = stmt.executeQuery();
-            if (rs.next()) return rs.getInt("id");
-            throw new Exception("Food not found: " + name);
-        }
-    }
-
     
     /**
      * gets the amount of a specific nutrient for a given food id.
      *
      * @param foodId the food id to check
-     * @param nutrient the nutrient name
+     * @param nutrientId the nutrient id
      * @return the nutrient amount
      * @throws Exception if the nutrient data is not found
      */
-    private double getNutrientAmount(int foodId, String nutrient) throws Exception {
-        try (Connection conn = DBConnection.getInstance().getConnection();
-
-             PreparedStatement stmt = conn.prepareStatement("""
-                 SELECT na.amount
-                 FROM nutrient_amount na
-                 JOIN nutrient n ON na.nutrient_id = n.id
-                 WHERE na.food_id = ? AND n.name = ?
-             """)) {
-            stmt.setInt(1, foodId);
-            stmt.setString(2, nutrient);
-            ResultSet rs = stmt.executeQuery();
-            if (rs.next()) return rs.getDouble("amount");
-            return 0;
-        }
+    private double getNutrientAmount(int foodId, int nutrientId) throws Exception {
+        double amount = NutrientMatrix.getInstance().getAmount(foodId, nutrientId);
+        return Double.isNaN(amount) ? 0 : amount;
     }
 }
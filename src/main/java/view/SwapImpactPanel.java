@@ -1,6 +1,8 @@
 package view;
 
 import database.DBConnection;
+import database.NutrientCatalog;
+import database.NutrientMatrix;
 import model.UserProfile;
 import org.jfree.chart.ChartPanel;
 import org.jfree.chart.JFreeChart;
@@ -9,8 +11,10 @@ import org.jfree.data.category.DefaultCategoryDataset;
 import javax.swing.*;
 import java.awt.*;
 import java.sql.Connection;
+import java.sql.Date;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.time.LocalDate;
 import java.util.*;
 
 //Use of AI: Used AI to debug code, create SQL statements, and improve operations
@@ -21,16 +25,6 @@ import java.util.*;
  */
 public class SwapImpactPanel extends JPanel {
     
-	/** Maps user friendly nutrient names to their database names. */
-    private static final Map<String, String> nutrientMap = Map.of(
-            "Energy", "ENERGY (KILOCALORIES)",
-            "Protein", "PROTEIN",
-            "Fat", "FAT (TOTAL LIPIDS)",
-            "Carbohydrate", "CARBOHYDRATE, TOTAL (BY DIFFERENCE)",
-            "Fiber", "FIBRE, TOTAL DIETARY",
-            "Sugar", "SUGARS, TOTAL"
-    );
-
     private final UserProfile user;
     private JComboBox<String> nutrientBox, daysBox, chartTypeBox;
     private JButton loadButton;
@@ -48,7 +42,7 @@ public class SwapImpactPanel extends JPanel {
         setBorder(BorderFactory.createTitledBorder(" Swap Impact Visualizer"));
 
         JPanel controls = new JPanel(new GridLayout(1, 5, 10, 10));
-        nutrientBox = new JComboBox<>(new String[]{"Energy", "Protein", "Fat", "Carbohydrate", "Fiber", "Sugar"});
+        nutrientBox = new JComboBox<>(NutrientCatalog.getChoices());
         daysBox = new JComboBox<>(new String[]{"7", "14", "30"});
         chartTypeBox = new JComboBox<>(new String[]{"Line Chart", "Bar Chart"});
         loadButton = new JButton("Show Chart");
@@ -77,8 +71,13 @@ public class SwapImpactPanel extends JPanel {
      */
     private void loadChart() {
         String nutrient = (String) nutrientBox.getSelectedItem();
-        String dbNutrient = nutrientMap.get(nutrient);
-        if (dbNutrient == null) {
+        int dbNutrient = -1;
+        try {
+            dbNutrient = NutrientCatalog.getInstance().getId(nutrient);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        if (dbNutrient < 0) {
             JOptionPane.showMessageDialog(this, "Unknown nutrient selected.");
             return;
         }
@@ -87,31 +86,29 @@ public class SwapImpactPanel extends JPanel {
         Map<String, Double> normal = new TreeMap<>();
         Map<String, Double> swapped = new TreeMap<>();
 
-        //sql query
+        //sql query, the nutrient amounts of the ingredients come from the nutrient matrix
         String sql = """
             SELECT DATE(lm.meal_date) AS day,
-                   SUM(na.value) AS total,
+                   mi.food_id,
                    mi.was_swapped
             FROM logged_meal lm
             JOIN meal_ingredient mi ON lm.id = mi.meal_id
-            JOIN nutrient_amount na ON mi.food_id = na.food_id
-            JOIN nutrient n ON na.nutrient_id = n.id
-            WHERE n.name = ? AND lm.user_name = ? AND lm.meal_date >= CURDATE() - INTERVAL ? DAY
-            GROUP BY day, mi.was_swapped
+            WHERE lm.user_name = ? AND lm.meal_date >= ?
         """;
 
         try (Connection conn = DBConnection.getInstance().getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
 
-            stmt.setString(1, dbNutrient);
-            stmt.setString(2, user.getName());
-            stmt.setInt(3, days);
+            stmt.setString(1, user.getName());
+            stmt.setDate(2, Date.valueOf(LocalDate.now().minusDays(days)));
 
+            NutrientMatrix matrix = NutrientMatrix.getInstance();
             ResultSet rs = stmt.executeQuery();
             while (rs.next()) {
                 String day = rs.getString("day");
                 boolean wasSwapped = rs.getBoolean("was_swapped");
-                double val = rs.getDouble("total");
+                double val = matrix.getAmount(rs.getInt("food_id"), dbNutrient);
+                if (Double.isNaN(val)) continue;
 
                 if (wasSwapped) {
                     swapped.put(day, swapped.getOrDefault(day, 0.0) + val);
@@ -2,14 +2,15 @@ package view;
 
 import controller.SwapEngine;
 import database.DBConnection;
+import database.FoodCatalog;
+import database.NutrientCatalog;
 import model.SwapGoal;
 import model.UserProfile;
 
 import javax.swing.*;
 import java.awt.*;
 import java.sql.*;
-import java.util.HashMap;
-import java.util.Map;
+import java.time.LocalDate;
 
 //Use of AI: Used AI to debug code and improve operations
 /**
@@ -27,7 +28,9 @@ public class SwapPanel extends JPanel {
 
     private final UserProfile user;
 
-    private JComboBox<String> foodBox, nutrientBox, goalTypeBox;
+    private JComboBox<FoodCatalog.Food> foodBox;
+    private JTextField foodSearchField;
+    private JComboBox<String> nutrientBox, goalTypeBox;
     private JTextField amountField;
     private JButton suggestButton;
     private JTextArea resultArea;
@@ -41,8 +44,6 @@ public class SwapPanel extends JPanel {
 
 
 
-    private final Map<String, Integer> foodNameToId = new HashMap<>();
-
     /**
      * constructor for SwapPanel class with the provided user profile
      * initializes UI components and sets up action listeners for suggestions
@@ -56,10 +57,11 @@ public class SwapPanel extends JPanel {
         setBorder(BorderFactory.createTitledBorder("Smart Food Swap"));
 
         // input form panel
-        JPanel inputPanel = new JPanel(new GridLayout(5, 2, 10, 10));
+        JPanel inputPanel = new JPanel(new GridLayout(6, 2, 10, 10));
 
+        foodSearchField = new JTextField();
         foodBox = new JComboBox<>();
-        nutrientBox = new JComboBox<>(new String[]{"Energy", "Protein", "Fat", "Carbohydrate", "Fiber", "Sugar"});
+        nutrientBox = new JComboBox<>(NutrientCatalog.getChoices());
         goalTypeBox = new JComboBox<>(new String[]{"increase", "decrease"});
         amountField = new JTextField();
         suggestButton = new JButton("Suggest Swap");
@@ -68,6 +70,8 @@ public class SwapPanel extends JPanel {
         applyToAllCheckBox = new JCheckBox("Apply to all meals");
         applyButton = new JButton("Apply Swap");
 
+        inputPanel.add(new JLabel("Search Food:"));
+        inputPanel.add(foodSearchField);
         inputPanel.add(new JLabel("Food Item:"));
         inputPanel.add(foodBox);
         inputPanel.add(new JLabel("Nutrient:"));
@@ -105,13 +109,14 @@ public class SwapPanel extends JPanel {
                             WHERE food_id = ? AND meal_id IN (
                                 SELECT id FROM logged_meal 
                                 WHERE user_name = ? 
-                                AND meal_date >= CURDATE() - INTERVAL 30 DAY
+                                AND meal_date >= ?
                             )
                           """;
                     stmt = conn.prepareStatement(sql);
                     stmt.setInt(1, lastSuggestedId);
                     stmt.setInt(2, lastOriginalId);
                     stmt.setString(3, user.getName());
+                    stmt.setDate(4, Date.valueOf(LocalDate.now().minusDays(30)));
                 } else {
                     // apply to specific date
                     String dateInput = dateField.getText().trim();
@@ -166,24 +171,12 @@ public class SwapPanel extends JPanel {
 
     
     /**
-     * loads the food names and and food id's from the database into the foodBox combo box
+     * shows the foods of the shared food catalog in the foodBox combo box once they are loaded
+     * typing in foodSearchField then narrows the foodBox to the best matches
      */
     private void loadFoodNames() {
-        try (Connection conn = DBConnection.getInstance().getConnection();
-
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery("SELECT id, description FROM food_name")) {
-
-            while (rs.next()) {
-                int id = rs.getInt("id");
-                String name = rs.getString("description");
-                foodBox.addItem(name);
-                foodNameToId.put(name, id);
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-            JOptionPane.showMessageDialog(this, "Failed to load food names from database.");
-        }
+        FoodComboBoxModel.bind(foodBox, foodSearchField,
+                () -> JOptionPane.showMessageDialog(this, "Failed to load food names from database."));
     }
 
     
@@ -196,22 +189,23 @@ public class SwapPanel extends JPanel {
     	
     	
         try {
-            String foodName = (String) foodBox.getSelectedItem();
-            if (foodName == null || amountField.getText().isEmpty()) {
+            FoodCatalog.Food food = (FoodCatalog.Food) foodBox.getSelectedItem();
+            if (food == null || amountField.getText().isEmpty()) {
                 throw new IllegalArgumentException("All fields must be filled.");
             }
 
-            int foodId = foodNameToId.getOrDefault(foodName, -1);
+            String foodName = food.description();
+            int foodId = food.id();
             String nutrient = (String) nutrientBox.getSelectedItem();
             String type = (String) goalTypeBox.getSelectedItem();
             double amount = Double.parseDouble(amountField.getText());
 
             SwapGoal goal = new SwapGoal(nutrient, type, amount);
-            String suggestion = SwapEngine.suggestSwap(foodId, goal);
+            int suggestedId = SwapEngine.suggestSwapId(foodId, goal);
+            String suggestion = suggestedId != -1 ? FoodCatalog.getInstance().getDescriptionOf(suggestedId) : null;
 
             if (suggestion != null) {
             	
-            	int suggestedId = getFoodIdByName(suggestion);
             	lastSuggestedId = suggestedId;
                 lastOriginalId = foodId;
                 
@@ -244,17 +238,6 @@ public class SwapPanel extends JPanel {
     
     
 
-    /**
-     * gets the food id corresponding to the given food name.
-     *
-     * @param name the name of the food
-     * @return the food id if found, otherwise -1
-     */
-    private int getFoodIdByName(String name) {
-        return foodNameToId.getOrDefault(name, -1);
-    }
-
-    
     /**
      * displays a comparison chart between the original and suggested food.
      *